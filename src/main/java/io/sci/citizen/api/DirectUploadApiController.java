@@ -0,0 +1,50 @@
+package io.sci.citizen.api;
+
+import io.sci.citizen.api.dto.DirectUploadRequest;
+import io.sci.citizen.service.DirectUploadService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Image uploads that bypass the app. {@code POST} the images of an existing record to get a
+ * {@code PUT} target for each, upload the bytes there, then {@code POST} the names and keys
+ * to {@code /complete} to attach them to the record.
+ */
+@RestController
+@RequestMapping("/api/record/direct-upload")
+public class DirectUploadApiController extends BaseApiController {
+
+    private final DirectUploadService service;
+
+    public DirectUploadApiController(DirectUploadService service) {
+        this.service = service;
+    }
+
+    @PostMapping
+    public ResponseEntity<Response> prepare(@RequestHeader("Authorization") String token,
+                                            @RequestBody DirectUploadRequest request) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            return getHttpStatus(new Response(service.prepare(Long.parseLong(getUserId(token)), request)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    @PostMapping("/complete")
+    public ResponseEntity<Response> complete(@RequestHeader("Authorization") String token,
+                                             @RequestBody DirectUploadRequest request) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            return getHttpStatus(new Response(service.complete(Long.parseLong(getUserId(token)), request)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.sci.citizen.api;
+
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.config.UploadSigner;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives direct uploads when images are stored on local disk. Clients get these URLs from
+ * {@code /api/record/direct-upload}; the signature in the URL stands in for authentication,
+ * as it does for a presigned S3 PUT.
+ */
+@RestController
+@RequestMapping("/file")
+public class LocalUploadController {
+
+    private final FileStorage fileStorage;
+    private final UploadSigner signer;
+    private final long maxSize;
+
+    public LocalUploadController(FileStorage fileStorage, UploadSigner signer,
+                                 @Value("${spring.servlet.multipart.max-file-size:10MB}") DataSize maxSize) {
+        this.fileStorage = fileStorage;
+        this.signer = signer;
+        this.maxSize = maxSize.toBytes();
+    }
+
+    @PutMapping("/upload")
+    public ResponseEntity<Void> upload(@RequestParam("key") String key,
+                                       @RequestParam("expires") long expires,
+                                       @RequestParam("signature") String signature,
+                                       HttpServletRequest request) {
+        if (!signer.verify(key, expires, signature)) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        long size = request.getContentLengthLong();
+        if (size < 0) {
+            return new ResponseEntity<>(HttpStatus.LENGTH_REQUIRED);
+        }
+        if (size > maxSize) {
+            return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        try (InputStream in = request.getInputStream()) {
+            fileStorage.write(key, in, size, request.getContentType());
+            return new ResponseEntity<>(HttpStatus.OK);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+}
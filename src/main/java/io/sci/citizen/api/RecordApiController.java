@@ -1,11 +1,20 @@
 package io.sci.citizen.api;
 
+import io.sci.citizen.api.component.IdempotencyStore;
+import io.sci.citizen.api.component.MultipartReader;
 import io.sci.citizen.api.dto.DataRequest;
+import io.sci.citizen.api.dto.PresenceRequest;
 import io.sci.citizen.api.dto.SummaryResponse;
 import io.sci.citizen.model.*;
 import io.sci.citizen.model.repository.*;
+import io.sci.citizen.service.IngestJournal;
 import io.sci.citizen.service.RecordService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -16,13 +25,27 @@ import java.util.*;
 public class RecordApiController extends BaseApiController {
 
     private final RecordService recordService;
+    private final IngestJournal journal;
+    private final IdempotencyStore idempotency;
 
-    public RecordApiController(RecordService recordService) {
+    @Value("${spring.servlet.multipart.max-file-size:10MB}")
+    private DataSize maxFileSize = DataSize.ofMegabytes(10);
+
+    public RecordApiController(RecordService recordService, IngestJournal journal, IdempotencyStore idempotency) {
         this.recordService = recordService;
+        this.journal = journal;
+        this.idempotency = idempotency;
     }
 
+    /**
+     * Saves one record. Like the other upload endpoints it accepts an {@code Idempotency-Key}
+     * header: a retry with the same key gets the first successful response without saving
+     * the record again, and a different upload sent with a key already used is answered with
+     * 422.
+     */
     @PostMapping(path = {"/upload", "/upload/"})
     public ResponseEntity<Response> upload(@RequestHeader("Authorization") String token,
+                                           @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
                                            @RequestParam("model") String model,
                                            @RequestParam(value = "images", required = false) MultipartFile[] images,
                                            @RequestParam(value = "results", required = false) String results) {
@@ -30,8 +53,97 @@ public class RecordApiController extends BaseApiController {
             if (!authorize(token)) {
                 return FORBIDDEN;
             }
-            recordService.record(Long.parseLong(getUserId(token)), model, images, results);
-            return getHttpStatus(new Response(Boolean.TRUE));
+            Long userId = Long.parseLong(getUserId(token));
+            String request = IdempotencyStore.fingerprint("POST /api/record/upload", model, results, describe(images));
+            return idempotency.execute(userId, idempotencyKey, request, () -> {
+                if (journal.enabled()) {
+                    journal.record(userId, model, images, results);
+                } else {
+                    recordService.record(userId, model, images, results);
+                }
+                return getHttpStatus(new Response(Boolean.TRUE));
+            });
+        } catch (IdempotencyStore.KeyReusedException e) {
+            return response(HttpStatus.UNPROCESSABLE_ENTITY, new Response(e.getMessage()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    /**
+     * Same contract as {@link #upload}, but the multipart body is parsed part by part and
+     * images are piped into storage as they arrive instead of being spooled by the servlet
+     * container first. Clients must send the {@code model} field before any image.
+     * <p>
+     * An {@code Idempotency-Key} is bound to the model and to results sent before it, which
+     * are read before the key is looked up; images and later results are not part of the
+     * fingerprint, so a reused key is only detected when the model differs.
+     */
+    @PostMapping(path = {"/upload-stream", "/upload-stream/"}, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Response> uploadStream(@RequestHeader("Authorization") String token,
+                                                 @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                 HttpServletRequest request) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            Long userId = Long.parseLong(getUserId(token));
+            MultipartReader parts = new MultipartReader(request.getInputStream(),
+                    MultipartReader.boundary(request.getContentType()), maxFileSize.toBytes());
+            // a resent multipart body has a new boundary, so only the parts are fingerprinted
+            RecordService.StreamHead head = RecordService.readHead(parts);
+            String fingerprint = IdempotencyStore.fingerprint("POST /api/record/upload-stream", head.model(), head.results());
+            return idempotency.execute(userId, idempotencyKey, fingerprint, () -> {
+                recordService.record(userId, head, parts);
+                return getHttpStatus(new Response(Boolean.TRUE));
+            });
+        } catch (IdempotencyStore.KeyReusedException e) {
+            return response(HttpStatus.UNPROCESSABLE_ENTITY, new Response(e.getMessage()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    /**
+     * Uploads many records and their answers in one request. The body is a JSON array of
+     * {@code {"model": ..., "results": ...}} objects; the response lists the outcome of each
+     * record in the same order.
+     */
+    @PostMapping(path = {"/upload-batch", "/upload-batch/"}, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Response> uploadBatch(@RequestHeader("Authorization") String token,
+                                                @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                @RequestBody String body) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            Long userId = Long.parseLong(getUserId(token));
+            return idempotency.execute(userId, idempotencyKey, IdempotencyStore.fingerprint("POST /api/record/upload-batch", body),
+                    () -> getHttpStatus(new Response(recordService.recordBatch(userId, body))));
+        } catch (IdempotencyStore.KeyReusedException e) {
+            return response(HttpStatus.UNPROCESSABLE_ENTITY, new Response(e.getMessage()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    /**
+     * Answers which of the given record uuids and image content hashes the server does not
+     * have yet, so a re-syncing device uploads only those. Stored images can be referenced by
+     * hash in a record's {@code linkedImages} instead of being sent again.
+     */
+    @PostMapping(path = {"/presence", "/presence/"}, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Response> presence(@RequestHeader("Authorization") String token,
+                                             @RequestBody PresenceRequest request) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            Long userId = Long.parseLong(getUserId(token));
+            return getHttpStatus(new Response(recordService.presence(userId, request)));
         } catch (Exception e) {
             e.printStackTrace();
             return getHttpStatus(new Response(e.getMessage()));
@@ -46,7 +158,8 @@ public class RecordApiController extends BaseApiController {
                 return FORBIDDEN;
             }
             String userId = getUserId(token);
-            return getHttpStatus(new Response(recordService.getRecordsByUserAndProject(Long.parseLong(userId), request.projectId(), request.type())));
+            return getHttpStatus(new Response(recordService.getRecordsByUserAndProject(Long.parseLong(userId), request.projectId(), request.type(),
+                    request.cursor(), request.limit())));
         } catch (Exception e) {
             e.printStackTrace();
             return getHttpStatus(new Response(e.getMessage()));
@@ -61,7 +174,23 @@ public class RecordApiController extends BaseApiController {
                 return FORBIDDEN;
             }
             String userId = getUserId(token);
-            return getHttpStatus(new Response(recordService.getRecordsByUser(Long.parseLong(userId), request.type())));
+            return getHttpStatus(new Response(recordService.getRecordsByUser(Long.parseLong(userId), request.type(),
+                    request.cursor(), request.limit())));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    @RequestMapping(value = "/detail", method = RequestMethod.GET)
+    public ResponseEntity<Response> getDetail(@RequestHeader("Authorization") String token,
+                                              @RequestParam("id") Long id) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            String userId = getUserId(token);
+            return getHttpStatus(new Response(recordService.getRecord(Long.parseLong(userId), id)));
         } catch (Exception e) {
             e.printStackTrace();
             return getHttpStatus(new Response(e.getMessage()));
@@ -101,4 +230,15 @@ public class RecordApiController extends BaseApiController {
         }
     }
 
+
+    // name and size of each image, enough to tell a different upload from a resent one
+    private static List<String> describe(MultipartFile[] images) {
+        List<String> described = new ArrayList<>();
+        if (images != null) {
+            for (MultipartFile image : images) {
+                described.add(image.getOriginalFilename() + ":" + image.getSize());
+            }
+        }
+        return described;
+    }
 }
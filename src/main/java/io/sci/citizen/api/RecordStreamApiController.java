@@ -0,0 +1,81 @@
+package io.sci.citizen.api;
+
+import io.sci.citizen.api.dto.DataRequest;
+import io.sci.citizen.service.RecordExportService;
+import io.sci.citizen.service.StreamIngestService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Long-lived ingest connection for stations that push observations continuously. The token
+ * is checked once when the stream opens; records then follow as frames in the request body
+ * (see {@link io.sci.citizen.api.component.FrameReader}) and the outcome of each is written
+ * back as one JSON line while the stream is still open.
+ * <p>
+ * The {@code /stream} variants of the record listings go the other way: every record the
+ * listing would page through is written as one JSON line, read from a database cursor
+ * while the response is being sent.
+ */
+@RestController
+@RequestMapping("/api/record")
+public class RecordStreamApiController extends BaseApiController {
+
+    static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private static final MediaType NDJSON = MediaType.parseMediaType(CONTENT_TYPE);
+
+    private final StreamIngestService streamIngest;
+    private final RecordExportService recordExport;
+
+    public RecordStreamApiController(StreamIngestService streamIngest, RecordExportService recordExport) {
+        this.streamIngest = streamIngest;
+        this.recordExport = recordExport;
+    }
+
+    @PostMapping(path = {"/ingest-stream", "/ingest-stream/"})
+    public void ingest(@RequestHeader("Authorization") String token,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!authorize(token)) {
+            response.setStatus(HttpStatus.FORBIDDEN.value());
+            return;
+        }
+        Long userId = Long.parseLong(getUserId(token));
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        streamIngest.ingest(userId, request.getInputStream(), response.getOutputStream());
+    }
+
+    @PostMapping(path = {"/list-by-user/stream", "/list-by-user/stream/"})
+    public ResponseEntity<StreamingResponseBody> streamListByUser(@RequestHeader("Authorization") String token,
+                                                                  @RequestBody DataRequest request) {
+        if (!authorize(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Long userId = Long.parseLong(getUserId(token));
+        return ResponseEntity.ok().contentType(NDJSON)
+                .body(out -> recordExport.exportByUser(userId, request.type(), out));
+    }
+
+    @PostMapping(path = {"/list-by-project/stream", "/list-by-project/stream/"})
+    public ResponseEntity<StreamingResponseBody> streamListByProject(@RequestHeader("Authorization") String token,
+                                                                     @RequestBody DataRequest request) {
+        if (!authorize(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Long userId = Long.parseLong(getUserId(token));
+        return ResponseEntity.ok().contentType(NDJSON)
+                .body(out -> recordExport.exportByUserAndProject(userId, request.projectId(), request.type(), out));
+    }
+}
@@ -0,0 +1,96 @@
+package io.sci.citizen.api;
+
+import io.sci.citizen.api.dto.UploadSessionRequest;
+import io.sci.citizen.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Resumable image uploads for records that already exist. Open a session, {@code PUT} the
+ * image in chunks with an {@code Upload-Offset} header matching the reported offset, then
+ * complete it. After a dropped connection, {@code GET} the session to learn where to resume.
+ */
+@RestController
+@RequestMapping("/api/record/upload-session")
+public class UploadSessionApiController extends BaseApiController {
+
+    private final UploadSessionService service;
+
+    public UploadSessionApiController(UploadSessionService service) {
+        this.service = service;
+    }
+
+    @PostMapping
+    public ResponseEntity<Response> create(@RequestHeader("Authorization") String token,
+                                           @RequestBody UploadSessionRequest request) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            return getHttpStatus(new Response(service.create(Long.parseLong(getUserId(token)), request)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Response> status(@RequestHeader("Authorization") String token,
+                                           @PathVariable("id") String id) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            return getHttpStatus(new Response(service.status(Long.parseLong(getUserId(token)), id)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<Response> append(@RequestHeader("Authorization") String token,
+                                           @PathVariable("id") String id,
+                                           @RequestHeader("Upload-Offset") long offset,
+                                           HttpServletRequest request) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            return getHttpStatus(new Response(service.append(Long.parseLong(getUserId(token)), id, offset, request.getInputStream())));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<Response> complete(@RequestHeader("Authorization") String token,
+                                             @PathVariable("id") String id) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            return getHttpStatus(new Response(service.complete(Long.parseLong(getUserId(token)), id)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Response> abort(@RequestHeader("Authorization") String token,
+                                          @PathVariable("id") String id) {
+        try {
+            if (!authorize(token)) {
+                return FORBIDDEN;
+            }
+            service.abort(Long.parseLong(getUserId(token)), id);
+            return getHttpStatus(new Response(Boolean.TRUE));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return getHttpStatus(new Response(e.getMessage()));
+        }
+    }
+}
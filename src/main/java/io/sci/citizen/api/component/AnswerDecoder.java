@@ -0,0 +1,203 @@
+package io.sci.citizen.api.component;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming decoder for the {@code results} part of an upload, an object of
+ * {@code "<questionId>": answer} pairs.
+ * <p>
+ * Answers are read token by token straight into the form they are stored in: text and
+ * numbers as written, and check box selections as a compact JSON array rendered the way
+ * Gson rendered them when answers were read into a map, numbers as doubles included. No
+ * intermediate map or boxed values are built. {@link #validate} then checks each answer against the
+ * type of its question.
+ */
+public final class AnswerDecoder {
+
+    public static final int SEEK_BAR = 1;
+    public static final int CHECK_BOXES = 4;
+    public static final int FREE_OPTIONS = 6;
+    public static final int INTEGER = 7;
+    public static final int DECIMAL = 8;
+
+    private static final Pattern INTEGER_TEXT = Pattern.compile("\\s*[+-]?\\d+\\s*");
+    private static final Pattern DECIMAL_TEXT = Pattern.compile("\\s*[+-]?(\\d+([.,]\\d*)?|[.,]\\d+)([eE][+-]?\\d+)?\\s*");
+
+    private AnswerDecoder() {}
+
+    /** Decodes a {@code results} string; a blank string or {@code null} literal has no answers. */
+    public static List<Answer> decode(String json) {
+        if (json == null || json.isBlank()) {
+            return List.of();
+        }
+        try {
+            JsonReader in = new JsonReader(new StringReader(json));
+            in.setStrictness(Strictness.LENIENT);
+            List<Answer> answers = read(in);
+            if (in.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Unexpected content after results at " + in.getPath());
+            }
+            return answers;
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /** Reads one answer object, or a {@code null} literal, from {@code in}. */
+    public static List<Answer> read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return List.of();
+        }
+        List<Answer> answers = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            JsonToken kind = in.peek();
+            String value;
+            switch (kind) {
+                case STRING, NUMBER -> value = in.nextString();
+                case NULL -> {
+                    in.nextNull();
+                    value = null;
+                }
+                case BOOLEAN -> value = String.valueOf(in.nextBoolean());
+                case BEGIN_ARRAY -> value = array(in);
+                default -> {
+                    in.skipValue();
+                    value = "{...}";
+                }
+            }
+            answers.add(new Answer(key, kind, value));
+        }
+        in.endObject();
+        return answers;
+    }
+
+    /**
+     * Checks that {@code answer} fits its question's type in {@code types} and returns its
+     * question id. A question missing from {@code types} only rules out values no question
+     * accepts.
+     *
+     * @throws IllegalArgumentException if the key is not a question id or the value does not fit
+     */
+    public static long validate(Answer answer, Map<Long, Integer> types) {
+        long questionId = Long.parseLong(answer.key());
+        Integer type = types.get(questionId);
+        boolean numeric = type != null && (type == SEEK_BAR || type == INTEGER || type == DECIMAL);
+        boolean valid = switch (answer.kind()) {
+            case NULL -> true;
+            case STRING -> !numeric || answer.value().isBlank() || number(answer.value(), type);
+            case NUMBER -> type == null || numeric && number(answer.value(), type);
+            case BEGIN_ARRAY -> type == null || type == CHECK_BOXES || type == FREE_OPTIONS;
+            default -> false;
+        };
+        if (!valid) {
+            throw new IllegalArgumentException("unsupported answer " + answer.value() + " to question " + questionId);
+        }
+        return questionId;
+    }
+
+    private static boolean number(String value, int type) {
+        return (type == INTEGER ? INTEGER_TEXT : DECIMAL_TEXT).matcher(value).matches();
+    }
+
+    // Copies an array as compact JSON, escaped the same way Gson#toJson writes it. Numbers are
+    // written as the doubles an untyped Gson map holds, so [1,2] is stored as [1.0,2.0] as
+    // before and a re-sent answer compares equal to the stored one.
+    private static String array(JsonReader in) throws IOException {
+        StringWriter buf = new StringWriter();
+        JsonWriter out = new JsonWriter(buf);
+        out.setHtmlSafe(true);
+        out.setSerializeNulls(false);
+        copy(in, out);
+        out.flush();
+        return buf.toString();
+    }
+
+    private static void copy(JsonReader in, JsonWriter out) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_ARRAY -> {
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copy(in, out);
+                }
+                in.endArray();
+                out.endArray();
+            }
+            case BEGIN_OBJECT -> {
+                in.beginObject();
+                out.beginObject();
+                while (in.hasNext()) {
+                    out.name(in.nextName());
+                    copy(in, out);
+                }
+                in.endObject();
+                out.endObject();
+            }
+            case STRING -> out.value(in.nextString());
+            case NUMBER -> out.value(Double.parseDouble(in.nextString()));
+            case BOOLEAN -> out.value(in.nextBoolean());
+            case NULL -> {
+                in.nextNull();
+                out.nullValue();
+            }
+            default -> throw new JsonSyntaxException("Unexpected " + in.peek() + " at " + in.getPath());
+        }
+    }
+
+    /**
+     * One decoded answer: the raw key, the kind of JSON value it was sent as, and its stored
+     * form ({@code null} for a JSON null).
+     */
+    public record Answer(String key, JsonToken kind, String value) {}
+
+    /**
+     * Lets Gson decode a {@code results} object embedded in a larger document, and write it
+     * back out as the object it was read from.
+     */
+    public static class Adapter extends TypeAdapter<List<Answer>> {
+
+        @Override
+        public List<Answer> read(JsonReader in) throws IOException {
+            return AnswerDecoder.read(in);
+        }
+
+        @Override
+        public void write(JsonWriter out, List<Answer> answers) throws IOException {
+            if (answers == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            for (Answer answer : answers) {
+                out.name(answer.key());
+                if (answer.value() == null) {
+                    out.nullValue();
+                    continue;
+                }
+                switch (answer.kind()) {
+                    case NUMBER, BEGIN_ARRAY -> out.jsonValue(answer.value());
+                    case BOOLEAN -> out.value(Boolean.parseBoolean(answer.value()));
+                    // objects are only kept as a placeholder and go back out as text
+                    default -> out.value(answer.value());
+                }
+            }
+            out.endObject();
+        }
+    }
+}
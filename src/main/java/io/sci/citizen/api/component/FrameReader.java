@@ -0,0 +1,156 @@
+package io.sci.citizen.api.component;
+
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Forward-only reader for the framed ingest stream used by stations that push records over
+ * one long-lived request. Every frame is a one byte type, a four byte big-endian payload
+ * length and the payload:
+ * <ul>
+ *     <li>{@code R} starts a record; the payload is {@code {"model": {...}, "results": {...}}}</li>
+ *     <li>{@code I} starts an image of that record; the payload is {@code {"name": ..., "contentType": ...}}</li>
+ *     <li>{@code C} carries the next bytes of the current image</li>
+ *     <li>{@code E} ends the record, which is then saved</li>
+ *     <li>{@code K} is a keep-alive between records and is skipped</li>
+ * </ul>
+ * Frames are read only as fast as they are consumed, so a slow database slows the sender
+ * down through TCP flow control instead of piling data up in memory. Only frame payloads
+ * that are read as text are held in memory, and those are limited to {@code maxFrameSize}.
+ */
+public final class FrameReader {
+
+    public static final int RECORD = 'R';
+    public static final int IMAGE = 'I';
+    public static final int CHUNK = 'C';
+    public static final int END = 'E';
+    public static final int KEEP_ALIVE = 'K';
+
+    private final DataInputStream in;
+    private final int maxFrameSize;
+    private int type = -1;
+    private long remaining;
+    // the header of the current frame was read ahead by an image stream and not handed out yet
+    private boolean pending;
+
+    public FrameReader(InputStream in, int maxFrameSize) {
+        this.in = new DataInputStream(in);
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Advances to the next frame, skipping keep-alives and whatever is left of the current
+     * payload, and returns its type, or -1 once the stream ends between frames.
+     */
+    public int next() throws IOException {
+        if (pending) {
+            pending = false;
+            return type;
+        }
+        do {
+            skipPayload();
+            int t = in.read();
+            if (t < 0) {
+                return type = -1;
+            }
+            try {
+                remaining = in.readInt() & 0xffffffffL;
+            } catch (EOFException e) {
+                throw new EOFException("Unexpected end of frame header");
+            }
+            type = t;
+        } while (type == KEEP_ALIVE);
+        return type;
+    }
+
+    /** Payload of the current frame as UTF-8 text. */
+    public String text() throws IOException {
+        if (remaining > maxFrameSize) {
+            throw new IllegalArgumentException("Frame larger than " + maxFrameSize + " bytes");
+        }
+        byte[] payload = new byte[(int) remaining];
+        try {
+            in.readFully(payload);
+        } catch (EOFException e) {
+            throw new EOFException("Unexpected end of frame");
+        }
+        remaining = 0;
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The bytes of the chunk frames that follow, as one stream that ends before the next
+     * frame of another type. Reading more than {@code max} bytes fails.
+     */
+    public InputStream chunks(long max) {
+        return new ChunkInputStream(max);
+    }
+
+    private void skipPayload() throws IOException {
+        while (remaining > 0) {
+            int n = in.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+            if (n <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Unexpected end of frame");
+                }
+                n = 1;
+            }
+            remaining -= n;
+        }
+    }
+
+    private final class ChunkInputStream extends InputStream {
+
+        private final long max;
+        private long count;
+        private boolean done;
+
+        private ChunkInputStream(long max) {
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (type != CHUNK || remaining == 0) {
+                if (type == CHUNK || type == IMAGE) {
+                    if (next() != CHUNK) {
+                        pending = true;
+                        done = true;
+                        return -1;
+                    }
+                } else {
+                    done = true;
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("Unexpected end of frame");
+            }
+            remaining -= n;
+            count += n;
+            if (count > max) {
+                throw new MaxUploadSizeExceededException(max);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package io.sci.citizen.api.component;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Responses of API calls sent with an {@value #HEADER} header, kept per user and key so that
+ * a client retrying after a lost response gets the original outcome instead of running the
+ * call again. A retry that arrives while the original is still running waits for it.
+ * <p>
+ * Each key is bound to the request it was first sent with, given as a {@link #fingerprint}
+ * of the endpoint and as much of the body as is cheap to hash. A key sent again with a
+ * different request is rejected with {@link KeyReusedException} rather than answered with
+ * the response of the other request.
+ * <p>
+ * Only successful responses are kept, for {@code app.api.idempotency.ttl} after they
+ * complete; a failed call can be retried with the same key. The store holds at most
+ * {@code app.api.idempotency.max-entries} completed responses and drops the oldest first.
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    // insertion ordered, guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final AtomicLong replayed = new AtomicLong();
+
+    public IdempotencyStore(@Value("${app.api.idempotency.ttl:24h}") Duration ttl,
+                            @Value("${app.api.idempotency.max-entries:10000}") int maxEntries) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Runs {@code call} once per user and key and returns its response, or the response of
+     * an earlier or running call with the same key and request. Without a key the call
+     * simply runs.
+     *
+     * @param request fingerprint of the request, see {@link #fingerprint}
+     * @throws IllegalArgumentException if the key is longer than 255 characters
+     * @throws KeyReusedException if the key was used for a different request
+     * @throws Exception whatever the call, or the original call being waited for, threw
+     */
+    public <T> ResponseEntity<T> execute(Long userId, String key, String request,
+                                         Callable<ResponseEntity<T>> call) throws Exception {
+        if (key == null || key.isBlank()) {
+            return call.call();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String id = userId + ":" + key;
+        CompletableFuture<ResponseEntity<?>> original;
+        Entry own = new Entry(request, new CompletableFuture<>());
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            if (entry != null && entry.expired(System.currentTimeMillis())) {
+                entries.remove(id);
+                entry = null;
+            }
+            if (entry != null && !entry.request.equals(request)) {
+                throw new KeyReusedException();
+            }
+            if (entry == null) {
+                evict();
+                entries.put(id, own);
+            }
+            original = entry == null ? null : entry.response;
+        }
+        if (original != null) {
+            replayed.incrementAndGet();
+            return await(original);
+        }
+        try {
+            ResponseEntity<T> response = call.call();
+            complete(id, own, response != null && response.getStatusCode().is2xxSuccessful());
+            own.response.complete(response);
+            return response;
+        } catch (Exception | Error e) {
+            complete(id, own, false);
+            own.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** Hash of the given request parts, such as method, path and body fields; nulls hash as empty. */
+    public static String fingerprint(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                if (part != null) {
+                    digest.update(part.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized Stats stats() {
+        int running = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.expiresAt == 0) {
+                running++;
+            }
+        }
+        return new Stats(entries.size() - running, running, replayed.get());
+    }
+
+    private synchronized void complete(String id, Entry entry, boolean keep) {
+        if (keep) {
+            entry.expiresAt = System.currentTimeMillis() + ttlMillis;
+        } else {
+            entries.remove(id, entry);
+        }
+    }
+
+    // Makes room for one more entry: expired responses go first, then the oldest ones.
+    // Calls still running are never dropped.
+    private void evict() {
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expired(now));
+        for (Iterator<Entry> it = entries.values().iterator(); entries.size() >= maxEntries && it.hasNext(); ) {
+            if (it.next().expiresAt != 0) {
+                it.remove();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ResponseEntity<T> await(CompletableFuture<ResponseEntity<?>> original) throws Exception {
+        try {
+            return (ResponseEntity<T>) original.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    private static final class Entry {
+        final String request;
+        final CompletableFuture<ResponseEntity<?>> response;
+        // 0 while the call is running
+        long expiresAt;
+
+        Entry(String request, CompletableFuture<ResponseEntity<?>> response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        boolean expired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+
+    /** An {@value #HEADER} sent again with a request other than the one it was first used for. */
+    public static class KeyReusedException extends RuntimeException {
+        public KeyReusedException() {
+            super(HEADER + " was already used for a different request");
+        }
+    }
+
+    /** Responses kept for replay, calls running with a key, and duplicates answered from the store. */
+    public record Stats(int stored, int running, long replayed) {}
+}
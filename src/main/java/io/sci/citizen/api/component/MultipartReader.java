@@ -0,0 +1,300 @@
+package io.sci.citizen.api.component;
+
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Forward-only reader for a {@code multipart/form-data} body.
+ * <p>
+ * Parts are handed out one at a time and their bodies are read straight from the
+ * underlying stream, so only a fixed-size buffer is held in memory regardless of
+ * how many parts or bytes the request carries. Moving to the next part drains
+ * whatever is left of the current one.
+ */
+public final class MultipartReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buf;
+    private final long maxPartSize;
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private boolean finished;
+    private PartInputStream current;
+
+    public MultipartReader(InputStream in, String boundary, long maxPartSize) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buf = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+        this.maxPartSize = maxPartSize;
+        // the first boundary is not preceded by CRLF; prime the buffer so every
+        // boundary, including the first, matches the same delimiter
+        buf[0] = '\r';
+        buf[1] = '\n';
+        limit = 2;
+    }
+
+    public static String boundary(String contentType) {
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                String p = param.trim();
+                if (p.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                    String value = p.substring("boundary=".length()).trim();
+                    if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                        value = value.substring(1, value.length() - 1);
+                    }
+                    if (!value.isEmpty()) {
+                        return value;
+                    }
+                }
+            }
+        }
+        throw new MultipartException("Missing multipart boundary");
+    }
+
+    /**
+     * Advances to the next part, or returns {@code null} once the closing
+     * boundary has been read.
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (current == null) {
+            // skip the preamble up to the first boundary
+            current = new PartInputStream(Long.MAX_VALUE);
+        }
+        current.drain();
+        int a = readByte();
+        int b = readByte();
+        if (a == '-' && b == '-') {
+            finished = true;
+            return null;
+        }
+        while (a == ' ' || a == '\t') {
+            a = b;
+            b = readByte();
+        }
+        if (a != '\r' || b != '\n') {
+            throw new MultipartException("Malformed multipart boundary");
+        }
+        Map<String, String> headers = readHeaders();
+        Map<String, String> disposition = parameters(headers.get("content-disposition"));
+        current = new PartInputStream(maxPartSize);
+        return new Part(disposition.get("name"), disposition.get("filename"), headers.get("content-type"), current);
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int total = 0;
+        while (true) {
+            int c = readByte();
+            if (c < 0) {
+                throw new EOFException("Unexpected end of multipart headers");
+            }
+            if (++total > MAX_HEADER_SIZE) {
+                throw new MultipartException("Multipart headers too large");
+            }
+            if (c == '\n') {
+                String text = line.toString(StandardCharsets.UTF_8);
+                if (text.endsWith("\r")) {
+                    text = text.substring(0, text.length() - 1);
+                }
+                if (text.isEmpty()) {
+                    return headers;
+                }
+                int colon = text.indexOf(':');
+                if (colon > 0) {
+                    headers.put(text.substring(0, colon).trim().toLowerCase(Locale.ROOT), text.substring(colon + 1).trim());
+                }
+                line.reset();
+            } else {
+                line.write(c);
+            }
+        }
+    }
+
+    private static Map<String, String> parameters(String header) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (header == null) {
+            return params;
+        }
+        int i = header.indexOf(';');
+        while (i >= 0 && i < header.length()) {
+            int eq = header.indexOf('=', i);
+            if (eq < 0) {
+                break;
+            }
+            String key = header.substring(i + 1, eq).trim().toLowerCase(Locale.ROOT);
+            String value;
+            int end;
+            if (eq + 1 < header.length() && header.charAt(eq + 1) == '"') {
+                StringBuilder sb = new StringBuilder();
+                end = eq + 2;
+                while (end < header.length() && header.charAt(end) != '"') {
+                    char ch = header.charAt(end);
+                    if (ch == '\\' && end + 1 < header.length()) {
+                        ch = header.charAt(++end);
+                    }
+                    sb.append(ch);
+                    end++;
+                }
+                value = sb.toString();
+                end = header.indexOf(';', end);
+            } else {
+                end = header.indexOf(';', eq);
+                value = header.substring(eq + 1, end < 0 ? header.length() : end).trim();
+            }
+            params.put(key, value);
+            i = end;
+        }
+        return params;
+    }
+
+    private int fill() throws IOException {
+        if (eof) {
+            return -1;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return -1;
+        }
+        limit += n;
+        return n;
+    }
+
+    private int readByte() throws IOException {
+        while (pos >= limit) {
+            if (fill() < 0) {
+                return -1;
+            }
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = pos; i <= last; i++) {
+            if (buf[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buf[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public record Part(String name, String filename, String contentType, InputStream body) {
+
+        public boolean isFile() {
+            return filename != null;
+        }
+
+        public String text() throws IOException {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private final class PartInputStream extends InputStream {
+
+        private final long max;
+        private long count;
+        private boolean done;
+
+        private PartInputStream(long max) {
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                int idx = indexOfDelimiter();
+                int available;
+                if (idx >= 0) {
+                    available = idx - pos;
+                    if (available == 0) {
+                        pos += delimiter.length;
+                        done = true;
+                        return -1;
+                    }
+                } else {
+                    // keep enough bytes back to recognise a delimiter split across reads
+                    available = limit - pos - (delimiter.length - 1);
+                }
+                if (available > 0) {
+                    int n = Math.min(available, len);
+                    System.arraycopy(buf, pos, b, off, n);
+                    pos += n;
+                    count += n;
+                    if (count > max) {
+                        throw new MaxUploadSizeExceededException(max);
+                    }
+                    return n;
+                }
+                if (fill() < 0) {
+                    throw new EOFException("Unexpected end of multipart body");
+                }
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] scratch = new byte[8192];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+                if (r < 0) {
+                    break;
+                }
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        private void drain() throws IOException {
+            byte[] scratch = new byte[8192];
+            while (read(scratch, 0, scratch.length) >= 0) {
+                // discard
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.sci.citizen.api.component;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for the record upload endpoints. Each upload reserves its declared
+ * size (at least {@code min-charge}) from a global in-flight byte budget; one sent without a
+ * length, such as a chunked upload, reserves the largest request allowed. Each user may
+ * only have a few uploads running at once. Requests that do not fit are answered right away
+ * with {@code 429 Too Many Requests} and a {@code Retry-After} header, before their body is
+ * read, so a burst of syncing devices cannot take every request thread and database
+ * connection away from the rest of the application.
+ * <p>
+ * An upload larger than the whole budget is still admitted when nothing else is in flight.
+ */
+@Component
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    static final String UPLOAD_PATH = "/api/record/upload";
+
+    private final long budget;
+    private final int perUser;
+    private final long minCharge;
+    private final long maxRequestSize;
+    private final long retryAfterSeconds;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ConcurrentHashMap<String, Integer> running = new ConcurrentHashMap<>();
+
+    public UploadAdmissionFilter(@Value("${app.ingest.admission.budget:48MB}") DataSize budget,
+                                 @Value("${app.ingest.admission.per-user:2}") int perUser,
+                                 @Value("${app.ingest.admission.min-charge:1MB}") DataSize minCharge,
+                                 @Value("${app.ingest.admission.retry-after:5s}") Duration retryAfter,
+                                 @Value("${spring.servlet.multipart.max-request-size:10MB}") DataSize maxRequestSize) {
+        this.budget = budget.toBytes();
+        this.perUser = perUser;
+        this.minCharge = minCharge.toBytes();
+        this.maxRequestSize = maxRequestSize.toBytes();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !("POST".equals(method) || "PUT".equals(method)) || !path.startsWith(UPLOAD_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws ServletException, IOException {
+        String user = user(req);
+        if (!enter(user)) {
+            reject(res, "Too many uploads in progress for this user");
+            return;
+        }
+        long length = req.getContentLengthLong();
+        long charge = Math.max(length < 0 ? maxRequestSize : length, minCharge);
+        if (!reserve(charge)) {
+            leave(user);
+            reject(res, "Server is busy with other uploads");
+            return;
+        }
+        try {
+            chain.doFilter(req, res);
+        } finally {
+            inFlight.addAndGet(-charge);
+            leave(user);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(inFlight.get(), budget, running.size(), rejected.get());
+    }
+
+    private boolean enter(String user) {
+        boolean[] admitted = {false};
+        running.compute(user, (k, n) -> {
+            int count = n == null ? 0 : n;
+            if (count >= perUser) {
+                return n;
+            }
+            admitted[0] = true;
+            return count + 1;
+        });
+        return admitted[0];
+    }
+
+    private void leave(String user) {
+        running.computeIfPresent(user, (k, n) -> n <= 1 ? null : n - 1);
+    }
+
+    private boolean reserve(long charge) {
+        while (true) {
+            long current = inFlight.get();
+            if (current > 0 && current + charge > budget) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + charge)) {
+                return true;
+            }
+        }
+    }
+
+    private void reject(HttpServletResponse res, String message) throws IOException {
+        rejected.incrementAndGet();
+        res.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        res.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        res.setHeader(HttpHeaders.CONNECTION, "close");
+        res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        res.getWriter().write("{\"data\":null,\"message\":\"" + message + "\"}");
+    }
+
+    // Uploads are authenticated by the API security chain before they get here; the remote
+    // address only stands in if that ever changes.
+    private static String user(HttpServletRequest req) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.isAuthenticated() ? auth.getName() : req.getRemoteAddr();
+    }
+
+    /** Bytes reserved by running uploads, the budget, users with uploads running, and uploads turned away. */
+    public record Stats(long inFlightBytes, long budgetBytes, int activeUsers, long rejected) {}
+}
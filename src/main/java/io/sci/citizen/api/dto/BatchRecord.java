@@ -0,0 +1,11 @@
+package io.sci.citizen.api.dto;
+
+import com.google.gson.annotations.JsonAdapter;
+import io.sci.citizen.api.component.AnswerDecoder;
+
+import java.util.List;
+
+public record BatchRecord(
+        RecordData model,
+        @JsonAdapter(AnswerDecoder.Adapter.class) List<AnswerDecoder.Answer> results
+) {}
@@ -1,4 +1,12 @@
 package io.sci.citizen.api.dto;
 
-public record DataRequest (Long projectId, Integer type) {
+/**
+ * Filter of the record listings. {@code cursor} is the {@code nextCursor} of the previous
+ * page, null for the first one, and {@code limit} the page size, capped by the server.
+ */
+public record DataRequest (Long projectId, Integer type, String cursor, Integer limit) {
+
+    public DataRequest(Long projectId, Integer type) {
+        this(projectId, type, null, null);
+    }
 }
@@ -0,0 +1,15 @@
+package io.sci.citizen.api.dto;
+
+import java.util.List;
+
+/**
+ * Images of an existing record to upload straight to storage. When asking for upload
+ * targets each image gives its name, content type and size; when completing, its name and
+ * the key it was uploaded to.
+ */
+public record DirectUploadRequest(
+        String uuid,
+        List<Image> images
+) {
+    public record Image(String name, String contentType, long size, String key) {}
+}
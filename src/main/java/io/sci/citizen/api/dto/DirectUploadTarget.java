@@ -0,0 +1,12 @@
+package io.sci.citizen.api.dto;
+
+import java.util.Map;
+
+public record DirectUploadTarget(
+        String name,
+        String key,
+        String url,
+        String method,
+        Map<String, String> headers,
+        long expiresAt
+) {}
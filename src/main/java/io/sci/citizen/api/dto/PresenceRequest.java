@@ -0,0 +1,9 @@
+package io.sci.citizen.api.dto;
+
+import java.util.List;
+
+/** Record uuids and image SHA-256 hashes a device is about to sync. */
+public record PresenceRequest(
+        List<String> uuids,
+        List<String> hashes
+) {}
@@ -0,0 +1,9 @@
+package io.sci.citizen.api.dto;
+
+import java.util.List;
+
+/** The uuids and hashes of a {@link PresenceRequest} the server does not have yet, in request order. */
+public record PresenceResponse(
+        List<String> missingUuids,
+        List<String> missingHashes
+) {}
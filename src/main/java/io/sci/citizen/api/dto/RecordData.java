@@ -1,7 +1,12 @@
 package io.sci.citizen.api.dto;
 
 import java.util.Date;
+import java.util.Map;
 
+/**
+ * A record as sent by the app. {@code linkedImages} maps the file names of images the client
+ * did not send, because the server already holds their content, to their SHA-256 hashes.
+ */
 public record RecordData(
         String uuid,
         double latitude,
@@ -11,5 +16,6 @@ public record RecordData(
         Long projectId,
         Long userId,
         Date startDate,
-        Date finishDate
+        Date finishDate,
+        Map<String, String> linkedImages
 ) {}
\ No newline at end of file
@@ -0,0 +1,14 @@
+package io.sci.citizen.api.dto;
+
+import io.sci.citizen.model.dto.AnswerSummary;
+import io.sci.citizen.model.dto.ImageSummary;
+import io.sci.citizen.model.dto.RecordSummary;
+
+import java.util.List;
+
+/** A listed record together with its images and answers. */
+public record RecordDetail(
+        RecordSummary record,
+        List<ImageSummary> images,
+        List<AnswerSummary> answers
+) {}
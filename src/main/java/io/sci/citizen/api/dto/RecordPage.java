@@ -0,0 +1,12 @@
+package io.sci.citizen.api.dto;
+
+import java.util.List;
+
+/**
+ * One page of a record listing, newest first. {@code nextCursor} is sent back to get the
+ * page after this one and is null on the last page.
+ */
+public record RecordPage<T>(
+        List<T> items,
+        String nextCursor
+) {}
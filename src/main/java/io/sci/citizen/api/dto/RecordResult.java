@@ -0,0 +1,12 @@
+package io.sci.citizen.api.dto;
+
+public record RecordResult(
+        String uuid,
+        Long id,
+        boolean created,
+        String error
+) {
+    public static RecordResult failed(String uuid, String error) {
+        return new RecordResult(uuid, null, false, error);
+    }
+}
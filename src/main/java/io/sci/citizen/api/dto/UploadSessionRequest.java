@@ -0,0 +1,8 @@
+package io.sci.citizen.api.dto;
+
+public record UploadSessionRequest(
+        String uuid,
+        String name,
+        long size,
+        String contentType
+) {}
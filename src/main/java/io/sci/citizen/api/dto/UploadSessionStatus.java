@@ -0,0 +1,7 @@
+package io.sci.citizen.api.dto;
+
+public record UploadSessionStatus(
+        String id,
+        long offset,
+        long size
+) {}
@@ -3,12 +3,34 @@ package io.sci.citizen.config;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 public interface FileStorage {
     StoredFile store(String key, MultipartFile file) throws IOException, URISyntaxException;
+    StoredFile store(String key, InputStream in, long size, String contentType) throws IOException, URISyntaxException; // size < 0 when unknown
+    // like store, but skips building a URL for callers that do not need one
+    default void write(String key, InputStream in, long size, String contentType) throws IOException {
+        try {
+            store(key, in, size, contentType);
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+    // resumable uploads: parts are numbered from 1 and every part but the last must be at least 5 MB
+    String beginUpload(String key, String contentType) throws IOException; // returns the upload id
+    String uploadPart(String key, String uploadId, int partNumber, InputStream in, long size) throws IOException; // returns a part token
+    void completeUpload(String key, String uploadId, List<String> parts) throws IOException; // part tokens in order
+    void abortUpload(String key, String uploadId) throws IOException;
+    void delete(String key) throws IOException; // no-op when the object does not exist
+    // direct uploads: a URL the client can PUT the object to without its bytes passing through the app
+    URI presignPut(String key, String contentType, Duration ttl) throws IOException;
+    OptionalLong size(String key) throws IOException; // empty when the object does not exist
     Optional<FileDownload> download(String key) throws IOException; // for streaming if needed
     Optional<URI> publicUrl(String key) throws URISyntaxException; // may be empty if not public
 }
@@ -5,22 +5,55 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
 
 public class LocalFileStorage implements FileStorage {
     private final Path root;
     private final URI baseUrl;
+    private final UploadSigner signer;
+    private final int partSize;
+    private final int concurrency;
+    private final Executor partWrites;
 
     public LocalFileStorage(StorageProps props) {
+        this(props, new UploadSigner(null));
+    }
+
+    public LocalFileStorage(StorageProps props, UploadSigner signer) {
+        this(props, signer, Runnable::run);
+    }
+
+    // like the parts of an S3 multipart upload, parts of large objects are written concurrently on partWrites
+    public LocalFileStorage(StorageProps props, UploadSigner signer, Executor partWrites) {
         this.root = Paths.get(props.getLocal().getBasePath());
         this.baseUrl = URI.create(props.getLocal().getBaseUrl());
+        this.signer = signer;
+        this.partSize = (int) Math.min(Integer.MAX_VALUE - 8, props.getLocal().getMultipartThreshold().toBytes());
+        this.concurrency = Math.max(1, props.getLocal().getUploadConcurrency());
+        this.partWrites = partWrites;
         try {
             Files.createDirectories(root);
         } catch (IOException ignored) {
@@ -29,14 +62,157 @@ public class LocalFileStorage implements FileStorage {
 
     @Override
     public StoredFile store(String key, MultipartFile file) throws IOException {
-        Path target = safeResolve(key);
-        Files.createDirectories(target.getParent());
         try (InputStream in = file.getInputStream()) {
-            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            return store(key, in, file.getSize(), file.getContentType());
         }
-        String ct = Optional.ofNullable(file.getContentType())
+    }
+
+    @Override
+    public StoredFile store(String key, InputStream in, long size, String contentType) throws IOException {
+        Path target = safeResolve(key);
+        long written = put(target, in, size);
+        String ct = Optional.ofNullable(contentType)
                 .orElseGet(() -> probe(target));
-        return new StoredFile(key, baseUrl.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8)), file.getSize(), ct);
+        return new StoredFile(key, baseUrl.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8)), written, ct);
+    }
+
+    @Override
+    public void write(String key, InputStream in, long size, String contentType) throws IOException {
+        put(safeResolve(key), in, size);
+    }
+
+    // Small objects of known length are copied in one go; large or unknown-length ones are
+    // written part by part into a temporary file that replaces the target once complete.
+    private long put(Path target, InputStream in, long size) throws IOException {
+        Files.createDirectories(target.getParent());
+        if (size >= 0 && size < partSize) {
+            return Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path tmp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID());
+        try {
+            long written;
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                written = writeParts(channel, in);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Reads one part at a time and writes parts at their offsets concurrently, with at most
+    // concurrency parts buffered at once.
+    private long writeParts(FileChannel channel, InputStream in) throws IOException {
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        Semaphore buffered = new Semaphore(concurrency);
+        long offset = 0;
+        try {
+            byte[] part = new byte[partSize];
+            int n = in.readNBytes(part, 0, partSize);
+            while (n > 0 && parts.stream().noneMatch(CompletableFuture::isCompletedExceptionally)) {
+                buffered.acquire();
+                ByteBuffer body = ByteBuffer.wrap(part, 0, n);
+                long position = offset;
+                parts.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        long at = position;
+                        while (body.hasRemaining()) {
+                            at += channel.write(body, at);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        buffered.release();
+                    }
+                }, partWrites));
+                offset += n;
+                part = new byte[partSize];
+                n = in.readNBytes(part, 0, partSize);
+            }
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).join();
+        } catch (InterruptedException e) {
+            awaitAll(parts);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Write interrupted");
+        } catch (CompletionException e) {
+            awaitAll(parts);
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } catch (IOException | RuntimeException e) {
+            awaitAll(parts);
+            throw e;
+        }
+        channel.force(false);
+        return offset;
+    }
+
+    // lets started parts finish before the file they write to is closed and removed
+    private static void awaitAll(List<CompletableFuture<Void>> parts) {
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).exceptionally(x -> null).join();
+    }
+
+    // Parts are kept as numbered files under .uploads/<uploadId> and concatenated on completion.
+    @Override
+    public String beginUpload(String key, String contentType) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        Files.createDirectories(uploadDir(uploadId));
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream in, long size) throws IOException {
+        Path dir = uploadDir(uploadId);
+        if (!Files.isDirectory(dir)) throw new IOException("Unknown upload: " + uploadId);
+        Files.copy(in, dir.resolve(String.valueOf(partNumber)), StandardCopyOption.REPLACE_EXISTING);
+        return String.valueOf(partNumber);
+    }
+
+    @Override
+    public void completeUpload(String key, String uploadId, List<String> parts) throws IOException {
+        Path dir = uploadDir(uploadId);
+        Path target = safeResolve(key);
+        Files.createDirectories(target.getParent());
+        try (OutputStream out = Files.newOutputStream(target)) {
+            for (String part : parts) {
+                Files.copy(dir.resolve(part), out);
+            }
+        }
+        abortUpload(key, uploadId);
+    }
+
+    @Override
+    public void abortUpload(String key, String uploadId) throws IOException {
+        Path dir = uploadDir(uploadId);
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(safeResolve(key));
+    }
+
+    // A signed URL of the app's own upload endpoint, PUT /file/upload, under the base URL.
+    @Override
+    public URI presignPut(String key, String contentType, Duration ttl) {
+        safeResolve(key);
+        long expires = System.currentTimeMillis() / 1000 + ttl.toSeconds();
+        return baseUrl.resolve("upload?key=" + URLEncoder.encode(key, StandardCharsets.UTF_8)
+                + "&expires=" + expires + "&signature=" + signer.sign(key, expires));
+    }
+
+    @Override
+    public OptionalLong size(String key) throws IOException {
+        Path p = safeResolve(key);
+        return Files.isRegularFile(p) ? OptionalLong.of(Files.size(p)) : OptionalLong.empty();
     }
 
     @Override
@@ -52,6 +228,10 @@ public class LocalFileStorage implements FileStorage {
         return Optional.of(baseUrl.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8)));
     }
 
+    private Path uploadDir(String uploadId) {
+        return safeResolve(".uploads/" + UUID.fromString(uploadId));
+    }
+
     private Path safeResolve(String key) {
         Path p = root.resolve(key).normalize();
         if (!p.startsWith(root)) throw new IllegalArgumentException("Invalid path");
@@ -8,6 +8,9 @@ import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 @EnableConfigurationProperties(StorageProps.class)
@@ -26,7 +29,13 @@ public class LocalStorageConfig implements WebMvcConfigurer {
 
     @Bean
     @ConditionalOnProperty(name = "app.storage.type", havingValue = "local")
-    public FileStorage localStorage() {
-        return new LocalFileStorage(props);
+    public FileStorage localStorage(UploadSigner signer) {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService partWrites = Executors.newFixedThreadPool(Math.max(1, props.getLocal().getUploadConcurrency()), r -> {
+            Thread t = new Thread(r, "local-part-write-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        return new LocalFileStorage(props, signer, partWrites);
     }
 }
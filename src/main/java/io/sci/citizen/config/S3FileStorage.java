@@ -1,40 +1,61 @@
 package io.sci.citizen.config;
 
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 public class S3FileStorage implements FileStorage {
     private final S3Client s3;
+    private final S3AsyncClient s3Async;
     private final S3Presigner presigner;
     private final StorageProps props;
+    private final ExecutorService bodyReads;
 
-    public S3FileStorage(S3Client s3, S3Presigner presigner, StorageProps props) {
-        this.s3 = s3; this.presigner = presigner; this.props = props;
+    // objects are written through s3Async, which should have multipart enabled; resumable
+    // uploads, lookups and deletes go through s3. Upload bodies are read on bodyReads.
+    public S3FileStorage(S3Client s3, S3AsyncClient s3Async, S3Presigner presigner, StorageProps props,
+                         ExecutorService bodyReads) {
+        this.s3 = s3; this.s3Async = s3Async; this.presigner = presigner; this.props = props; this.bodyReads = bodyReads;
     }
 
     @Override
     public StoredFile store(String key, MultipartFile file) throws IOException, URISyntaxException {
-        PutObjectRequest put = PutObjectRequest.builder()
-                .bucket(props.getS3().getBucket())
-                .key(key)
-                .contentType(Optional.ofNullable(file.getContentType()).orElse("application/octet-stream"))
-                .build();
-
-        s3.putObject(put, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
+        return store(key, file.getInputStream(), file.getSize(), file.getContentType());
+    }
 
+    @Override
+    public StoredFile store(String key, InputStream in, long size, String contentType) throws IOException, URISyntaxException {
+        String ct = Optional.ofNullable(contentType).orElse("application/octet-stream");
+        long written = put(key, in, size, ct);
         URI getUrl = presignGet(key, Duration.ofMinutes(props.getS3().getUrlMinutes()));
-        return new StoredFile(key, getUrl, file.getSize(), put.contentType());
+        return new StoredFile(key, getUrl, written, ct);
+    }
+
+    @Override
+    public void write(String key, InputStream in, long size, String contentType) throws IOException {
+        put(key, in, size, Optional.ofNullable(contentType).orElse("application/octet-stream"));
     }
 
     @Override
@@ -48,6 +69,113 @@ public class S3FileStorage implements FileStorage {
         return Optional.of(presignGet(key, Duration.ofMinutes(props.getS3().getUrlMinutes())));
     }
 
+    private PutObjectRequest putRequest(String key, String contentType) {
+        return PutObjectRequest.builder()
+                .bucket(props.getS3().getBucket())
+                .key(key)
+                .contentType(contentType)
+                .build();
+    }
+
+    // The async client splits objects at or above multipart-threshold into parts and sends
+    // them concurrently; the stream is read on bodyReads, and an unknown length is fine.
+    private long put(String key, InputStream in, long size, String contentType) throws IOException {
+        CountingInputStream counted = new CountingInputStream(in);
+        CompletableFuture<PutObjectResponse> upload = s3Async.putObject(putRequest(key, contentType),
+                AsyncRequestBody.fromInputStream(counted, size >= 0 ? size : null, bodyReads));
+        try {
+            upload.get();
+        } catch (InterruptedException e) {
+            upload.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload of " + key + " interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException c && c.getCause() != null ? c.getCause() : e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw cause instanceof IOException io ? io : new IOException(cause);
+        }
+        return size >= 0 ? size : counted.count;
+    }
+
+    @Override
+    public String beginUpload(String key, String contentType) {
+        return s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(props.getS3().getBucket())
+                .key(key)
+                .contentType(Optional.ofNullable(contentType).orElse("application/octet-stream"))
+                .build()).uploadId();
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream in, long size) {
+        return s3.uploadPart(UploadPartRequest.builder()
+                        .bucket(props.getS3().getBucket())
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(size)
+                        .build(),
+                RequestBody.fromInputStream(in, size)).eTag();
+    }
+
+    @Override
+    public void completeUpload(String key, String uploadId, List<String> parts) {
+        List<CompletedPart> completed = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            completed.add(CompletedPart.builder().partNumber(i + 1).eTag(parts.get(i)).build());
+        }
+        s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(props.getS3().getBucket())
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                .build());
+    }
+
+    @Override
+    public void abortUpload(String key, String uploadId) {
+        s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(props.getS3().getBucket())
+                .key(key)
+                .uploadId(uploadId)
+                .build());
+    }
+
+    @Override
+    public void delete(String key) {
+        s3.deleteObject(DeleteObjectRequest.builder()
+                .bucket(props.getS3().getBucket())
+                .key(key)
+                .build());
+    }
+
+    @Override
+    public URI presignPut(String key, String contentType, Duration ttl) throws IOException {
+        PutObjectPresignRequest req = PutObjectPresignRequest.builder()
+                .signatureDuration(ttl)
+                .putObjectRequest(putRequest(key, Optional.ofNullable(contentType).orElse("application/octet-stream")))
+                .build();
+        try {
+            return presigner.presignPutObject(req).url().toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public OptionalLong size(String key) {
+        try {
+            return OptionalLong.of(s3.headObject(HeadObjectRequest.builder()
+                    .bucket(props.getS3().getBucket())
+                    .key(key)
+                    .build()).contentLength());
+        } catch (NoSuchKeyException e) {
+            return OptionalLong.empty();
+        }
+    }
+
     private URI presignGet(String key, Duration ttl) throws URISyntaxException {
         GetObjectRequest get = GetObjectRequest.builder()
                 .bucket(props.getS3().getBucket())
@@ -59,4 +187,30 @@ public class S3FileStorage implements FileStorage {
                 .build();
         return presigner.presignGetObject(req).url().toURI();
     }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
 }
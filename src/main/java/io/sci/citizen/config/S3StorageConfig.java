@@ -6,13 +6,23 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.*;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.multipart.MultipartConfiguration;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Configuration
 @EnableConfigurationProperties(StorageProps.class)
 public class S3StorageConfig {
 
+    private static final long MIN_PART_SIZE = 5 * 1024 * 1024; // S3 minimum for all but the last part
+
     @Bean
     @ConditionalOnProperty(name = "app.storage.type", havingValue = "s3")
     public FileStorage s3Storage(StorageProps props) {
@@ -42,7 +52,33 @@ public class S3StorageConfig {
             creds = DefaultCredentialsProvider.create(); // fallback
         }
         S3Client s3 = S3Client.builder().region(region).credentialsProvider(creds).build();
+        // objects at or above multipart-threshold are sent in parts of that size, with at most
+        // upload-concurrency parts of one object buffered at a time
+        long partSize = Math.max(MIN_PART_SIZE, props.getS3().getMultipartThreshold().toBytes());
+        S3AsyncClient s3Async = S3AsyncClient.builder().region(region).credentialsProvider(creds)
+                .multipartEnabled(true)
+                .multipartConfiguration(MultipartConfiguration.builder()
+                        .thresholdInBytes(props.getS3().getMultipartThreshold().toBytes())
+                        .minimumPartSizeInBytes(partSize)
+                        .apiCallBufferSizeInBytes(partSize * Math.max(1, props.getS3().getUploadConcurrency()))
+                        .build())
+                .build();
         S3Presigner presigner = S3Presigner.builder().region(region).credentialsProvider(creds).build();
-        return new S3FileStorage(s3, presigner, props);
+        // upload bodies are read from their streams here, one thread per object being written
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService bodyReads = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "s3-body-read-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        FileStorage storage = new S3FileStorage(s3, s3Async, presigner, props, bodyReads);
+        if (props.getSpool().isEnabled()) {
+            try {
+                return new SpoolingFileStorage(storage, props.getSpool());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return storage;
     }
 }
\ No newline at end of file
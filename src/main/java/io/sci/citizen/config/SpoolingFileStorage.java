@@ -0,0 +1,451 @@
+package io.sci.citizen.config;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind spool in front of another storage, normally S3. Objects are written to local
+ * disk and fsync'd, and the write returns; worker threads then copy them to the delegate,
+ * retrying with backoff for as long as it fails, and delete the local copy once it is there.
+ * Until then size and download requests for the key are answered from the spool, and no
+ * public URL is handed out so that reads come through the app.
+ * <p>
+ * The spool holds at most {@code max-size} bytes. A write that does not fit waits up to
+ * {@code max-wait} for replication to free space and then fails, so callers slow down to
+ * the speed of the delegate instead of filling the disk. A write of unknown size reserves its
+ * space as it is copied, so it is held to the same limit. Each object is kept as a data file
+ * and a small meta file with its key and content type, both named by the SHA-256 of the key
+ * and a generation that is new for every write, so a rewrite never touches the files of the
+ * entry it replaces. On start the newest complete object of each key found in the spool is
+ * queued again, so a crash loses nothing that was acknowledged. The spool therefore has no
+ * default location: {@code path} must be set, to a persistent disk.
+ * <p>
+ * Resumable and presigned uploads go straight to the delegate. The spool is local to one
+ * instance, so other instances only see an object once it has been replicated.
+ */
+public class SpoolingFileStorage implements FileStorage {
+
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(5);
+    private static final int COPY_BUFFER = 64 * 1024;
+    // space taken at a time by a write that runs past the size it declared, or declared none
+    private static final long RESERVE_STEP = 1024 * 1024;
+
+    private final FileStorage delegate;
+    private final Path data;
+    private final Path meta;
+    private final Path tmp;
+    private final long maxBytes;
+    private final long maxWaitMillis;
+    private final Duration retryDelay;
+    private final ScheduledThreadPoolExecutor workers;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // copies of one key run one at a time, so an older copy cannot land after a newer one
+    private final Object[] copyLocks = new Object[64];
+    private final AtomicLong generations = new AtomicLong();
+
+    // bytes reserved by spooled and incoming objects, guarded by this
+    private long used;
+    private final AtomicLong replicated = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    public SpoolingFileStorage(FileStorage delegate, StorageProps.Spool props) throws IOException {
+        if (props.getPath() == null || props.getPath().isBlank()) {
+            throw new IllegalStateException("app.storage.spool.path must be set when the spool is enabled");
+        }
+        this.delegate = delegate;
+        Path root = Paths.get(props.getPath()).toAbsolutePath().normalize();
+        this.data = Files.createDirectories(root.resolve("data"));
+        this.meta = Files.createDirectories(root.resolve("meta"));
+        this.tmp = Files.createDirectories(root.resolve("tmp"));
+        this.maxBytes = props.getMaxSize().toBytes();
+        this.maxWaitMillis = props.getMaxWait().toMillis();
+        this.retryDelay = props.getRetryDelay();
+        for (int i = 0; i < copyLocks.length; i++) {
+            copyLocks[i] = new Object();
+        }
+        AtomicInteger count = new AtomicInteger();
+        this.workers = new ScheduledThreadPoolExecutor(Math.max(1, props.getWorkers()), r -> {
+            Thread t = new Thread(r, "storage-spool-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        recover();
+    }
+
+    @Override
+    public StoredFile store(String key, MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return store(key, in, file.getSize(), file.getContentType());
+        }
+    }
+
+    // the object has no URL of its own until it is replicated; it is read through the app meanwhile
+    @Override
+    public StoredFile store(String key, InputStream in, long size, String contentType) throws IOException {
+        String ct = Optional.ofNullable(contentType).orElse("application/octet-stream");
+        return new StoredFile(key, null, spool(key, in, size, ct), ct);
+    }
+
+    @Override
+    public void write(String key, InputStream in, long size, String contentType) throws IOException {
+        spool(key, in, size, Optional.ofNullable(contentType).orElse("application/octet-stream"));
+    }
+
+    @Override
+    public String beginUpload(String key, String contentType) throws IOException {
+        return delegate.beginUpload(key, contentType);
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream in, long size) throws IOException {
+        return delegate.uploadPart(key, uploadId, partNumber, in, size);
+    }
+
+    @Override
+    public void completeUpload(String key, String uploadId, List<String> parts) throws IOException {
+        drop(key);
+        delegate.completeUpload(key, uploadId, parts);
+    }
+
+    @Override
+    public void abortUpload(String key, String uploadId) throws IOException {
+        delegate.abortUpload(key, uploadId);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        drop(key);
+        delegate.delete(key);
+    }
+
+    @Override
+    public URI presignPut(String key, String contentType, Duration ttl) throws IOException {
+        return delegate.presignPut(key, contentType, ttl);
+    }
+
+    @Override
+    public OptionalLong size(String key) throws IOException {
+        Entry entry = entries.get(key);
+        return entry != null ? OptionalLong.of(entry.size) : delegate.size(key);
+    }
+
+    @Override
+    public Optional<FileDownload> download(String key) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            try {
+                return Optional.of(new FileDownload(Files.newInputStream(data.resolve(entry.name)), entry.size,
+                        entry.contentType, key.substring(key.lastIndexOf('/') + 1)));
+            } catch (NoSuchFileException e) {
+                // replicated in the meantime
+            }
+        }
+        return delegate.download(key);
+    }
+
+    @Override
+    public Optional<URI> publicUrl(String key) throws URISyntaxException {
+        return entries.containsKey(key) ? Optional.empty() : delegate.publicUrl(key);
+    }
+
+    public Stats stats() {
+        synchronized (this) {
+            return new Stats(entries.size(), used, replicated.get(), retries.get());
+        }
+    }
+
+    public void shutdown() throws InterruptedException {
+        // whatever is not replicated yet stays spooled and is picked up on the next start
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private long spool(String key, InputStream in, long size, String contentType) throws IOException {
+        String name = name(key) + "." + generations.incrementAndGet();
+        long reserved = size >= 0 ? size : 0;
+        reserve(reserved, 0);
+        Path file = tmp.resolve(UUID.randomUUID().toString());
+        try {
+            long written = 0;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 OutputStream out = Channels.newOutputStream(channel)) {
+                byte[] buffer = new byte[COPY_BUFFER];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    if (written + n > reserved) {
+                        // unknown or wrong size; take more space before writing past what is reserved
+                        long more = Math.max(RESERVE_STEP, written + n - reserved);
+                        reserve(more, reserved);
+                        reserved += more;
+                    }
+                    out.write(buffer, 0, n);
+                    written += n;
+                }
+                channel.force(true);
+            }
+            if (written != reserved) {
+                // give back what was reserved but not written
+                adjust(written - reserved);
+                reserved = written;
+            }
+            writeMeta(name, key, contentType);
+            try {
+                Files.move(file, data.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                deleteFiles(name);
+                throw e;
+            }
+            Entry entry = new Entry(name, written, contentType);
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                // its copy, if running, fails on the missing file and finds it was replaced
+                deleteFiles(previous.name);
+                release(previous.size);
+            }
+            schedule(key, entry, 0);
+            return written;
+        } catch (IOException | RuntimeException e) {
+            cleanUp(file, reserved);
+            throw e;
+        }
+    }
+
+    // Copies one spooled object to the delegate. A newer write of the same key replaces the
+    // entry and schedules its own copy, so only the copy of the current entry removes it.
+    // Copies of a key are serialized: one that is still uploading an older entry when the key is
+    // rewritten finishes first, and the newer copy then overwrites it in the delegate.
+    private void replicate(String key, Entry entry, int attempt) {
+        synchronized (copyLocks[Math.floorMod(key.hashCode(), copyLocks.length)]) {
+            if (entries.get(key) != entry) {
+                return;
+            }
+            try (InputStream in = Files.newInputStream(data.resolve(entry.name))) {
+                delegate.write(key, in, entry.size, entry.contentType);
+            } catch (NoSuchFileException e) {
+                if (entries.get(key) == entry) {
+                    // the spooled copy is gone and cannot be replicated; free its space
+                    e.printStackTrace();
+                    if (entries.remove(key, entry)) {
+                        deleteFiles(entry.name);
+                        release(entry.size);
+                    }
+                }
+                // otherwise replaced or dropped meanwhile
+                return;
+            } catch (Exception e) {
+                e.printStackTrace();
+                retries.incrementAndGet();
+                long delay = Math.min(retryDelay.toMillis() << Math.min(attempt, 16), MAX_RETRY_DELAY.toMillis());
+                schedule(key, entry, delay, attempt + 1);
+                return;
+            }
+            Entry current = entries.get(key);
+            if (current == entry) {
+                if (entries.remove(key, entry)) {
+                    deleteFiles(entry.name);
+                    release(entry.size);
+                }
+            } else if (current != null) {
+                // rewritten while this copy ran; make sure the newer contents follow it
+                schedule(key, current, 0);
+            }
+            replicated.incrementAndGet();
+        }
+    }
+
+    private void schedule(String key, Entry entry, long delayMillis) {
+        schedule(key, entry, delayMillis, 0);
+    }
+
+    private void schedule(String key, Entry entry, long delayMillis, int attempt) {
+        try {
+            workers.schedule(() -> replicate(key, entry, attempt), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down; the object stays spooled for the next start
+        }
+    }
+
+    // Removes a spooled copy whose key is being replaced or deleted in the delegate directly.
+    private void drop(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            deleteFiles(entry.name);
+            release(entry.size);
+        }
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(tmp)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        long newest = 0;
+        try (Stream<Path> files = Files.list(meta)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                Path object = data.resolve(name);
+                if (!Files.exists(object)) {
+                    // the write never completed
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                long generation = generation(name);
+                newest = Math.max(newest, generation);
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                String key = lines.get(0);
+                String contentType = lines.size() > 1 ? lines.get(1) : URLConnection.guessContentTypeFromName(key);
+                Entry entry = new Entry(name, Files.size(object), contentType);
+                Entry other = entries.get(key);
+                if (other != null && generation(other.name) > generation) {
+                    // a rewrite whose replaced files were not deleted before the crash
+                    deleteFiles(name);
+                    continue;
+                }
+                entries.put(key, entry);
+                if (other != null) {
+                    deleteFiles(other.name);
+                }
+            }
+        }
+        // generations keep increasing across restarts, so a new write always wins over an old one
+        generations.set(Math.max(newest, System.currentTimeMillis() * 1000));
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            synchronized (this) {
+                used += e.getValue().size;
+            }
+            schedule(e.getKey(), e.getValue(), 0);
+        }
+        // data files without meta cannot be attributed to a key; their writes were never acknowledged
+        try (Stream<Path> files = Files.list(data)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!Files.exists(meta.resolve(file.getFileName()))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void writeMeta(String name, String key, String contentType) throws IOException {
+        Path file = tmp.resolve(UUID.randomUUID().toString());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(StandardCharsets.UTF_8.encode(key + "\n" + contentType + "\n"));
+            channel.force(true);
+        }
+        Files.move(file, meta.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Waits until the spool has room for bytes more; an object larger than the whole spool
+    // is still taken when nothing but the held bytes it already reserved is spooled.
+    private synchronized void reserve(long bytes, long held) throws IOException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while (used > held && used + bytes > maxBytes) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                throw new IOException("Storage spool is full");
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for spool space");
+            }
+        }
+        used += bytes;
+    }
+
+    private synchronized void adjust(long bytes) {
+        used += bytes;
+        if (bytes < 0) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void release(long bytes) {
+        used -= bytes;
+        notifyAll();
+    }
+
+    private void cleanUp(Path file, long reserved) {
+        release(reserved);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void deleteFiles(String name) {
+        try {
+            Files.deleteIfExists(meta.resolve(name));
+            Files.deleteIfExists(data.resolve(name));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long generation(String name) {
+        try {
+            return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+        } catch (NumberFormatException e) {
+            // spooled before names carried a generation
+            return 0;
+        }
+    }
+
+    private static String name(String key) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // compared by identity: a rewrite of the same key is a new entry even with equal contents
+    private static final class Entry {
+        final String name;
+        final long size;
+        final String contentType;
+
+        Entry(String name, long size, String contentType) {
+            this.name = name;
+            this.size = size;
+            this.contentType = contentType;
+        }
+    }
+
+    /** Objects waiting for replication, the bytes they take, objects replicated and failed attempts. */
+    public record Stats(int pending, long bytes, long replicated, long retries) {}
+}
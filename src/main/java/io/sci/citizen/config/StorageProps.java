@@ -2,12 +2,16 @@ package io.sci.citizen.config;
 
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 @ConfigurationProperties(prefix = "app.storage")
 class StorageProps {
     private String type;
     private Local local = new Local();
     private S3 s3 = new S3();
+    private Spool spool = new Spool();
 
     public String getType() {
         return type;
@@ -33,10 +37,20 @@ class StorageProps {
         this.s3 = s3;
     }
 
+    public Spool getSpool() {
+        return spool;
+    }
+
+    public void setSpool(Spool spool) {
+        this.spool = spool;
+    }
+
     // getters/setters
     public static class Local {
         private String basePath;
         private String baseUrl;
+        private DataSize multipartThreshold = DataSize.ofMegabytes(8);
+        private Integer uploadConcurrency = 4;
 
         public String getBaseUrl() {
             return baseUrl;
@@ -53,6 +67,22 @@ class StorageProps {
         public void setBasePath(String basePath) {
             this.basePath = basePath;
         }
+
+        public DataSize getMultipartThreshold() {
+            return multipartThreshold;
+        }
+
+        public void setMultipartThreshold(DataSize multipartThreshold) {
+            this.multipartThreshold = multipartThreshold;
+        }
+
+        public Integer getUploadConcurrency() {
+            return uploadConcurrency;
+        }
+
+        public void setUploadConcurrency(Integer uploadConcurrency) {
+            this.uploadConcurrency = uploadConcurrency;
+        }
     }
     public static class S3 {
         private String bucket;
@@ -63,6 +93,8 @@ class StorageProps {
         private String secretKey;
         private String sessionToken;
         private String profile;
+        private DataSize multipartThreshold = DataSize.ofMegabytes(8);
+        private Integer uploadConcurrency = 4;
 
         public String getBucket() {
             return bucket;
@@ -127,5 +159,78 @@ class StorageProps {
         public void setProfile(String profile) {
             this.profile = profile;
         }
+
+        public DataSize getMultipartThreshold() {
+            return multipartThreshold;
+        }
+
+        public void setMultipartThreshold(DataSize multipartThreshold) {
+            this.multipartThreshold = multipartThreshold;
+        }
+
+        public Integer getUploadConcurrency() {
+            return uploadConcurrency;
+        }
+
+        public void setUploadConcurrency(Integer uploadConcurrency) {
+            this.uploadConcurrency = uploadConcurrency;
+        }
+    }
+    // write-behind spool in front of S3, see SpoolingFileStorage
+    public static class Spool {
+        private boolean enabled;
+        private String path;
+        private DataSize maxSize = DataSize.ofGigabytes(2);
+        private Duration maxWait = Duration.ofSeconds(30);
+        private Integer workers = 4;
+        private Duration retryDelay = Duration.ofSeconds(2);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public Integer getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(Integer workers) {
+            this.workers = workers;
+        }
+
+        public Duration getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(Duration retryDelay) {
+            this.retryDelay = retryDelay;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package io.sci.citizen.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Signs the upload URLs {@link LocalFileStorage} hands out for direct uploads, the local
+ * counterpart of a presigned S3 PUT. A signature covers the key and the expiry time.
+ * <p>
+ * Without {@code app.storage.local.upload-secret} a random secret is used, so URLs stop
+ * working when the app restarts and are not accepted by other instances.
+ */
+@Component
+public class UploadSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec secret;
+
+    public UploadSigner(@Value("${app.storage.local.upload-secret:}") String secret) {
+        byte[] bytes;
+        if (secret == null || secret.isBlank()) {
+            bytes = new byte[32];
+            new SecureRandom().nextBytes(bytes);
+        } else {
+            bytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.secret = new SecretKeySpec(bytes, ALGORITHM);
+    }
+
+    /** Signature for uploading {@code key} until {@code expires}, in epoch seconds. */
+    public String sign(String key, long expires) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            byte[] digest = mac.doFinal((key + "\n" + expires).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Whether {@code signature} was made by {@link #sign} for the key and has not expired. */
+    public boolean verify(String key, long expires, String signature) {
+        if (signature == null || expires < System.currentTimeMillis() / 1000) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(key, expires).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+}
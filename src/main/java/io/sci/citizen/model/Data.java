@@ -12,11 +12,17 @@ import java.util.List;
 import java.util.Objects;
 
 @Entity
-@Table(name="data")
+@Table(name="data", uniqueConstraints = @UniqueConstraint(name = "uk_data_user_uuid", columnNames = {"user_id", "uuid"}),
+        indexes = {
+                @Index(name = "idx_data_created", columnList = "createdAt, id"),
+                @Index(name = "idx_data_user_created", columnList = "user_id, createdAt, id"),
+                @Index(name = "idx_data_project_created", columnList = "project_id, createdAt, id")
+        })
 public class Data implements Serializable {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "data_seq")
+    @SequenceGenerator(name = "data_seq", sequenceName = "data_seq", allocationSize = 50)
     private Long id;
     private String uuid;
     private double latitude;
@@ -24,12 +30,12 @@ public class Data implements Serializable {
     private double accuracy;
     private int status;
 
-    @ManyToOne(cascade = CascadeType.ALL)
+    @ManyToOne
     @JoinColumn(name = "project_id")
     @NotFound(action = NotFoundAction.IGNORE)
     private Project project;
 
-    @ManyToOne(cascade = CascadeType.ALL)
+    @ManyToOne
     @JoinColumn(name = "user_id")
     @NotFound(action = NotFoundAction.IGNORE)
     private User user;
@@ -55,7 +61,7 @@ public class Data implements Serializable {
     @OneToMany(mappedBy="data", cascade = {CascadeType.ALL})
     private List<QueryReply> surveyResponses;
 
-    @ManyToOne(cascade = CascadeType.ALL)
+    @ManyToOne
     @JoinColumn(name = "verificator_id")
     @NotFound(action = NotFoundAction.IGNORE)
     private User verificator;
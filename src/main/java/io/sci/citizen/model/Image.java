@@ -9,11 +9,16 @@ import java.time.Instant;
 import java.util.Objects;
 
 @Entity
-@Table(name="image")
+@Table(name="image", indexes = {
+        @Index(name = "idx_image_uuid", columnList = "uuid"),
+        @Index(name = "idx_image_content_hash", columnList = "contentHash"),
+        @Index(name = "idx_image_data", columnList = "data_id")
+})
 public class Image {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "image_seq")
+    @SequenceGenerator(name = "image_seq", sequenceName = "image_seq", allocationSize = 50)
     private Long id;
 
     private String uuid;
@@ -36,6 +41,13 @@ public class Image {
 
     private Integer status;
 
+    // 0 = waiting for the upload worker, 1 = stored, 2 = gave up after retries; null on rows from before the pipeline
+    private Integer storageStatus;
+
+    // SHA-256 of the image bytes, hex encoded; null on rows from before content addressing
+    @Column(length = 64)
+    private String contentHash;
+
     public Long getId() { return id; }
 
     public void setId(Long id) { this.id = id; }
@@ -60,6 +72,14 @@ public class Image {
 
     public void setStatus(Integer status) { this.status = status; }
 
+    public Integer getStorageStatus() { return storageStatus; }
+
+    public void setStorageStatus(Integer storageStatus) { this.storageStatus = storageStatus; }
+
+    public String getContentHash() { return contentHash; }
+
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -37,6 +37,20 @@ public class Project {
     @JsonIgnore
     private boolean publiclyAvailable = false;
 
+    // image policy applied at ingest; null keeps uploads as they are
+    @JsonIgnore
+    private Integer imageMaxDimension;
+
+    @JsonIgnore
+    @Column(length = 10)
+    private String imageFormat;
+
+    @JsonIgnore
+    private Float imageQuality;
+
+    @JsonIgnore
+    private Boolean keepOriginalImage;
+
     @JsonIgnore
     @ManyToOne(cascade = CascadeType.ALL)
     @JoinColumn(name = "user_id")
@@ -97,6 +111,38 @@ public class Project {
         this.publiclyAvailable = publiclyAvailable;
     }
 
+    public Integer getImageMaxDimension() {
+        return imageMaxDimension;
+    }
+
+    public void setImageMaxDimension(Integer imageMaxDimension) {
+        this.imageMaxDimension = imageMaxDimension;
+    }
+
+    public String getImageFormat() {
+        return imageFormat;
+    }
+
+    public void setImageFormat(String imageFormat) {
+        this.imageFormat = imageFormat;
+    }
+
+    public Float getImageQuality() {
+        return imageQuality;
+    }
+
+    public void setImageQuality(Float imageQuality) {
+        this.imageQuality = imageQuality;
+    }
+
+    public Boolean getKeepOriginalImage() {
+        return keepOriginalImage;
+    }
+
+    public void setKeepOriginalImage(Boolean keepOriginalImage) {
+        this.keepOriginalImage = keepOriginalImage;
+    }
+
     public List<Section> getSections() {
         return sections;
     }
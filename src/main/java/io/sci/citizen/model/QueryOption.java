@@ -13,7 +13,8 @@ import java.util.Objects;
 public class QueryOption implements Serializable {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "survey_parameter_seq")
+    @SequenceGenerator(name = "survey_parameter_seq", sequenceName = "survey_parameter_seq", allocationSize = 50)
     private Long id;
     private Integer sequence;
     private boolean enabled;
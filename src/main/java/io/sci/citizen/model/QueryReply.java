@@ -10,11 +10,12 @@ import java.util.Date;
 import java.util.Objects;
 
 @Entity
-@Table(name="survey_response")
+@Table(name="survey_response", indexes = @Index(name = "idx_survey_response_data", columnList = "data_id"))
 public class QueryReply {
 
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "survey_response_seq")
+    @SequenceGenerator(name = "survey_response_seq", sequenceName = "survey_response_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
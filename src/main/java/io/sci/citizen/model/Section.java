@@ -16,7 +16,8 @@ import java.util.Objects;
 public class Section implements Serializable {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "section_seq")
+    @SequenceGenerator(name = "section_seq", sequenceName = "section_seq", allocationSize = 50)
     private Long id;
 
     private int sequence;
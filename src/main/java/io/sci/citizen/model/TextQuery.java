@@ -16,7 +16,8 @@ import java.util.Objects;
 public class TextQuery implements Serializable {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "survey_question_seq")
+    @SequenceGenerator(name = "survey_question_seq", sequenceName = "survey_question_seq", allocationSize = 50)
     private Long id;
 
     private String attribute;
@@ -0,0 +1,117 @@
+package io.sci.citizen.model;
+
+import jakarta.persistence.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A resumable image upload. Bytes are forwarded to storage as multipart parts once a full
+ * part has arrived; {@code flushed} counts the bytes already handed over and {@code parts}
+ * holds the storage part tokens in order.
+ */
+@Entity
+@Table(name = "upload_session")
+public class UploadSession {
+
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long dataId;
+
+    @Column(nullable = false)
+    private Long sectionId;
+
+    private String originalFileName;
+
+    private String contentType;
+
+    private long size;
+
+    private String storageKey;
+
+    private String storageUploadId;
+
+    private long flushed;
+
+    @Column(length = 4000)
+    private String parts;
+
+    @Column(nullable = false, updatable = false)
+    private Date createdAt = new Date();
+
+    private Date updatedAt;
+
+    public String getId() { return id; }
+
+    public void setId(String id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getDataId() { return dataId; }
+
+    public void setDataId(Long dataId) { this.dataId = dataId; }
+
+    public Long getSectionId() { return sectionId; }
+
+    public void setSectionId(Long sectionId) { this.sectionId = sectionId; }
+
+    public String getOriginalFileName() { return originalFileName; }
+
+    public void setOriginalFileName(String originalFileName) { this.originalFileName = originalFileName; }
+
+    public String getContentType() { return contentType; }
+
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public long getSize() { return size; }
+
+    public void setSize(long size) { this.size = size; }
+
+    public String getStorageKey() { return storageKey; }
+
+    public void setStorageKey(String storageKey) { this.storageKey = storageKey; }
+
+    public String getStorageUploadId() { return storageUploadId; }
+
+    public void setStorageUploadId(String storageUploadId) { this.storageUploadId = storageUploadId; }
+
+    public long getFlushed() { return flushed; }
+
+    public void setFlushed(long flushed) { this.flushed = flushed; }
+
+    public List<String> getParts() {
+        return parts == null || parts.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(parts.split(",")));
+    }
+
+    public void setParts(List<String> parts) { this.parts = String.join(",", parts); }
+
+    public Date getCreatedAt() { return createdAt; }
+
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+
+    public Date getUpdatedAt() { return updatedAt; }
+
+    public void setUpdatedAt(Date updatedAt) { this.updatedAt = updatedAt; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        UploadSession that = (UploadSession) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+}
@@ -0,0 +1,15 @@
+package io.sci.citizen.model.dto;
+
+import java.util.Date;
+
+/** An answer of a record with the attribute of its question, as returned with the record's details. */
+public interface AnswerSummary {
+
+    Long getQuestionId();
+
+    String getAttribute();
+
+    String getResponse();
+
+    Date getResponseDateTime();
+}
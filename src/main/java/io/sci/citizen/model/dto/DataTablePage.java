@@ -0,0 +1,9 @@
+package io.sci.citizen.model.dto;
+
+import java.util.List;
+
+/**
+ * A page of the records table in the shape jQuery DataTables expects from server-side
+ * processing: {@code draw} echoes the request so stale responses can be dropped.
+ */
+public record DataTablePage(int draw, long recordsTotal, long recordsFiltered, List<DataTableRow> data) { }
@@ -0,0 +1,7 @@
+package io.sci.citizen.model.dto;
+
+import java.util.Date;
+
+/** One row of the records table on the data admin page. */
+public record DataTableRow(long id, Date createdAt, String contributor, String projectName, int status,
+                           String verificator, Date verifiedAt) { }
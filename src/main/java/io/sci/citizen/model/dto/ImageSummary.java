@@ -0,0 +1,19 @@
+package io.sci.citizen.model.dto;
+
+/** An image of a record as returned with the record's details. */
+public interface ImageSummary {
+
+    Long getId();
+
+    String getUuid();
+
+    String getOriginalFileName();
+
+    Long getSectionId();
+
+    Integer getStorageStatus();
+
+    default String getUrl() {
+        return "/files/" + getUuid();
+    }
+}
@@ -0,0 +1,20 @@
+package io.sci.citizen.model.dto;
+
+/**
+ * An image the upload workers have not stored yet, with what recovery needs to queue it
+ * again: its key, the name and hash of the uploaded file, and its record's project.
+ */
+public interface PendingImage {
+
+    Long getId();
+
+    String getUuid();
+
+    String getContentHash();
+
+    String getOriginalFileName();
+
+    Integer getStorageStatus();
+
+    Long getProjectId();
+}
@@ -1,8 +1,12 @@
 package io.sci.citizen.model.dto;
 
 import io.sci.citizen.model.Project;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -23,6 +27,17 @@ public class ProjectRequest {
     @Size(max = 500)
     private String description;
 
+    @Min(16)
+    private Integer imageMaxDimension;
+
+    @Pattern(regexp = "|jpeg|png")
+    private String imageFormat;
+
+    @DecimalMin("0.1") @DecimalMax("1.0")
+    private Float imageQuality;
+
+    private boolean keepOriginalImage = false;
+
     // getters/setters
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
@@ -70,6 +85,38 @@ public class ProjectRequest {
         this.publiclyAvailable = publiclyAvailable;
     }
 
+    public Integer getImageMaxDimension() {
+        return imageMaxDimension;
+    }
+
+    public void setImageMaxDimension(Integer imageMaxDimension) {
+        this.imageMaxDimension = imageMaxDimension;
+    }
+
+    public String getImageFormat() {
+        return imageFormat;
+    }
+
+    public void setImageFormat(String imageFormat) {
+        this.imageFormat = imageFormat;
+    }
+
+    public Float getImageQuality() {
+        return imageQuality;
+    }
+
+    public void setImageQuality(Float imageQuality) {
+        this.imageQuality = imageQuality;
+    }
+
+    public boolean isKeepOriginalImage() {
+        return keepOriginalImage;
+    }
+
+    public void setKeepOriginalImage(boolean keepOriginalImage) {
+        this.keepOriginalImage = keepOriginalImage;
+    }
+
     public Project toEntity() {
         Project p = new Project();
         p.setName(name != null ? name.trim() : null);
@@ -77,6 +124,10 @@ public class ProjectRequest {
         p.setIcon(icon != null ? icon.trim() : null);
         p.setDescription(description);
         p.setPubliclyAvailable(publiclyAvailable);
+        p.setImageMaxDimension(imageMaxDimension);
+        p.setImageFormat(imageFormat == null || imageFormat.isBlank() ? null : imageFormat);
+        p.setImageQuality(imageQuality);
+        p.setKeepOriginalImage(keepOriginalImage);
         return p;
     }
 }
@@ -0,0 +1,37 @@
+package io.sci.citizen.model.dto;
+
+import java.util.Date;
+
+/**
+ * A record as listed by the API: its own columns and its project's name, without images or
+ * answers. Read straight from the {@code data} table by the queries in
+ * {@link io.sci.citizen.model.repository.DataRepository}.
+ */
+public interface RecordSummary {
+
+    Long getId();
+
+    String getUuid();
+
+    double getLatitude();
+
+    double getLongitude();
+
+    double getAccuracy();
+
+    int getStatus();
+
+    Long getProjectId();
+
+    String getProjectName();
+
+    Date getStartDate();
+
+    Date getFinishDate();
+
+    Date getCreatedAt();
+
+    Date getUpdatedAt();
+
+    Date getVerifiedAt();
+}
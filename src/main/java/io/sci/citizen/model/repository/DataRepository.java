@@ -2,14 +2,20 @@ package io.sci.citizen.model.repository;
 
 import io.sci.citizen.model.Data;
 import io.sci.citizen.model.User;
+import io.sci.citizen.model.dto.RecordSummary;
+import jakarta.persistence.QueryHint;
 import jakarta.transaction.Transactional;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.math.BigInteger;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Transactional
 public interface DataRepository extends JpaRepository<Data, Long> {
@@ -62,17 +68,89 @@ public interface DataRepository extends JpaRepository<Data, Long> {
             nativeQuery = true)
     Integer getRecordCountByProjectIdAndUserIdAndStatus(@Param("projectId") long projectId, @Param("userId") long userId, @Param("status") int status);
 
+    @Query(value = "select project_id from data where id = :id", nativeQuery = true)
+    Long findProjectId(@Param("id") long id);
+
     List<Data> findByUser_IdAndUuidOrderByCreatedAtDesc(Long userId, String uuid);
 
-    List<Data> findByUser_IdOrderByCreatedAtDesc(Long userId);
+    List<Data> findByProject_IdOrderByCreatedAtDesc(Long projectId);
 
-    List<Data> findByUser_IdAndStatusOrderByCreatedAtDesc(Long userId, int status);
+    // Record listings page by keyset on (created_at, id), newest first: each page starts after
+    // the last row of the previous one and is read from the matching index, however deep it is.
+    // Only the columns of a list item are selected, so no images, answers or users are loaded.
 
-    List<Data> findByProject_IdOrderByCreatedAtDesc(Long projectId);
+    String SUMMARY = "select d.id, d.uuid, d.latitude, d.longitude, d.accuracy, d.status, d.project_id as \"projectId\", "
+            + "p.name as \"projectName\", d.start_date as \"startDate\", d.finish_date as \"finishDate\", "
+            + "d.created_at as \"createdAt\", d.updated_at as \"updatedAt\", d.verified_at as \"verifiedAt\" "
+            + "from data d left join project p on p.id = d.project_id ";
+
+    String NEXT_PAGE = "(d.created_at, d.id) < (:createdAt, :id) order by d.created_at desc, d.id desc limit :limit";
+
+    @Query(value = SUMMARY + "where " + NEXT_PAGE, nativeQuery = true)
+    List<RecordSummary> findPage(@Param("createdAt") Date createdAt, @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = SUMMARY + "where d.user_id = :userId and " + NEXT_PAGE, nativeQuery = true)
+    List<RecordSummary> findPageByUser(@Param("userId") long userId, @Param("createdAt") Date createdAt,
+                                       @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = SUMMARY + "where d.user_id = :userId and d.status = :status and " + NEXT_PAGE, nativeQuery = true)
+    List<RecordSummary> findPageByUserAndStatus(@Param("userId") long userId, @Param("status") int status,
+                                                @Param("createdAt") Date createdAt, @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = SUMMARY + "where d.project_id = :projectId and " + NEXT_PAGE, nativeQuery = true)
+    List<RecordSummary> findPageByProject(@Param("projectId") long projectId, @Param("createdAt") Date createdAt,
+                                          @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = SUMMARY + "where d.project_id = :projectId and d.user_id = :userId and " + NEXT_PAGE, nativeQuery = true)
+    List<RecordSummary> findPageByProjectAndUser(@Param("projectId") long projectId, @Param("userId") long userId,
+                                                 @Param("createdAt") Date createdAt, @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = SUMMARY + "where d.project_id = :projectId and d.user_id = :userId and d.status = :status and " + NEXT_PAGE,
+            nativeQuery = true)
+    List<RecordSummary> findPageByProjectAndUserAndStatus(@Param("projectId") long projectId, @Param("userId") long userId,
+                                                          @Param("status") int status, @Param("createdAt") Date createdAt,
+                                                          @Param("id") long id, @Param("limit") int limit);
 
-    List<Data> findByProject_IdAndUser_IdOrderByCreatedAtDesc(Long projectId, Long userId);
+    @Query(value = SUMMARY + "where d.id = :id", nativeQuery = true)
+    Optional<RecordSummary> findSummary(@Param("id") long id);
 
-    List<Data> findByProject_IdAndUser_IdAndStatusOrderByCreatedAtDesc(Long projectId, Long userId, int status);
+    // whether the record belongs to the user or to one of the user's projects
+    @Query(value = "select exists (select 1 from data d left join project p on p.id = d.project_id "
+            + "where d.id = :id and (d.user_id = :userId or p.user_id = :userId))", nativeQuery = true)
+    boolean isVisibleTo(@Param("id") long id, @Param("userId") long userId);
+
+    // Full exports stream the same summaries through a database cursor read FETCH_SIZE rows at a
+    // time; they must be consumed inside a transaction and closed when done.
+
+    String FETCH_SIZE = "500";
+
+    String NEWEST_FIRST = "order by d.created_at desc, d.id desc";
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query(value = SUMMARY + NEWEST_FIRST, nativeQuery = true)
+    Stream<RecordSummary> streamAll();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query(value = SUMMARY + "where d.user_id = :userId " + NEWEST_FIRST, nativeQuery = true)
+    Stream<RecordSummary> streamByUser(@Param("userId") long userId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query(value = SUMMARY + "where d.user_id = :userId and d.status = :status " + NEWEST_FIRST, nativeQuery = true)
+    Stream<RecordSummary> streamByUserAndStatus(@Param("userId") long userId, @Param("status") int status);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query(value = SUMMARY + "where d.project_id = :projectId " + NEWEST_FIRST, nativeQuery = true)
+    Stream<RecordSummary> streamByProject(@Param("projectId") long projectId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query(value = SUMMARY + "where d.project_id = :projectId and d.user_id = :userId " + NEWEST_FIRST, nativeQuery = true)
+    Stream<RecordSummary> streamByProjectAndUser(@Param("projectId") long projectId, @Param("userId") long userId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query(value = SUMMARY + "where d.project_id = :projectId and d.user_id = :userId and d.status = :status " + NEWEST_FIRST,
+            nativeQuery = true)
+    Stream<RecordSummary> streamByProjectAndUserAndStatus(@Param("projectId") long projectId, @Param("userId") long userId,
+                                                         @Param("status") int status);
 
     long user(User user);
 }
@@ -0,0 +1,76 @@
+package io.sci.citizen.model.repository;
+
+import io.sci.citizen.model.dto.DataTableRow;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Queries behind the records table of the data admin page. Filtering, ordering and paging
+ * all happen in SQL so only the rows on screen leave the database; the names shown in the
+ * table are joined in rather than loaded through the entities.
+ */
+@Repository
+public class DataTableRepository {
+
+    // sortable table columns by index; null where the column is not sortable
+    private static final String[] ORDER_COLUMNS = {
+            "d.id", "d.created_at", "u.full_name", "p.name", "d.status", null, "v.full_name", "d.verified_at"};
+
+    private static final String FROM = " from data d left join app_user u on u.id = d.user_id "
+            + "left join project p on p.id = d.project_id left join app_user v on v.id = d.verificator_id ";
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public DataTableRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Number of records in the project, or in all projects when null, that match {@code search}. */
+    public long count(Long projectId, String search) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        Long count = jdbc.queryForObject("select count(*)" + FROM + where(projectId, search, params), params, Long.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * One page of matching records ordered by the table column at {@code orderColumn}; newest
+     * first when that column can't be sorted on. Ties are broken by id so pages don't overlap.
+     */
+    public List<DataTableRow> findPage(Long projectId, String search, int orderColumn, boolean ascending,
+                                       int offset, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("offset", offset)
+                .addValue("limit", limit);
+        String column = orderColumn >= 0 && orderColumn < ORDER_COLUMNS.length ? ORDER_COLUMNS[orderColumn] : null;
+        String direction = ascending ? "asc" : "desc";
+        String order = column == null ? "d.created_at desc, d.id desc"
+                : column.equals("d.id") ? "d.id " + direction
+                : column + " " + direction + " nulls last, d.id " + direction;
+        return jdbc.query("select d.id, d.created_at, u.full_name as contributor, p.name as project_name, d.status, "
+                        + "v.full_name as verificator, d.verified_at" + FROM + where(projectId, search, params)
+                        + "order by " + order + " offset :offset limit :limit",
+                params,
+                (rs, i) -> new DataTableRow(rs.getLong("id"), rs.getTimestamp("created_at"), rs.getString("contributor"),
+                        rs.getString("project_name"), rs.getInt("status"), rs.getString("verificator"),
+                        rs.getTimestamp("verified_at")));
+    }
+
+    // search matches the names shown in the table, or the record id exactly
+    private static String where(Long projectId, String search, MapSqlParameterSource params) {
+        StringBuilder where = new StringBuilder("where true ");
+        if (projectId != null) {
+            where.append("and d.project_id = :projectId ");
+            params.addValue("projectId", projectId);
+        }
+        if (search != null && !search.isBlank()) {
+            where.append("and (u.full_name ilike :pattern or p.name ilike :pattern or v.full_name ilike :pattern "
+                    + "or cast(d.id as varchar) = :search) ");
+            params.addValue("pattern", "%" + search.trim().replaceAll("[\\\\%_]", "\\\\$0") + "%");
+            params.addValue("search", search.trim());
+        }
+        return where.toString();
+    }
+}
@@ -1,12 +1,15 @@
 package io.sci.citizen.model.repository;
 
 import io.sci.citizen.model.Image;
+import io.sci.citizen.model.dto.ImageSummary;
+import io.sci.citizen.model.dto.PendingImage;
 import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 @Transactional
@@ -19,4 +22,22 @@ public interface ImageRepository extends JpaRepository<Image, Long> {
     int deleteObsoleteImage(@Param("dataId") long dataId, @Param("sectionId") long sectionId, @Param("name") String name);
 
     List<Image> findByDataId(Long dataId);
+
+    @Query(value = "select id, uuid, original_file_name as \"originalFileName\", section_id as \"sectionId\", "
+            + "storage_status as \"storageStatus\" from image where data_id = :dataId order by id", nativeQuery = true)
+    List<ImageSummary> findSummaries(@Param("dataId") long dataId);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query(value = "update image set storage_status = :status where id = :id", nativeQuery = true)
+    int updateStorageStatus(@Param("id") long id, @Param("status") int status);
+
+    // keyset paged by id: pass the last id of the previous page, or 0 for the first
+    @Query(value = "select i.id, i.uuid, i.content_hash as \"contentHash\", i.original_file_name as \"originalFileName\", "
+            + "i.storage_status as \"storageStatus\", d.project_id as \"projectId\" from image i "
+            + "left join data d on d.id = i.data_id where i.storage_status in (:statuses) and i.id > :after "
+            + "order by i.id limit :limit", nativeQuery = true)
+    List<PendingImage> findPending(@Param("statuses") Collection<Integer> statuses, @Param("after") long after,
+                                   @Param("limit") int limit);
+
+    boolean existsByUuidAndStorageStatus(String uuid, Integer storageStatus);
 }
\ No newline at end of file
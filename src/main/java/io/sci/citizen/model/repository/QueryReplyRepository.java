@@ -1,11 +1,21 @@
 package io.sci.citizen.model.repository;
 
 import io.sci.citizen.model.QueryReply;
+import io.sci.citizen.model.dto.AnswerSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 @Transactional
 public interface QueryReplyRepository extends JpaRepository<QueryReply, Integer> {
 
     QueryReply findByData_idAndQuestion_Id(Long dataId, Long questionId);
+
+    @Query(value = "select q.id as \"questionId\", q.attribute, r.response, r.date_time as \"responseDateTime\" "
+            + "from survey_response r join survey_question q on q.id = r.question_id where r.data_id = :dataId "
+            + "order by q.sequence, q.id", nativeQuery = true)
+    List<AnswerSummary> findSummaries(@Param("dataId") long dataId);
 }
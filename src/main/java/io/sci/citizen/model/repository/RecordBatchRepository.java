@@ -0,0 +1,317 @@
+package io.sci.citizen.model.repository;
+
+import io.sci.citizen.api.dto.RecordData;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Plain JDBC writes for record ingest. Batched uploads send rows with {@code addBatch} so a
+ * whole sync costs a handful of round-trips instead of several per record, and lookups use
+ * a single {@code IN} query per table. Records are upserted on their {@code (user_id, uuid)}
+ * key so retries can never create duplicates.
+ */
+@Repository
+public class RecordBatchRepository {
+
+    private static final String UPSERT_CONFLICT = " on conflict (user_id, uuid) do update set latitude = excluded.latitude, "
+            + "longitude = excluded.longitude, accuracy = excluded.accuracy, project_id = coalesce(excluded.project_id, data.project_id), "
+            + "start_date = excluded.start_date, finish_date = excluded.finish_date, updated_at = excluded.created_at";
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public RecordBatchRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Inserts the record, or updates the user's existing record with the same uuid, in a
+     * single statement. An unknown project id is stored as null on insert and leaves the
+     * stored project unchanged on update.
+     */
+    public Upsert upsertData(long userId, RecordData r, Date now) {
+        return jdbc.getJdbcTemplate().query("insert into data (uuid, latitude, longitude, accuracy, status, project_id, user_id, "
+                        + "start_date, finish_date, created_at) values (?, ?, ?, ?, 0, (select id from project where id = ?), ?, ?, ?, ?)"
+                        + UPSERT_CONFLICT + " returning id, project_id, (xmax = 0) as created",
+                ps -> {
+                    ps.setString(1, r.uuid());
+                    ps.setDouble(2, r.latitude());
+                    ps.setDouble(3, r.longitude());
+                    ps.setDouble(4, r.accuracy());
+                    setLong(ps, 5, r.projectId());
+                    ps.setLong(6, userId);
+                    ps.setTimestamp(7, timestamp(r.startDate()));
+                    ps.setTimestamp(8, timestamp(r.finishDate()));
+                    ps.setTimestamp(9, timestamp(now));
+                },
+                rs -> {
+                    rs.next();
+                    long projectId = rs.getLong("project_id");
+                    return new Upsert(rs.getLong("id"), rs.wasNull() ? null : projectId, rs.getBoolean("created"));
+                });
+    }
+
+    /** Latest record id per uuid for the given user. */
+    public Map<String, Long> findDataIds(long userId, Collection<String> uuids) {
+        Map<String, Long> ids = new HashMap<>();
+        if (uuids.isEmpty()) {
+            return ids;
+        }
+        jdbc.query("select id, uuid from data where user_id = :userId and uuid in (:uuids) order by created_at",
+                Map.of("userId", userId, "uuids", uuids),
+                rs -> {
+                    ids.put(rs.getString("uuid"), rs.getLong("id"));
+                });
+        return ids;
+    }
+
+    public Set<Long> findProjectIds(Collection<Long> ids) {
+        return findIds("project", ids);
+    }
+
+    public Set<Long> findQuestionIds(Collection<Long> ids) {
+        return findIds("survey_question", ids);
+    }
+
+    /** Existing answers as data id -> question id -> reply. */
+    public Map<Long, Map<Long, Reply>> findReplies(Collection<Long> dataIds) {
+        Map<Long, Map<Long, Reply>> replies = new HashMap<>();
+        if (dataIds.isEmpty()) {
+            return replies;
+        }
+        jdbc.query("select id, data_id, question_id, response from survey_response where data_id in (:dataIds)",
+                Map.of("dataIds", dataIds),
+                rs -> {
+                    Reply reply = new Reply(rs.getLong("id"), rs.getLong("data_id"), rs.getLong("question_id"), rs.getString("response"));
+                    replies.computeIfAbsent(reply.dataId(), k -> new HashMap<>()).put(reply.questionId(), reply);
+                });
+        return replies;
+    }
+
+    /** Section id and file name of each image of a record, without loading the entities. */
+    public List<ImageName> findImages(long dataId) {
+        return jdbc.query("select section_id, original_file_name from image where data_id = :dataId",
+                Map.of("dataId", dataId),
+                (rs, i) -> new ImageName(rs.getLong("section_id"), rs.getString("original_file_name")));
+    }
+
+    /**
+     * Storage keys of the user's stored images by content hash, for the given hashes. Looked
+     * up through the content hash index in one query.
+     */
+    public Map<String, String> findStoredImages(long userId, Collection<String> hashes) {
+        Map<String, String> keys = new HashMap<>();
+        if (hashes.isEmpty()) {
+            return keys;
+        }
+        jdbc.query("select i.content_hash, min(i.uuid) as uuid from image i join data d on d.id = i.data_id "
+                        + "where d.user_id = :userId and i.content_hash in (:hashes) and i.storage_status = 1 "
+                        + "group by i.content_hash",
+                Map.of("userId", userId, "hashes", hashes),
+                rs -> {
+                    keys.put(rs.getString("content_hash"), rs.getString("uuid"));
+                });
+        return keys;
+    }
+
+    /** Section ids and question ids with their types and option ids that make up a project's form. */
+    public Form findForm(long projectId) {
+        Set<Long> sectionIds = new HashSet<>();
+        Map<Long, Set<Long>> questionOptions = new HashMap<>();
+        Map<Long, Integer> questionTypes = new HashMap<>();
+        jdbc.query("select s.id as section_id, q.id as question_id, q.type, o.id as option_id from section s "
+                        + "left join survey_question q on q.section_id = s.id "
+                        + "left join survey_parameter o on o.question_id = q.id where s.project_id = :projectId",
+                Map.of("projectId", projectId),
+                rs -> {
+                    sectionIds.add(rs.getLong("section_id"));
+                    long questionId = rs.getLong("question_id");
+                    if (rs.wasNull()) {
+                        return;
+                    }
+                    int type = rs.getInt("type");
+                    if (!rs.wasNull()) {
+                        questionTypes.put(questionId, type);
+                    }
+                    Set<Long> options = questionOptions.computeIfAbsent(questionId, k -> new HashSet<>());
+                    long optionId = rs.getLong("option_id");
+                    if (!rs.wasNull()) {
+                        options.add(optionId);
+                    }
+                });
+        return new Form(sectionIds, questionOptions, questionTypes);
+    }
+
+    /** The project's image settings, or null for an unknown project. */
+    public ImageSettings findImageSettings(long projectId) {
+        List<ImageSettings> settings = jdbc.query("select image_max_dimension, image_format, image_quality, keep_original_image "
+                        + "from project where id = :projectId",
+                Map.of("projectId", projectId),
+                (rs, i) -> new ImageSettings(rs.getObject("image_max_dimension", Integer.class), rs.getString("image_format"),
+                        rs.getObject("image_quality", Float.class), rs.getObject("keep_original_image", Boolean.class)));
+        return settings.isEmpty() ? null : settings.get(0);
+    }
+
+    /**
+     * Inserts new records and returns what was written for each, in input order. A project
+     * id that is not in {@code projectIds} is stored as null. A record inserted concurrently
+     * by another request is updated instead and reported as not created, as by
+     * {@link #upsertData}, so its answers can be compared with the stored ones.
+     */
+    public List<Upsert> insertData(long userId, List<RecordData> records, Set<Long> projectIds, Date now) {
+        if (records.isEmpty()) {
+            return List.of();
+        }
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbc.getJdbcTemplate().batchUpdate(
+                con -> con.prepareStatement("insert into data (uuid, latitude, longitude, accuracy, status, project_id, user_id, "
+                        + "start_date, finish_date, created_at) values (?, ?, ?, ?, 0, ?, ?, ?, ?, ?)" + UPSERT_CONFLICT
+                        + " returning id, project_id, (xmax = 0) as created", new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        RecordData r = records.get(i);
+                        ps.setString(1, r.uuid());
+                        ps.setDouble(2, r.latitude());
+                        ps.setDouble(3, r.longitude());
+                        ps.setDouble(4, r.accuracy());
+                        setLong(ps, 5, projectIds.contains(r.projectId()) ? r.projectId() : null);
+                        ps.setLong(6, userId);
+                        ps.setTimestamp(7, timestamp(r.startDate()));
+                        ps.setTimestamp(8, timestamp(r.finishDate()));
+                        ps.setTimestamp(9, timestamp(now));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return records.size();
+                    }
+                },
+                keys);
+        List<Upsert> rows = new ArrayList<>(records.size());
+        for (Map<String, Object> row : keys.getKeyList()) {
+            Number projectId = (Number) row.get("project_id");
+            rows.add(new Upsert(((Number) row.get("id")).longValue(), projectId == null ? null : projectId.longValue(),
+                    Boolean.TRUE.equals(row.get("created"))));
+        }
+        return rows;
+    }
+
+    /** Updates existing records; an unknown project id leaves the stored project unchanged. */
+    public void updateData(List<Long> ids, List<RecordData> records, Set<Long> projectIds, Date now) {
+        if (records.isEmpty()) {
+            return;
+        }
+        jdbc.getJdbcTemplate().batchUpdate("update data set latitude = ?, longitude = ?, accuracy = ?, "
+                        + "project_id = coalesce(?, project_id), start_date = ?, finish_date = ?, updated_at = ? where id = ?",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        RecordData r = records.get(i);
+                        ps.setDouble(1, r.latitude());
+                        ps.setDouble(2, r.longitude());
+                        ps.setDouble(3, r.accuracy());
+                        setLong(ps, 4, projectIds.contains(r.projectId()) ? r.projectId() : null);
+                        ps.setTimestamp(5, timestamp(r.startDate()));
+                        ps.setTimestamp(6, timestamp(r.finishDate()));
+                        ps.setTimestamp(7, timestamp(now));
+                        ps.setLong(8, ids.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return records.size();
+                    }
+                });
+    }
+
+    public void insertReplies(List<Reply> replies, Date now) {
+        if (replies.isEmpty()) {
+            return;
+        }
+        jdbc.getJdbcTemplate().batchUpdate("insert into survey_response (data_id, question_id, response, date_time) values (?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Reply r = replies.get(i);
+                        ps.setLong(1, r.dataId());
+                        ps.setLong(2, r.questionId());
+                        ps.setString(3, r.response());
+                        ps.setTimestamp(4, timestamp(now));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return replies.size();
+                    }
+                });
+    }
+
+    public void updateReplies(List<Reply> replies, Date now) {
+        if (replies.isEmpty()) {
+            return;
+        }
+        jdbc.getJdbcTemplate().batchUpdate("update survey_response set response = ?, date_time = ? where id = ?",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Reply r = replies.get(i);
+                        ps.setString(1, r.response());
+                        ps.setTimestamp(2, timestamp(now));
+                        ps.setLong(3, r.id());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return replies.size();
+                    }
+                });
+    }
+
+    private Set<Long> findIds(String table, Collection<Long> ids) {
+        Set<Long> found = new HashSet<>();
+        if (ids.isEmpty()) {
+            return found;
+        }
+        jdbc.query("select id from " + table + " where id in (:ids)", Map.of("ids", ids),
+                rs -> {
+                    found.add(rs.getLong("id"));
+                });
+        return found;
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, value);
+        }
+    }
+
+    private static Timestamp timestamp(Date date) {
+        return date == null ? null : new Timestamp(date.getTime());
+    }
+
+    /** Outcome of {@link #upsertData}; {@code created} is false when an existing record was updated. */
+    public record Upsert(Long id, Long projectId, boolean created) {}
+
+    /** Ids that make up one project's form; options and types are keyed by question id. */
+    public record Form(Set<Long> sectionIds, Map<Long, Set<Long>> questionOptions, Map<Long, Integer> questionTypes) {}
+
+    /** Image policy columns of a project; see {@link io.sci.citizen.model.Project}. */
+    public record ImageSettings(Integer maxDimension, String format, Float quality, Boolean keepOriginal) {}
+
+    /** The part of an image row ingest compares uploads against. */
+    public record ImageName(Long sectionId, String originalFileName) {}
+
+    /** One answer row; {@code id} is null for answers that do not exist yet. */
+    public record Reply(Long id, Long dataId, Long questionId, String response) {}
+}
@@ -0,0 +1,15 @@
+package io.sci.citizen.model.repository;
+
+import io.sci.citizen.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    Optional<UploadSession> findByIdAndUserId(String id, Long userId);
+
+    List<UploadSession> findByUserIdAndCreatedAtBefore(Long userId, Date cutoff);
+}
@@ -3,8 +3,11 @@ package io.sci.citizen.service;
 import io.sci.citizen.model.Data;
 import io.sci.citizen.model.Project;
 import io.sci.citizen.model.User;
+import io.sci.citizen.model.dto.DataTablePage;
 import io.sci.citizen.model.repository.DataRepository;
+import io.sci.citizen.model.repository.DataTableRepository;
 import io.sci.citizen.model.repository.ProjectRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -23,9 +26,16 @@ public class DataService extends BaseService {
 
     private final ProjectRepository projectRepo;
 
-    public DataService(DataRepository dataRepo, ProjectRepository projectRepo) {
+    private final DataTableRepository tableRepo;
+
+    private final int maxPageSize;
+
+    public DataService(DataRepository dataRepo, ProjectRepository projectRepo, DataTableRepository tableRepo,
+                       @Value("${app.api.max-page-size:1000}") int maxPageSize) {
         this.dataRepo = dataRepo;
         this.projectRepo = projectRepo;
+        this.tableRepo = tableRepo;
+        this.maxPageSize = maxPageSize;
     }
 
     public List<Integer> getProjectSummary(Long projectId){
@@ -36,24 +46,51 @@ public class DataService extends BaseService {
 
     @Transactional(readOnly = true)
     public List<Data> findAll() {
-        if (!isAdmin()) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
-        }
+        checkAccess(null);
         return dataRepo.findAll(Sort.by(Sort.Direction.DESC, "createdAt"));
     }
 
     @Transactional(readOnly = true)
     public List<Data> findAll(Long projectId) {
-        if (!isAdmin()) {
-            User user = getUser();
-            Optional<Project> opt = projectRepo.findById(projectId);
-            if (opt.isPresent() && !Objects.equals(opt.get().getCreator().getId(), user.getId())) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN);
-            }
-        }
+        checkAccess(projectId);
         return dataRepo.findByProject_IdOrderByCreatedAtDesc(projectId);
     }
 
+    /**
+     * Fails with 403 unless the current user may see the records of the project: admins see
+     * every project, creators their own. Only admins may see all projects at once, which is
+     * what a null {@code projectId} stands for.
+     */
+    public void checkAccess(Long projectId) {
+        if (isAdmin()) {
+            return;
+        }
+        if (projectId == null) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+        User user = getUser();
+        Optional<Project> opt = projectRepo.findById(projectId);
+        if (opt.isPresent() && !Objects.equals(opt.get().getCreator().getId(), user.getId())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+    }
+
+    /**
+     * One page of the records table for DataTables server-side processing: the records of the
+     * project, or of all projects when null, matching {@code search} and ordered by the table
+     * column at {@code orderColumn}. A negative {@code length} ("all") is capped like any other.
+     */
+    @Transactional(readOnly = true)
+    public DataTablePage table(Long projectId, int draw, int start, int length, String search,
+                               int orderColumn, boolean ascending) {
+        checkAccess(projectId);
+        long total = projectId == null ? dataRepo.getRecordCount() : dataRepo.getRecordCountByProjectId(projectId);
+        long filtered = search == null || search.isBlank() ? total : tableRepo.count(projectId, search);
+        int limit = length <= 0 ? maxPageSize : Math.min(length, maxPageSize);
+        return new DataTablePage(draw, total, filtered,
+                tableRepo.findPage(projectId, search, orderColumn, ascending, Math.max(start, 0), limit));
+    }
+
     @Transactional(readOnly = true)
     public Data getById(Long id) {
         Data data = dataRepo.findById(id).orElse(null);
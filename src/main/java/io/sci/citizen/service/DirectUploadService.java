@@ -0,0 +1,145 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.api.dto.DirectUploadRequest;
+import io.sci.citizen.api.dto.DirectUploadTarget;
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.model.Data;
+import io.sci.citizen.model.Image;
+import io.sci.citizen.model.repository.DataRepository;
+import io.sci.citizen.model.repository.ImageRepository;
+import io.sci.citizen.model.repository.SectionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Image uploads that go straight from the client to storage. The client asks for upload
+ * targets for images of an existing record, {@code PUT}s each image to its URL, and then
+ * completes the upload, which checks that the objects exist and attaches them to the record.
+ * Only metadata passes through the app.
+ * <p>
+ * Nothing is kept between the two calls: a key is accepted on completion only if it has the
+ * shape of a key handed out for that record and image.
+ */
+@Service
+public class DirectUploadService {
+
+    private final DataRepository dataRepo;
+    private final ImageRepository imageRepo;
+    private final SectionRepository sectionRepo;
+    private final FileStorage fileStorage;
+    private final long maxSize;
+    private final Duration ttl;
+    private final TransactionTemplate transactions;
+
+    public DirectUploadService(DataRepository dataRepo, ImageRepository imageRepo, SectionRepository sectionRepo,
+                               FileStorage fileStorage,
+                               @Value("${spring.servlet.multipart.max-file-size:10MB}") DataSize maxSize,
+                               @Value("${app.ingest.direct-upload-ttl:15m}") Duration ttl,
+                               PlatformTransactionManager transactionManager) {
+        this.dataRepo = dataRepo;
+        this.imageRepo = imageRepo;
+        this.sectionRepo = sectionRepo;
+        this.fileStorage = fileStorage;
+        this.maxSize = maxSize.toBytes();
+        this.ttl = ttl;
+        this.transactions = new TransactionTemplate(transactionManager);
+    }
+
+    /** Upload targets for the images of the user's record, valid for {@code app.ingest.direct-upload-ttl}. */
+    public List<DirectUploadTarget> prepare(Long userId, DirectUploadRequest request) throws IOException {
+        Data data = record(userId, request);
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        List<DirectUploadTarget> targets = new ArrayList<>();
+        for (DirectUploadRequest.Image image : request.images()) {
+            checkName(image);
+            if (image.size() <= 0 || image.size() > maxSize) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Image size must be between 1 and " + maxSize + " bytes");
+            }
+            String contentType = Optional.ofNullable(image.contentType()).orElse("application/octet-stream");
+            String key = RecordService.imageKey(projectId(data), data.getId(), image.name());
+            targets.add(new DirectUploadTarget(image.name(), key, fileStorage.presignPut(key, contentType, ttl).toString(),
+                    "PUT", Map.of("Content-Type", contentType), expiresAt));
+        }
+        return targets;
+    }
+
+    /**
+     * Attaches uploaded images to the record, replacing earlier images with the same name;
+     * returns the image ids in request order. Every object is checked before any row is
+     * written, so a missing upload fails the whole call.
+     */
+    public List<Long> complete(Long userId, DirectUploadRequest request) throws IOException {
+        Data data = record(userId, request);
+        for (DirectUploadRequest.Image image : request.images()) {
+            checkName(image);
+            String prefix = RecordService.imageKeyPrefix(projectId(data), data.getId(), image.name());
+            if (image.key() == null || !image.key().startsWith(prefix) || image.key().contains("/")) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown key for " + image.name());
+            }
+            OptionalLong size = fileStorage.size(image.key());
+            if (size.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, image.name() + " has not been uploaded");
+            }
+            if (size.getAsLong() > maxSize) {
+                fileStorage.delete(image.key());
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, image.name() + " is larger than " + maxSize + " bytes");
+            }
+        }
+        return transactions.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            for (DirectUploadRequest.Image image : request.images()) {
+                ids.add(attach(data.getId(), image));
+            }
+            return ids;
+        });
+    }
+
+    private Long attach(Long dataId, DirectUploadRequest.Image upload) {
+        Long sectionId = Long.parseLong(RecordService.sectionId(upload.name()));
+        imageRepo.deleteObsoleteImage(dataId, sectionId, upload.name());
+        Image image = new Image();
+        image.setUuid(upload.key());
+        image.setOriginalFileName(upload.name());
+        image.setData(dataRepo.getReferenceById(dataId));
+        image.setStatus(0);
+        image.setStorageStatus(ImageUploadService.STORED);
+        if (sectionRepo.existsById(sectionId)) {
+            image.setSection(sectionRepo.getReferenceById(sectionId));
+        }
+        return imageRepo.save(image).getId();
+    }
+
+    private Data record(Long userId, DirectUploadRequest request) {
+        if (request.uuid() == null || request.images() == null || request.images().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "uuid and at least one image are required");
+        }
+        List<Data> records = dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(userId, request.uuid());
+        if (records == null || records.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Record not found");
+        }
+        return records.get(0);
+    }
+
+    private static void checkName(DirectUploadRequest.Image image) {
+        if (image.name() == null || !image.name().matches("\\d+-.+")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image names must look like <sectionId>-<file>");
+        }
+    }
+
+    private static Long projectId(Data data) {
+        return data.getProject() == null ? null : data.getProject().getId();
+    }
+}
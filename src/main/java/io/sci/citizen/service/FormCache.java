@@ -0,0 +1,120 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.model.repository.RecordBatchRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of each project's form definition: its sections, its questions with
+ * their options, and the {@link ImagePolicy} its images are stored under. Ingest checks
+ * uploaded images and answers against it instead of loading the definitions on every
+ * upload.
+ * <p>
+ * Every invalidation bumps a version, and a form loaded before the latest bump is never
+ * cached, so a load racing with an edit cannot bring old definitions back. Edits made
+ * through {@link SectionService}, {@link TextQueryService} and {@link ProjectService}
+ * invalidate once their transaction commits. Entries also expire after
+ * {@code app.ingest.form-cache-ttl} to pick up edits made on another instance.
+ */
+@Service
+public class FormCache {
+
+    private final RecordBatchRepository batchRepo;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<Long, Form> forms = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    public FormCache(RecordBatchRepository batchRepo,
+                     @Value("${app.ingest.form-cache-ttl:10m}") Duration ttl) {
+        this.batchRepo = batchRepo;
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    public boolean hasSection(Long projectId, Long sectionId) {
+        return projectId != null && form(projectId).sectionIds().contains(sectionId);
+    }
+
+    /** The ids in {@code questionIds} that are questions of one of the given projects. */
+    public Set<Long> knownQuestions(Collection<Long> projectIds, Collection<Long> questionIds) {
+        Set<Long> known = new HashSet<>();
+        for (Long projectId : projectIds) {
+            if (projectId == null) {
+                continue;
+            }
+            Map<Long, Set<Long>> questions = form(projectId).questionOptions();
+            for (Long questionId : questionIds) {
+                if (questions.containsKey(questionId)) {
+                    known.add(questionId);
+                }
+            }
+        }
+        return known;
+    }
+
+    /** Question types of the project's form keyed by question id; empty for no project. */
+    public Map<Long, Integer> questionTypes(Long projectId) {
+        return projectId == null ? Map.of() : form(projectId).questionTypes();
+    }
+
+    /** The project's image policy; {@link ImagePolicy#NONE} for no project. */
+    public ImagePolicy imagePolicy(Long projectId) {
+        return projectId == null ? ImagePolicy.NONE : form(projectId).imagePolicy();
+    }
+
+    public Form form(long projectId) {
+        Form form = forms.get(projectId);
+        long now = System.currentTimeMillis();
+        if (form != null && now - form.loadedAt() < ttlMillis) {
+            return form;
+        }
+        long current = version.get();
+        RecordBatchRepository.Form ids = batchRepo.findForm(projectId);
+        RecordBatchRepository.ImageSettings images = batchRepo.findImageSettings(projectId);
+        Form loaded = new Form(current, now, Set.copyOf(ids.sectionIds()), Map.copyOf(ids.questionOptions()),
+                Map.copyOf(ids.questionTypes()), images == null ? ImagePolicy.NONE
+                        : ImagePolicy.of(images.maxDimension(), images.format(), images.quality(), images.keepOriginal()));
+        forms.compute(projectId, (k, cached) -> version.get() == current ? loaded : cached);
+        return loaded;
+    }
+
+    /**
+     * Drops the cached forms of the given projects once the current transaction commits,
+     * or right away outside a transaction.
+     */
+    public void invalidate(Long... projectIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(projectIds);
+                }
+            });
+        } else {
+            evict(projectIds);
+        }
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    private void evict(Long... projectIds) {
+        version.incrementAndGet();
+        for (Long projectId : projectIds) {
+            if (projectId != null) {
+                forms.remove(projectId);
+            }
+        }
+    }
+
+    /** A project's form as loaded at {@code version}; options and types are keyed by question id. */
+    public record Form(long version, long loadedAt, Set<Long> sectionIds, Map<Long, Set<Long>> questionOptions,
+                       Map<Long, Integer> questionTypes, ImagePolicy imagePolicy) {}
+}
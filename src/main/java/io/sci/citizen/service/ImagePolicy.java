@@ -0,0 +1,87 @@
+package io.sci.citizen.service;
+
+import java.util.Locale;
+
+/**
+ * How a project's images are re-encoded before they are stored: downscaled so that neither
+ * side exceeds {@code maxDimension}, and written as {@code format} ({@code jpeg} or
+ * {@code png}) at {@code quality} between 0 and 1. A null setting leaves that aspect of the
+ * upload alone. With {@code keepOriginal} the uploaded bytes are stored as well, under
+ * {@code originals/}.
+ */
+public record ImagePolicy(Integer maxDimension, String format, Float quality, boolean keepOriginal) {
+
+    public static final ImagePolicy NONE = new ImagePolicy(null, null, null, false);
+
+    public ImagePolicy {
+        if (maxDimension != null && maxDimension <= 0) {
+            maxDimension = null;
+        }
+        format = format(format);
+        if (quality != null && (quality <= 0 || quality > 1)) {
+            quality = null;
+        }
+    }
+
+    /** The policy for a project's settings, all of which may be null. */
+    public static ImagePolicy of(Integer maxDimension, String format, Float quality, Boolean keepOriginal) {
+        ImagePolicy policy = new ImagePolicy(maxDimension, format, quality, Boolean.TRUE.equals(keepOriginal));
+        return policy.transforms() ? policy : NONE;
+    }
+
+    /** Whether images are re-encoded at all. */
+    public boolean transforms() {
+        return maxDimension != null || format != null || quality != null;
+    }
+
+    /**
+     * Suffix that keeps content stored under different policies apart in content-addressed
+     * keys; empty when images are stored as uploaded.
+     */
+    String tag() {
+        if (!transforms()) {
+            return "";
+        }
+        StringBuilder tag = new StringBuilder("-");
+        if (maxDimension != null) {
+            tag.append('w').append(maxDimension);
+        }
+        if (format != null) {
+            tag.append(format.charAt(0));
+        }
+        if (quality != null) {
+            tag.append('q').append(Math.round(quality * 100));
+        }
+        return tag.toString();
+    }
+
+    /** {@code key} with the extension of the target format, or unchanged when the format is kept. */
+    String rename(String key) {
+        if (format == null || key == null) {
+            return key;
+        }
+        int dot = key.lastIndexOf('.');
+        String stem = dot > key.lastIndexOf('/') ? key.substring(0, dot) : key;
+        return stem + extension(format);
+    }
+
+    static String extension(String format) {
+        return "png".equals(format) ? ".png" : ".jpg";
+    }
+
+    static String contentType(String format) {
+        return "png".equals(format) ? "image/png" : "image/jpeg";
+    }
+
+    // the target formats ImageIO can write; anything else keeps the uploaded format
+    private static String format(String format) {
+        if (format == null) {
+            return null;
+        }
+        return switch (format.trim().toLowerCase(Locale.ROOT)) {
+            case "jpeg", "jpg" -> "jpeg";
+            case "png" -> "png";
+            default -> null;
+        };
+    }
+}
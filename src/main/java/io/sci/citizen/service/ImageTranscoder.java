@@ -0,0 +1,215 @@
+package io.sci.citizen.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Re-encodes staged images under a project's {@link ImagePolicy} with ImageIO. Images are
+ * only ever scaled down, keeping their aspect ratio, and the EXIF orientation of a JPEG is
+ * applied to the pixels because the written file carries no metadata.
+ * <p>
+ * Large photos are read with source subsampling so a 24 megapixel upload is never decoded
+ * at full size just to be shrunk to a fraction of it. Neither the decoded nor the written
+ * image exceeds {@code maxPixels}, whatever the policy, and an upload that declares more
+ * than {@code maxSourcePixels} is not decoded at all but stored as it is.
+ */
+@Component
+public class ImageTranscoder {
+
+    private final long maxPixels;
+    private final long maxSourcePixels;
+
+    public ImageTranscoder(@Value("${app.ingest.image.max-pixels:12000000}") long maxPixels,
+                           @Value("${app.ingest.image.max-source-pixels:100000000}") long maxSourcePixels) {
+        this.maxPixels = maxPixels;
+        this.maxSourcePixels = maxSourcePixels;
+    }
+
+    /**
+     * Writes {@code source} re-encoded under {@code policy} to {@code target} and returns
+     * the content type written, or null when the upload should be stored as it is: it can't
+     * be decoded, is too large to decode, or re-encoding changes nothing and does not make it
+     * smaller.
+     */
+    public String transcode(Path source, ImagePolicy policy, Path target) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                String sourceFormat = reader.getFormatName().toLowerCase(Locale.ROOT);
+                String format = policy.format() != null ? policy.format() : sourceFormat;
+                if (!"jpeg".equals(format) && !"png".equals(format)) {
+                    return null;
+                }
+                // the header's dimensions, read before any pixel is decoded
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                long pixels = (long) width * height;
+                if (pixels > maxSourcePixels) {
+                    return null;
+                }
+                double scale = policy.maxDimension() == null ? 1
+                        : Math.min(1, (double) policy.maxDimension() / Math.max(width, height));
+                scale = Math.min(scale, Math.sqrt((double) maxPixels / pixels));
+                int orientation = "jpeg".equals(sourceFormat) ? orientation(source) : 1;
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                // keep at least twice the target size so the final scaling still smooths,
+                // unless that would decode more than maxPixels
+                int step = Math.max(1, (int) (1 / scale / 2));
+                step = Math.max(step, (int) Math.ceil(Math.sqrt((double) pixels / maxPixels)));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                BufferedImage image = reader.read(0, param);
+                boolean opaque = "jpeg".equals(format) || !image.getColorModel().hasAlpha();
+                int w = Math.max(1, (int) Math.round(width * scale));
+                int h = Math.max(1, (int) Math.round(height * scale));
+                write(draw(image, w, h, orientation, opaque), format, policy.quality(), target);
+
+                boolean unchanged = scale == 1 && orientation == 1 && format.equals(sourceFormat);
+                if (unchanged && Files.size(target) >= Files.size(source)) {
+                    Files.delete(target);
+                    return null;
+                }
+                return ImagePolicy.contentType(format);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IIOException | IllegalArgumentException e) {
+            // variants ImageIO can't decode, such as CMYK JPEGs, are stored as uploaded
+            Files.deleteIfExists(target);
+            return null;
+        }
+    }
+
+    // scales to w x h and turns the result upright; opaque images get a white background
+    private static BufferedImage draw(BufferedImage image, int w, int h, int orientation, boolean opaque) {
+        boolean swap = orientation >= 5;
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h,
+                opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            if (opaque) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, out.getWidth(), out.getHeight());
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            AffineTransform transform = orient(orientation, w, h);
+            transform.scale((double) w / image.getWidth(), (double) h / image.getHeight());
+            g.drawImage(image, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    // maps a w x h image onto its upright position for the EXIF orientation values 1 to 8
+    private static AffineTransform orient(int orientation, int w, int h) {
+        return switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, w);
+            default -> new AffineTransform();
+        };
+    }
+
+    private static void write(BufferedImage image, String format, Float quality, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        // closing the image stream does not close the file stream it wraps
+        try (OutputStream file = Files.newOutputStream(target);
+             ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (quality != null && "jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /** EXIF orientation of a JPEG file, 1 when it has none. */
+    static int orientation(Path jpeg) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(jpeg)))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                // the metadata segments all come before the image data
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return 1;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (marker == 0xFFE1) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    int orientation = exifOrientation(segment);
+                    if (orientation > 0) {
+                        return orientation;
+                    }
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return 1;
+        }
+    }
+
+    // orientation tag of the first IFD in an APP1 segment, 0 if it is not EXIF
+    private static int exifOrientation(byte[] segment) {
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f') {
+            return 0;
+        }
+        ByteBuffer tiff = ByteBuffer.wrap(segment, 6, segment.length - 6).slice();
+        tiff.order(tiff.getShort(0) == 0x4949 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff.getInt(4);
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == 0x0112) {
+                int value = tiff.getShort(entry + 8) & 0xFFFF;
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,415 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.model.Image;
+import io.sci.citizen.model.dto.PendingImage;
+import io.sci.citizen.model.repository.ImageRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves image bytes into {@link FileStorage} off the request thread.
+ * <p>
+ * Uploads are first staged on local disk and the {@link Image} row is saved as pending.
+ * Once the surrounding transaction commits the image is handed to a bounded worker pool,
+ * which stores it, retries with exponential backoff on failure and finally records the
+ * outcome in {@link Image#getStorageStatus()}. Staged files survive a restart and pending
+ * images are picked up again when the application is ready. Uploads never run on the
+ * thread that submits them: when the queue is full the image stays pending and is handed
+ * to the workers again once they have room.
+ * <p>
+ * Bytes are hashed with SHA-256 while they are staged. In content-addressed mode the image
+ * is keyed by that hash, so a photo that is already stored is not written again and rows
+ * with identical content share one blob.
+ * <p>
+ * Images of a project with an {@link ImagePolicy} are re-encoded by the worker right before
+ * they are written, so storage only ever holds the downscaled copy, plus the upload itself
+ * under {@code originals/} when the project keeps originals.
+ */
+@Service
+public class ImageUploadService {
+
+    public static final int PENDING = 0;
+    public static final int STORED = 1;
+    public static final int FAILED = 2;
+
+    // images read per query when recovering after a restart
+    static final int RECOVER_PAGE_SIZE = 500;
+
+    private final FileStorage fileStorage;
+    private final ImageRepository imageRepo;
+    private final FormCache formCache;
+    private final ImageTranscoder transcoder;
+    private final Path stagingPath;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final boolean contentAddressed;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService retries;
+
+    private final AtomicInteger retrying = new AtomicInteger();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong storeNanos = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+    // tasks the full queue turned away; handed over again by drainDeferred
+    private final ConcurrentLinkedQueue<Task> deferred = new ConcurrentLinkedQueue<>();
+    // tasks in flight per staged file; content-addressed images can share one
+    private final ConcurrentHashMap<String, Integer> stagedRefs = new ConcurrentHashMap<>();
+
+    public ImageUploadService(FileStorage fileStorage, ImageRepository imageRepo, FormCache formCache,
+                              ImageTranscoder transcoder,
+                              @Value("${app.ingest.staging-path:}") String stagingPath,
+                              @Value("${app.ingest.workers:4}") int workers,
+                              @Value("${app.ingest.queue-capacity:500}") int queueCapacity,
+                              @Value("${app.ingest.max-attempts:5}") int maxAttempts,
+                              @Value("${app.ingest.retry-delay:2s}") Duration retryDelay,
+                              @Value("${app.ingest.content-addressed:true}") boolean contentAddressed) throws IOException {
+        this.fileStorage = fileStorage;
+        this.imageRepo = imageRepo;
+        this.formCache = formCache;
+        this.transcoder = transcoder;
+        if (stagingPath.isBlank()) {
+            throw new IllegalStateException("app.ingest.staging-path must be set");
+        }
+        this.stagingPath = Files.createDirectories(Paths.get(stagingPath).toAbsolutePath().normalize());
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.contentAddressed = contentAddressed;
+        // a full queue rejects the task instead of running it on the submitting thread, which
+        // may be a request thread or the retry scheduler; see enqueue
+        this.workers = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threads("image-upload-"));
+        this.retries = Executors.newSingleThreadScheduledExecutor(threads("image-upload-retry-"));
+        long sweep = Math.max(1, retryDelay.toMillis());
+        this.retries.scheduleWithFixedDelay(this::drainDeferred, sweep, sweep, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Copies image bytes to a local staging file, hashing them on the way. Callers stage
+     * uploads before opening a transaction, so the connection is not held while a client
+     * sends its bytes, and {@link #discard} whatever they end up not submitting.
+     */
+    public Staged stage(InputStream in) throws IOException {
+        Path incoming = stagingPath.resolve(UUID.randomUUID() + ".part");
+        MessageDigest digest = sha256();
+        try (DigestInputStream hashing = new DigestInputStream(in, digest)) {
+            Files.copy(hashing, incoming);
+        } catch (IOException e) {
+            Files.deleteIfExists(incoming);
+            throw e;
+        }
+        return new Staged(incoming, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * Schedules a staged image for upload once the current transaction commits. If the
+     * transaction rolls back the staged copy is removed.
+     * <p>
+     * {@code image} must already be saved. In content-addressed mode its key is replaced by
+     * one derived from the content hash and the policy, and when that blob is already stored
+     * the image is marked stored without uploading anything. A policy that changes the
+     * format changes the extension of the key to match.
+     */
+    public void submit(Image image, Staged staged, String contentType, ImagePolicy policy) throws IOException {
+        ImagePolicy p = policy == null ? ImagePolicy.NONE : policy;
+        String original = image.getUuid();
+        image.setContentHash(staged.hash());
+        if (contentAddressed) {
+            original = contentKey(staged.hash(), image.getOriginalFileName());
+            image.setUuid(contentKey(staged.hash() + p.tag(), p.rename(image.getOriginalFileName())));
+            if (imageRepo.existsByUuidAndStorageStatus(image.getUuid(), STORED)) {
+                Files.delete(staged.file());
+                image.setStorageStatus(STORED);
+                imageRepo.save(image);
+                deduplicated.incrementAndGet();
+                return;
+            }
+        } else {
+            image.setUuid(p.rename(image.getUuid()));
+        }
+        imageRepo.save(image);
+        Task task = new Task(image.getId(), image.getUuid(), contentType, p, originalKey(p, original));
+        stagedRefs.compute(task.key(), (key, refs) -> {
+            try {
+                Files.move(staged.file(), staged(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return refs == null ? 1 : refs + 1;
+        });
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        enqueue(task);
+                    } else {
+                        release(task.key());
+                    }
+                }
+            });
+        } else {
+            enqueue(task);
+        }
+    }
+
+    /** Deletes a staged file unless it was submitted; submitting moves it away. */
+    public void discard(Staged staged) {
+        try {
+            Files.deleteIfExists(staged.file());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Storage key for content with the given hash, keeping the extension of the original file name. */
+    static String contentKey(String hash, String name) {
+        String ext = name != null && name.lastIndexOf('.') > name.lastIndexOf('/')
+                ? name.substring(name.lastIndexOf('.')).toLowerCase(Locale.ROOT)
+                : "";
+        return hash + ext;
+    }
+
+    // where the upload itself is kept next to its re-encoded copy, if the policy keeps it
+    private static String originalKey(ImagePolicy policy, String key) {
+        return policy.keepOriginal() && policy.transforms() && key != null ? "originals/" + key : null;
+    }
+
+    /**
+     * Re-queues images left pending by a previous run, and failed ones whose bytes are still
+     * staged. Images staged on another instance are left alone. Their project's current
+     * image policy applies, including keeping the original, which is stored under the key
+     * {@link #submit(Image, Staged, String, ImagePolicy)} would have given it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        List<PendingImage> page;
+        long after = 0;
+        do {
+            page = imageRepo.findPending(List.of(PENDING, FAILED), after, RECOVER_PAGE_SIZE);
+            for (PendingImage image : page) {
+                recover(image);
+                after = image.getId();
+            }
+        } while (page.size() == RECOVER_PAGE_SIZE);
+    }
+
+    private void recover(PendingImage image) {
+        if (image.getUuid() != null && Files.exists(staged(image.getUuid()))) {
+            stagedRefs.merge(image.getUuid(), 1, Integer::sum);
+            ImagePolicy policy = image.getProjectId() != null ? formCache.imagePolicy(image.getProjectId()) : null;
+            ImagePolicy p = policy == null ? ImagePolicy.NONE : policy;
+            String original = contentAddressed && image.getContentHash() != null
+                    ? contentKey(image.getContentHash(), image.getOriginalFileName())
+                    : uploadedKey(image.getUuid(), image.getOriginalFileName());
+            String contentType = image.getOriginalFileName() != null
+                    ? URLConnection.guessContentTypeFromName(image.getOriginalFileName().toLowerCase(Locale.ROOT))
+                    : null;
+            enqueue(new Task(image.getId(), image.getUuid(),
+                    contentType != null ? contentType : URLConnection.guessContentTypeFromName(image.getUuid()),
+                    p, originalKey(p, original)));
+        }
+    }
+
+    // the key an image had before its policy renamed it: the same stem with the extension of
+    // the uploaded file
+    private static String uploadedKey(String key, String name) {
+        if (name == null || name.lastIndexOf('.') <= name.lastIndexOf('/')) {
+            return key;
+        }
+        int dot = key.lastIndexOf('.');
+        String stem = dot > key.lastIndexOf('/') ? key.substring(0, dot) : key;
+        return stem + name.substring(name.lastIndexOf('.'));
+    }
+
+    public Stats stats() {
+        return new Stats(workers.getQueue().size(), workers.getQueue().remainingCapacity(),
+                workers.getActiveCount(), retrying.get(), deferred.size(), stored.get(), failed.get(), deduplicated.get(),
+                storedBytes.get(), TimeUnit.NANOSECONDS.toMillis(storeNanos.get()), savedBytes.get());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // anything still queued stays pending and is recovered on the next start
+        retries.shutdownNow();
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    // Hands the task to the workers, or defers it while their queue is full. Either way this
+    // returns at once; the image stays pending until a worker has stored it.
+    void enqueue(Task task) {
+        try {
+            workers.execute(() -> upload(task));
+        } catch (RejectedExecutionException e) {
+            if (!workers.isShutdown()) {
+                deferred.add(task);
+            }
+            // when shutting down the image stays pending for recovery
+        }
+    }
+
+    // runs on the retry scheduler and moves deferred tasks into the queue while it has room
+    private void drainDeferred() {
+        while (workers.getQueue().remainingCapacity() > 0) {
+            Task task = deferred.poll();
+            if (task == null) {
+                return;
+            }
+            try {
+                workers.execute(() -> upload(task));
+            } catch (RejectedExecutionException e) {
+                if (!workers.isShutdown()) {
+                    deferred.add(task);
+                }
+                return;
+            }
+        }
+    }
+
+    void upload(Task task) {
+        Path staged = staged(task.key());
+        Path encoded = stagingPath.resolve(UUID.randomUUID() + ".out");
+        try {
+            String contentType = task.policy().transforms() ? transcoder.transcode(staged, task.policy(), encoded) : null;
+            Path file = contentType == null ? staged : encoded;
+            long size = Files.size(file);
+            long start = System.nanoTime();
+            if (contentType != null && task.original() != null) {
+                try (InputStream in = Files.newInputStream(staged)) {
+                    fileStorage.write(task.original(), in, Files.size(staged), task.contentType());
+                }
+            }
+            try (InputStream in = Files.newInputStream(file)) {
+                fileStorage.write(task.key(), in, size, contentType == null ? task.contentType() : contentType);
+            }
+            storeNanos.addAndGet(System.nanoTime() - start);
+            storedBytes.addAndGet(size);
+            if (contentType != null) {
+                savedBytes.addAndGet(Files.size(staged) - size);
+            }
+            imageRepo.updateStorageStatus(task.imageId(), STORED);
+            release(task.key());
+            stored.incrementAndGet();
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (task.attempt() + 1 < maxAttempts) {
+                retrying.incrementAndGet();
+                long delay = retryDelay.toMillis() << Math.min(task.attempt(), 16);
+                try {
+                    retries.schedule(() -> {
+                        retrying.decrementAndGet();
+                        enqueue(task.next());
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException shuttingDown) {
+                    retrying.decrementAndGet();
+                }
+            } else {
+                imageRepo.updateStorageStatus(task.imageId(), FAILED);
+                // the staged bytes are kept so a later recovery can try again
+                stagedRefs.computeIfPresent(task.key(), (key, refs) -> refs > 1 ? refs - 1 : null);
+                failed.incrementAndGet();
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(encoded);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // drops one reference to a staged file and deletes it once no task needs it any more
+    private void release(String key) {
+        stagedRefs.compute(key, (k, refs) -> {
+            if (refs != null && refs > 1) {
+                return refs - 1;
+            }
+            try {
+                Files.deleteIfExists(staged(k));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return null;
+        });
+    }
+
+    private Path staged(String key) {
+        Path path = stagingPath.resolve(key).normalize();
+        if (!path.startsWith(stagingPath)) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+        return path;
+    }
+
+    private static ThreadFactory threads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // original is where the upload itself is kept, or null when only the re-encoded copy is
+    record Task(Long imageId, String key, String contentType, ImagePolicy policy, String original, int attempt) {
+
+        Task(Long imageId, String key, String contentType, ImagePolicy policy, String original) {
+            this(imageId, key, contentType, policy, original, 0);
+        }
+
+        Task next() {
+            return new Task(imageId, key, contentType, policy, original, attempt + 1);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Image bytes copied to {@code file}, with the hex SHA-256 of their content. */
+    public record Staged(Path file, String hash) {}
+
+    /**
+     * Queue state and totals; {@code deferred} counts images waiting for room in the queue,
+     * {@code storedBytes} over {@code storeMillis} is the storage write throughput, and
+     * {@code savedBytes} what re-encoding kept out of storage.
+     */
+    public record Stats(int queued, int remainingCapacity, int active, int retrying, int deferred, long stored, long failed,
+                        long deduplicated, long storedBytes, long storeMillis, long savedBytes) {}
+}
@@ -0,0 +1,454 @@
+package io.sci.citizen.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.sci.citizen.api.component.AnswerDecoder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal for record uploads. When enabled, an upload is acknowledged as soon
+ * as its images and an entry with its model and answers are fsync'd to local disk; a
+ * background applier then writes the entries to the database in order through
+ * {@link RecordService#replay}, so upload latency no longer depends on the database.
+ * <p>
+ * Entries are appended to numbered segment files as {@code [length][crc32][json]} frames.
+ * The position after the last applied entry is kept in a checkpoint file, and segments and
+ * images the checkpoint has passed are deleted. On start a torn frame at the end of the
+ * last segment is cut off and images that no pending entry refers to are removed. An entry
+ * applied again after a crash is harmless because records are upserted by uuid and only
+ * changed answers are written.
+ * <p>
+ * While the database is unavailable the applier retries the same entry with backoff.
+ * Uploads are checked against the cached form before they are journaled, so entries that
+ * can never be applied, such as answers a form edit has since ruled out, are rare; they are
+ * logged and skipped.
+ * <p>
+ * Acknowledged uploads exist only in the journal until applied, so it has no default
+ * location: {@code app.ingest.journal.path} must be set, to a persistent disk, to enable it.
+ */
+@Service
+public class IngestJournal {
+
+    private static final int HEADER = 8;
+    private static final String SEGMENT = ".log";
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(1);
+
+    private final RecordService recordService;
+    private final FormCache formCache;
+    private final boolean enabled;
+    private final Path dir;
+    private final Path blobs;
+    private final long segmentSize;
+    private final Duration retryDelay;
+    private final Gson gson = new Gson();
+    private final Object signal = new Object();
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    // writer state, guarded by this
+    private FileChannel segment;
+    private long segmentIndex;
+    // end of the last durable entry
+    private volatile Position written;
+    // applier state, only used by the applier thread once started
+    private Position checkpoint;
+    private Thread applier;
+    private volatile boolean running;
+
+    public IngestJournal(RecordService recordService, FormCache formCache,
+                         @Value("${app.ingest.journal.enabled:false}") boolean enabled,
+                         @Value("${app.ingest.journal.path:}") String path,
+                         @Value("${app.ingest.journal.segment-size:64MB}") DataSize segmentSize,
+                         @Value("${app.ingest.journal.retry-delay:1s}") Duration retryDelay) throws IOException {
+        if (enabled && (path == null || path.isBlank())) {
+            throw new IllegalStateException("app.ingest.journal.path must be set when the journal is enabled");
+        }
+        this.recordService = recordService;
+        this.formCache = formCache;
+        this.enabled = enabled;
+        this.dir = Paths.get(path).toAbsolutePath().normalize();
+        this.blobs = dir.resolve("images");
+        this.segmentSize = segmentSize.toBytes();
+        this.retryDelay = retryDelay;
+        if (enabled) {
+            recover();
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Journals an upload with the same parameters as
+     * {@link RecordService#record(Long, String, MultipartFile[], String)} and returns once it
+     * is durable. The upload is checked as far as it can be without the database: the model
+     * must have a uuid, image names a section id, and answers must fit the question types of
+     * the project's form, as the applier checks them. If the form cannot be loaded, only
+     * values no question accepts are rejected.
+     */
+    public void record(Long userId, String model, MultipartFile[] images, String results) throws IOException {
+        check(model, images, results);
+        List<Blob> files = new ArrayList<>();
+        try {
+            if (images != null) {
+                for (MultipartFile image : images) {
+                    Path blob = blobs.resolve(UUID.randomUUID().toString());
+                    files.add(new Blob(image.getOriginalFilename(), image.getContentType(), blob.getFileName().toString()));
+                    try (InputStream in = image.getInputStream()) {
+                        Files.copy(in, blob);
+                    }
+                    sync(blob);
+                }
+                sync(blobs);
+            }
+            append(gson.toJson(new Entry(userId, model, results, files)).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            deleteBlobs(files);
+            throw e;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        applier = new Thread(this::applyAll, "ingest-journal-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        running = false;
+        Thread thread;
+        synchronized (this) {
+            thread = applier;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(10_000);
+        }
+        synchronized (this) {
+            if (segment != null) {
+                segment.close();
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, pending.get(), appended.get(), applied.get(), skipped.get());
+    }
+
+    private void check(String model, MultipartFile[] images, String results) {
+        try {
+            JsonObject json = JsonParser.parseString(model).getAsJsonObject();
+            if (!json.has("uuid") || json.get("uuid").isJsonNull()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing model uuid");
+            }
+            Long projectId = json.has("projectId") && !json.get("projectId").isJsonNull()
+                    ? json.get("projectId").getAsLong()
+                    : null;
+            Map<Long, Integer> types;
+            try {
+                types = formCache.questionTypes(projectId);
+            } catch (DataAccessException e) {
+                // the journal exists to accept uploads while the database is down; without the
+                // form only values no question accepts are ruled out, the applier checks the rest
+                types = Map.of();
+            }
+            for (AnswerDecoder.Answer answer : AnswerDecoder.decode(results)) {
+                AnswerDecoder.validate(answer, types);
+            }
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException | UnsupportedOperationException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid upload: " + e.getMessage());
+        }
+        if (images != null) {
+            for (MultipartFile image : images) {
+                String name = image.getOriginalFilename();
+                if (name == null || !name.matches("\\d+-.+")) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image names must look like <sectionId>-<file>");
+                }
+            }
+        }
+    }
+
+    private synchronized void append(byte[] payload) throws IOException {
+        if (segment.size() >= segmentSize) {
+            segment.close();
+            segmentIndex++;
+            segment = FileChannel.open(segment(segmentIndex), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            sync(dir);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (frame.hasRemaining()) {
+            segment.write(frame);
+        }
+        segment.force(false);
+        written = new Position(segmentIndex, segment.position());
+        appended.incrementAndGet();
+        pending.incrementAndGet();
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private void applyAll() {
+        long delay = retryDelay.toMillis();
+        while (running) {
+            try {
+                Position seen = written;
+                Pending next = next(checkpoint);
+                if (next == null) {
+                    synchronized (signal) {
+                        if (written.equals(seen)) {
+                            signal.wait(1000);
+                        }
+                    }
+                    continue;
+                }
+                try {
+                    recordService.replay(next.entry().userId(), next.entry().model(), files(next.entry()), next.entry().results());
+                    applied.incrementAndGet();
+                } catch (IllegalArgumentException | JsonParseException | ResponseStatusException
+                         | DataIntegrityViolationException | NoSuchFileException e) {
+                    // retrying cannot fix these
+                    e.printStackTrace();
+                    skipped.incrementAndGet();
+                }
+                advance(next.end());
+                pending.decrementAndGet();
+                deleteBlobs(next.entry().images());
+                delay = retryDelay.toMillis();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                e.printStackTrace();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY.toMillis());
+            }
+        }
+    }
+
+    // The first durable entry at or after from, or null when there is none yet.
+    private Pending next(Position from) throws IOException {
+        Position end = written;
+        Position at = from;
+        while (!at.equals(end)) {
+            Path file = segment(at.segment());
+            long limit = at.segment() == end.segment() ? end.offset() : size(file);
+            if (at.offset() >= limit) {
+                if (at.segment() >= end.segment()) {
+                    return null;
+                }
+                at = new Position(at.segment() + 1, 0);
+                continue;
+            }
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                byte[] payload = frame(in, at.offset(), limit);
+                if (payload == null) {
+                    throw new IOException("Corrupt journal entry at " + at);
+                }
+                Entry entry = gson.fromJson(new String(payload, StandardCharsets.UTF_8), Entry.class);
+                return new Pending(entry, new Position(at.segment(), at.offset() + HEADER + payload.length));
+            }
+        }
+        return null;
+    }
+
+    // Moves the checkpoint and deletes the segments it has left behind.
+    private void advance(Position to) throws IOException {
+        Path tmp = dir.resolve("checkpoint.tmp");
+        Files.writeString(tmp, to.segment() + " " + to.offset());
+        sync(tmp);
+        Files.move(tmp, dir.resolve("checkpoint"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long s = checkpoint.segment(); s < to.segment(); s++) {
+            Files.deleteIfExists(segment(s));
+        }
+        checkpoint = to;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(blobs);
+        checkpoint = readCheckpoint();
+        long last = checkpoint.segment();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT)) {
+                    last = Math.max(last, Long.parseLong(name.substring(0, name.length() - SEGMENT.length())));
+                }
+            }
+        }
+        segmentIndex = last;
+        segment = FileChannel.open(segment(last), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = validLength(segment);
+        if (end < segment.size()) {
+            // a torn write from a crash; the upload was never acknowledged
+            segment.truncate(end);
+            segment.force(true);
+        }
+        segment.position(end);
+        written = new Position(last, end);
+        if (checkpoint.segment() == last && checkpoint.offset() > end) {
+            checkpoint = written;
+        }
+        removeUnreferencedBlobs();
+    }
+
+    // Deletes images whose upload never made it into the journal, and counts pending entries.
+    private void removeUnreferencedBlobs() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        long count = 0;
+        for (Pending next = next(checkpoint); next != null; next = next(next.end())) {
+            next.entry().images().forEach(blob -> referenced.add(blob.file()));
+            count++;
+        }
+        pending.set(count);
+        try (Stream<Path> files = Files.list(blobs)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!referenced.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path file = dir.resolve("checkpoint");
+        if (!Files.exists(file)) {
+            return new Position(1, 0);
+        }
+        String[] parts = Files.readString(file).trim().split(" ");
+        return new Position(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+    }
+
+    private static long validLength(FileChannel in) throws IOException {
+        long size = in.size();
+        long offset = 0;
+        byte[] payload;
+        while ((payload = frame(in, offset, size)) != null) {
+            offset += HEADER + payload.length;
+        }
+        return offset;
+    }
+
+    // The payload of the frame at offset, or null if it is incomplete or fails its checksum.
+    private static byte[] frame(FileChannel in, long offset, long limit) throws IOException {
+        if (offset + HEADER > limit) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        read(in, header, offset);
+        int length = header.getInt(0);
+        if (length < 0 || offset + HEADER + length > limit) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        read(in, payload, offset + HEADER);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        return (int) crc.getValue() == header.getInt(4) ? payload.array() : null;
+    }
+
+    private static void read(FileChannel in, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (in.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of journal segment");
+            }
+        }
+    }
+
+    private List<RecordService.ImageFile> files(Entry entry) {
+        List<RecordService.ImageFile> files = new ArrayList<>();
+        for (Blob blob : entry.images()) {
+            files.add(new RecordService.ImageFile(blob.name(), blob.contentType(), blobs.resolve(blob.file())));
+        }
+        return files;
+    }
+
+    private void deleteBlobs(List<Blob> files) {
+        for (Blob blob : files) {
+            try {
+                Files.deleteIfExists(blobs.resolve(blob.file()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private Path segment(long index) {
+        return dir.resolve(String.format("%020d", index) + SEGMENT);
+    }
+
+    private static long size(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    // fsync a file, or a directory so that new entries in it survive a crash
+    private static void sync(Path path) throws IOException {
+        boolean directory = Files.isDirectory(path);
+        try (FileChannel channel = FileChannel.open(path, directory ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!directory) {
+                throw e;
+            }
+            // some platforms cannot open directories
+        }
+    }
+
+    record Entry(long userId, String model, String results, List<Blob> images) {}
+
+    record Blob(String name, String contentType, String file) {}
+
+    record Position(long segment, long offset) {}
+
+    private record Pending(Entry entry, Position end) {}
+
+    /** Entries waiting to be applied, and totals since start. */
+    public record Stats(boolean enabled, long pending, long appended, long applied, long skipped) {}
+}
@@ -0,0 +1,37 @@
+package io.sci.citizen.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position in a listing ordered by {@code (createdAt, id)} descending: the next page starts
+ * right after the record with these values. Clients only ever see it as an opaque string.
+ */
+public record PageCursor(Date createdAt, long id) {
+
+    /** Before every record, for the first page. */
+    public static final PageCursor FIRST = new PageCursor(new Date(253402300799000L), Long.MAX_VALUE);
+
+    public String encode() {
+        String value = createdAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The cursor {@link #encode} made, or {@link #FIRST} for none. */
+    public static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int colon = value.indexOf(':');
+            return new PageCursor(new Date(Long.parseLong(value.substring(0, colon))), Long.parseLong(value.substring(colon + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
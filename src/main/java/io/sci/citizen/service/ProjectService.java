@@ -18,9 +18,11 @@ import java.util.Map;
 public class ProjectService extends BaseService{
 
     private final ProjectRepository projectRepo;
+    private final FormCache formCache;
 
-    public ProjectService(ProjectRepository projectRepo) {
+    public ProjectService(ProjectRepository projectRepo, FormCache formCache) {
         this.projectRepo = projectRepo;
+        this.formCache = formCache;
     }
 
     @Transactional(readOnly = true)
@@ -59,7 +61,9 @@ public class ProjectService extends BaseService{
         if (user!=null){
             project.setCreator(user);
         }
-        return projectRepo.save(project);
+        Project saved = projectRepo.save(project);
+        formCache.invalidate(saved.getId());
+        return saved;
     }
 
     @Transactional(readOnly = true)
@@ -76,6 +80,11 @@ public class ProjectService extends BaseService{
         p.setIcon(req.getIcon());
         p.setDescription(req.getDescription());
         p.setPubliclyAvailable(req.isPubliclyAvailable());
+        p.setImageMaxDimension(req.getImageMaxDimension());
+        p.setImageFormat(req.getImageFormat() == null || req.getImageFormat().isBlank() ? null : req.getImageFormat());
+        p.setImageQuality(req.getImageQuality());
+        p.setKeepOriginalImage(req.isKeepOriginalImage());
+        formCache.invalidate(id);
         return projectRepo.save(p);
     }
 }
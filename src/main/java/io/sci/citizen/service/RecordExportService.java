@@ -0,0 +1,83 @@
+package io.sci.citizen.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.sci.citizen.model.dto.RecordSummary;
+import io.sci.citizen.model.repository.DataRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes every record of a listing as newline-delimited JSON, for admins and ETL jobs that
+ * need the whole set rather than pages of it. Rows are read through a database cursor and
+ * written as they arrive; they are column projections, not entities, so nothing accumulates
+ * in the persistence context and memory use does not grow with the number of records.
+ * <p>
+ * The listings and their {@code type} filter are those of {@link RecordService}; each line
+ * is a record as it appears in a page.
+ */
+@Service
+public class RecordExportService {
+
+    private final DataRepository dataRepo;
+    private final ObjectWriter writer;
+    private final TransactionTemplate transactions;
+
+    public RecordExportService(DataRepository dataRepo, ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager) {
+        this.dataRepo = dataRepo;
+        // only the projected columns, not the internals of the proxy behind them
+        this.writer = objectMapper.writerFor(RecordSummary.class);
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.transactions.setReadOnly(true);
+    }
+
+    /** Writes the records {@link RecordService#getRecordsByUser} pages through; returns how many. */
+    public long exportByUser(Long userId, Integer type, OutputStream out) throws IOException {
+        int t = type == null ? 0 : type;
+        return export(out, () -> t == 2 ? dataRepo.streamAll()
+                : t == 1 ? dataRepo.streamByUserAndStatus(userId, 1)
+                : dataRepo.streamByUser(userId));
+    }
+
+    /** Writes the records {@link RecordService#getRecordsByUserAndProject} pages through; returns how many. */
+    public long exportByUserAndProject(Long userId, Long projectId, Integer type, OutputStream out) throws IOException {
+        int t = type == null ? 0 : type;
+        return export(out, () -> t == 2 ? dataRepo.streamByProject(projectId)
+                : t == 1 ? dataRepo.streamByProjectAndUserAndStatus(projectId, userId, 1)
+                : dataRepo.streamByProjectAndUser(projectId, userId));
+    }
+
+    // the cursor only lives as long as the transaction, so the whole export runs inside one
+    private long export(OutputStream out, Supplier<Stream<RecordSummary>> query) throws IOException {
+        try {
+            Long written = transactions.execute(status -> {
+                try (Stream<RecordSummary> records = query.get()) {
+                    long count = 0;
+                    Iterator<RecordSummary> it = records.iterator();
+                    while (it.hasNext()) {
+                        out.write(writer.writeValueAsBytes(it.next()));
+                        out.write('\n');
+                        count++;
+                    }
+                    out.flush();
+                    return count;
+                } catch (IOException e) {
+                    // the client went away; rolling back closes the cursor
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return written == null ? 0 : written;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -2,19 +2,34 @@ package io.sci.citizen.service;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import io.sci.citizen.api.component.AnswerDecoder;
 import io.sci.citizen.api.component.Diff;
+import io.sci.citizen.api.component.MultipartReader;
+import io.sci.citizen.api.dto.BatchRecord;
+import io.sci.citizen.api.dto.PresenceRequest;
+import io.sci.citizen.api.dto.PresenceResponse;
 import io.sci.citizen.api.dto.RecordData;
-import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.api.dto.RecordDetail;
+import io.sci.citizen.api.dto.RecordPage;
+import io.sci.citizen.api.dto.RecordResult;
 import io.sci.citizen.model.*;
+import io.sci.citizen.model.dto.RecordSummary;
 import io.sci.citizen.model.repository.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 @Service
@@ -22,124 +37,586 @@ public class RecordService extends BaseService {
 
     private final DataRepository dataRepo;
     private final ImageRepository imageRepo;
-    private final ProjectRepository projectRepo;
+    private final QueryReplyRepository replyRepo;
     private final SectionRepository sectionRepo;
-    private final TextQueryRepository textQueryRepo;
-    private final QueryReplyRepository queryReplyRepo;
-    private final FileStorage fileStorage;
-
-    public RecordService(DataRepository dataRepo, ImageRepository imageRepo,
-                         ProjectRepository projectRepo, SectionRepository sectionRepo,
-                         TextQueryRepository textQueryRepo, QueryReplyRepository queryReplyRepo,
-                         FileStorage fileStorage) {
+    private final RecordBatchRepository batchRepo;
+    private final ImageUploadService imageUploads;
+    private final FormCache formCache;
+    private final TransactionTemplate transactions;
+
+    @Value("${app.ingest.max-batch-size:500}")
+    private int maxBatchSize = 500;
+
+    @Value("${app.ingest.max-presence-items:10000}")
+    private int maxPresenceItems = 10000;
+
+    @Value("${app.api.page-size:100}")
+    private int pageSize = 100;
+
+    @Value("${app.api.max-page-size:1000}")
+    private int maxPageSize = 1000;
+
+    public RecordService(DataRepository dataRepo, ImageRepository imageRepo, QueryReplyRepository replyRepo,
+                         SectionRepository sectionRepo, RecordBatchRepository batchRepo,
+                         ImageUploadService imageUploads, FormCache formCache,
+                         PlatformTransactionManager transactionManager) {
         this.dataRepo = dataRepo;
         this.imageRepo = imageRepo;
-        this.projectRepo = projectRepo;
+        this.replyRepo = replyRepo;
         this.sectionRepo = sectionRepo;
-        this.textQueryRepo = textQueryRepo;
-        this.queryReplyRepo = queryReplyRepo;
-        this.fileStorage = fileStorage;
+        this.batchRepo = batchRepo;
+        this.imageUploads = imageUploads;
+        this.formCache = formCache;
+        this.transactions = new TransactionTemplate(transactionManager);
     }
 
     private Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").enableComplexMapKeySerialization().create();
 
-    @Transactional
-    public void record(Long userId, String record, MultipartFile[] images, String results) throws IOException, URISyntaxException {
+    /**
+     * Saves a record with its images and answers in three phases: the images are staged on
+     * local disk first, a short transaction then writes the record and links the images, and
+     * staged files that end up unused, or belong to a transaction that failed, are removed.
+     * Images reach storage only after the commit, so the database connection is never held
+     * while bytes are read from the client or written to storage.
+     */
+    public void record(Long userId, String record, MultipartFile[] images, String results) throws IOException {
         RecordData model = gson.fromJson(record, RecordData.class);
-        List<Data> list = dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(userId, model.uuid());
-        Data data = new Data();
-        if (list!=null && !list.isEmpty()){
-            data = list.get(0);
-            data.setUpdatedAt(new Date());
-        }else{
-            data.setCreatedAt(new Date());
-        }
-        data.setLatitude(model.latitude());
-        data.setLongitude(model.longitude());
-        data.setAccuracy(model.accuracy());
-        Optional<Project> project = projectRepo.findById(model.projectId());
-        project.ifPresent(data::setProject);
-        data.setUuid(model.uuid());
-        data.setStartDate(model.startDate());
-        data.setFinishDate(model.finishDate());
-        Optional<User> user = userRepo.findById(userId);
-        user.ifPresent(data::setUser);
-        data = dataRepo.save(data);
-        if (images != null) {
-            List<Image> currentList = imageRepo.findByDataId(data.getId());
-            List<Image> onlyInFirst = new ArrayList<>();
-            List<Image> onlyInSecond = new ArrayList<>();
-            if (currentList!=null && !currentList.isEmpty()) {
-                List<Image> newList = new ArrayList<>();
+        List<ImageUploadService.Staged> staged = new ArrayList<>();
+        try {
+            if (images != null) {
                 for (MultipartFile image : images) {
+                    try (InputStream in = image.getInputStream()) {
+                        staged.add(imageUploads.stage(in));
+                    }
+                }
+            }
+            inTransaction(() -> link(userId, model, images, staged, results));
+        } finally {
+            staged.forEach(imageUploads::discard);
+        }
+    }
+
+    private RecordBatchRepository.Upsert link(Long userId, RecordData model, MultipartFile[] images,
+                                              List<ImageUploadService.Staged> staged, String results) throws IOException {
+        RecordBatchRepository.Upsert saved = batchRepo.upsertData(userId, model, new Date());
+        Data data = dataRepo.getReferenceById(saved.id());
+        Map<String, String> linked = linkedImages(model);
+        if (images != null || !linked.isEmpty()) {
+            MultipartFile[] files = images == null ? new MultipartFile[0] : images;
+            List<RecordBatchRepository.ImageName> currentList = saved.created() ? List.of() : batchRepo.findImages(data.getId());
+            List<RecordBatchRepository.ImageName> onlyInFirst = new ArrayList<>();
+            List<RecordBatchRepository.ImageName> onlyInSecond = new ArrayList<>();
+            if (currentList!=null && !currentList.isEmpty()) {
+                List<RecordBatchRepository.ImageName> newList = new ArrayList<>();
+                for (MultipartFile image : files) {
                     String name = image.getOriginalFilename();
-                    String sectionId = name.substring(0, name.indexOf("-"));
-                    Image newImage = new Image();
-                    newImage.setData(data);
-                    Section section = new Section();
-                    section.setId(Long.parseLong(sectionId));
-                    newImage.setSection(section);
-                    newImage.setOriginalFileName(name);
-                    newList.add(newImage);
+                    newList.add(new RecordBatchRepository.ImageName(Long.parseLong(sectionId(name)), name));
                 }
-                Diff.Result<Image> r = Diff.diffByKey(
+                for (String name : linked.keySet()) {
+                    newList.add(new RecordBatchRepository.ImageName(Long.parseLong(sectionId(name)), name));
+                }
+                Diff.Result<RecordBatchRepository.ImageName> r = Diff.diffByKey(
                         newList, currentList,
-                        i -> (i.getData().getUuid() + "|" + i.getSection().getId() + "|" + i.getOriginalFileName()).toLowerCase(Locale.ROOT)
+                        i -> imageId(i.sectionId(), i.originalFileName())
                 );
                 onlyInFirst = r.onlyInFirst;
                 onlyInSecond = r.onlyInSecond;
             }
-            for (MultipartFile image : images){
+            Set<String> present = new HashSet<>();
+            if (currentList != null) {
+                for (RecordBatchRepository.ImageName image : currentList) {
+                    present.add(imageId(image.sectionId(), image.originalFileName()));
+                }
+            }
+            for (int i = 0; i < files.length; i++) {
+                MultipartFile image = files[i];
                 String name = image.getOriginalFilename();
+                present.add(imageId(Long.parseLong(sectionId(name)), name));
                 boolean isNew = false;
                 if (!onlyInFirst.isEmpty()){
-                    isNew = onlyInFirst.stream().anyMatch(i -> name.equalsIgnoreCase(i.getOriginalFileName()));
+                    isNew = onlyInFirst.stream().anyMatch(img -> name.equalsIgnoreCase(img.originalFileName()));
                 }else{
                     isNew = true;
                 }
                 if (isNew) {
-                    String ext = Optional.ofNullable(name)
-                            .filter(n -> n.contains("."))
-                            .map(n -> n.substring(n.lastIndexOf('.')))
-                            .orElse("");
-                    String sectionId = name.substring(0, name.indexOf("-"));
-                    String key = data.getProject().getId() + "_" + sectionId + "_" + data.getId() + "_" + UUID.randomUUID() + ext;
-                    String path = fileStorage.store(key, image).key();
-                    Optional<Section> section = sectionRepo.findById(Long.parseLong(sectionId));
-                    Image recordImage = new Image();
-                    recordImage.setUuid(path);
-                    recordImage.setOriginalFileName(name);
-                    recordImage.setData(data);
-                    recordImage.setStatus(0);
-                    section.ifPresent(recordImage::setSection);
-                    imageRepo.save(recordImage);
+                    imageUploads.submit(saveImage(data, saved.projectId(), name, imageKey(saved, name)), staged.get(i),
+                            image.getContentType(), formCache.imagePolicy(saved.projectId()));
                 }
             }
-            for (Image image : onlyInSecond){
-                imageRepo.deleteObsoleteImage(data.getId(), image.getSection().getId(), image.getOriginalFileName());
+            attachLinked(userId, data, saved.projectId(), linked, present);
+            for (RecordBatchRepository.ImageName image : onlyInSecond){
+                imageRepo.deleteObsoleteImage(data.getId(), image.sectionId(), image.originalFileName());
             }
         }
         if (results!=null) {
-            Map<String,Object> map = gson.fromJson(results, Map.class);
-            for (String key : map.keySet()) {
-                Optional<TextQuery> question = textQueryRepo.findById(Long.parseLong(key));
-                if (question.isPresent()) {
-                    QueryReply response = queryReplyRepo.findByData_idAndQuestion_Id(data.getId(), question.get().getId());
-                    if (response == null) {
-                        response = new QueryReply();
-                        response.setData(data);
-                        response.setQuestion(question.get());
+            saveResults(data.getId(), saved.projectId(), saved.created(), results);
+        }
+        return saved;
+    }
+
+    /**
+     * Reads the parts of a streamed upload up to and including {@code model}, which must
+     * precede any image, so the caller knows which record is being sent before the images
+     * are read; pass the result on to {@link #record(Long, StreamHead, MultipartReader)}.
+     */
+    public static StreamHead readHead(MultipartReader parts) throws IOException {
+        String results = null;
+        MultipartReader.Part part;
+        while ((part = parts.next()) != null) {
+            if ("model".equals(part.name())) {
+                return new StreamHead(part.text(), results);
+            } else if ("results".equals(part.name())) {
+                results = part.text();
+            } else if ("images".equals(part.name()) && part.isFile()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Model must be sent before images");
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing model");
+    }
+
+    /**
+     * Streaming variant of {@link #record(Long, String, MultipartFile[], String)}: the parts
+     * after {@code head} are consumed in arrival order and each image is piped straight to
+     * staging without being buffered in memory first. Results sent after the model replace
+     * those sent before it; a second model is ignored.
+     */
+    public void record(Long userId, StreamHead head, MultipartReader parts) throws IOException {
+        String results = head.results();
+        Map<String, StagedImage> images = new LinkedHashMap<>();
+        try {
+            MultipartReader.Part part;
+            while ((part = parts.next()) != null) {
+                if ("results".equals(part.name())) {
+                    results = part.text();
+                } else if ("images".equals(part.name()) && part.isFile()) {
+                    String name = part.filename();
+                    String id = imageId(Long.parseLong(sectionId(name)), name);
+                    if (!images.containsKey(id)) {
+                        images.put(id, new StagedImage(name, part.contentType(), imageUploads.stage(part.body())));
                     }
-                    Object value = map.get(key);
-                    if (value instanceof List) {
-                        response.setResponse(gson.toJson(value));
-                    } else {
-                        response.setResponse((String) value);
+                }
+            }
+            RecordData record = gson.fromJson(head.model(), RecordData.class);
+            String answers = results;
+            inTransaction(() -> link(userId, record, images, answers));
+        } finally {
+            images.values().forEach(image -> imageUploads.discard(image.staged()));
+        }
+    }
+
+    /**
+     * Applies an upload replayed from {@link IngestJournal} with the same semantics as the
+     * streaming upload. Image bytes are copied from the journaled files, which stay in place
+     * until the journal has moved past the entry.
+     */
+    public void replay(Long userId, String model, List<ImageFile> files, String results) throws IOException {
+        RecordData record = gson.fromJson(model, RecordData.class);
+        Map<String, StagedImage> images = new LinkedHashMap<>();
+        try {
+            for (ImageFile file : files) {
+                String id = imageId(Long.parseLong(sectionId(file.name())), file.name());
+                if (!images.containsKey(id)) {
+                    try (InputStream in = Files.newInputStream(file.path())) {
+                        images.put(id, new StagedImage(file.name(), file.contentType(), imageUploads.stage(in)));
                     }
-                    response.setResponseDateTime(new Date());
-                    queryReplyRepo.save(response);
                 }
             }
+            inTransaction(() -> link(userId, record, images, results));
+        } finally {
+            images.values().forEach(image -> imageUploads.discard(image.staged()));
+        }
+    }
+
+    private RecordBatchRepository.Upsert link(Long userId, RecordData model, Map<String, StagedImage> images,
+                                              String results) throws IOException {
+        RecordBatchRepository.Upsert saved = batchRepo.upsertData(userId, model, new Date());
+        Data data = dataRepo.getReferenceById(saved.id());
+        Map<String, RecordBatchRepository.ImageName> current = new HashMap<>();
+        if (!saved.created()) {
+            for (RecordBatchRepository.ImageName image : batchRepo.findImages(data.getId())) {
+                current.put(imageId(image.sectionId(), image.originalFileName()), image);
+            }
+        }
+        for (Map.Entry<String, StagedImage> e : images.entrySet()) {
+            if (!current.containsKey(e.getKey())) {
+                StagedImage image = e.getValue();
+                imageUploads.submit(saveImage(data, saved.projectId(), image.name(), imageKey(saved, image.name())),
+                        image.staged(), image.contentType(), formCache.imagePolicy(saved.projectId()));
+            }
+        }
+        Map<String, String> linked = linkedImages(model);
+        Set<String> present = new HashSet<>(current.keySet());
+        present.addAll(images.keySet());
+        attachLinked(userId, data, saved.projectId(), linked, present);
+        if (!images.isEmpty() || !linked.isEmpty()) {
+            Set<String> kept = new HashSet<>(images.keySet());
+            for (String name : linked.keySet()) {
+                kept.add(imageId(Long.parseLong(sectionId(name)), name));
+            }
+            for (Map.Entry<String, RecordBatchRepository.ImageName> e : current.entrySet()) {
+                if (!kept.contains(e.getKey())) {
+                    RecordBatchRepository.ImageName image = e.getValue();
+                    imageRepo.deleteObsoleteImage(data.getId(), image.sectionId(), image.originalFileName());
+                }
+            }
+        }
+        if (results != null) {
+            saveResults(data.getId(), saved.projectId(), saved.created(), results);
+        }
+        return saved;
+    }
+
+    /**
+     * Saves a record whose images are read from {@code source}, with the same semantics as
+     * the streaming upload, and reports the saved record. Used by {@link StreamIngestService}
+     * for records pushed over a long-lived connection.
+     */
+    public RecordResult record(Long userId, String model, String results, ImageSource source) throws IOException {
+        RecordData record = gson.fromJson(model, RecordData.class);
+        if (record == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing model");
+        }
+        Map<String, StagedImage> images = new LinkedHashMap<>();
+        try {
+            ImagePart part;
+            while ((part = source.next()) != null) {
+                if (part.name() == null || !part.name().matches("\\d+-.+")) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image names must look like <sectionId>-<file>");
+                }
+                String id = imageId(Long.parseLong(sectionId(part.name())), part.name());
+                if (!images.containsKey(id)) {
+                    images.put(id, new StagedImage(part.name(), part.contentType(), imageUploads.stage(part.body())));
+                }
+            }
+            RecordBatchRepository.Upsert saved = inTransaction(() -> link(userId, record, images, results));
+            return new RecordResult(record.uuid(), saved.id(), saved.created(), null);
+        } finally {
+            images.values().forEach(image -> imageUploads.discard(image.staged()));
+        }
+    }
+
+    // Linked images of the model with their hashes lowercased, keyed by file name.
+    private static Map<String, String> linkedImages(RecordData model) {
+        Map<String, String> linked = new LinkedHashMap<>();
+        if (model.linkedImages() != null) {
+            for (Map.Entry<String, String> e : model.linkedImages().entrySet()) {
+                if (e.getKey() == null || !e.getKey().matches("\\d+-.+") || e.getValue() == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid linked image " + e.getKey());
+                }
+                linked.put(e.getKey(), e.getValue().toLowerCase(Locale.ROOT));
+            }
+        }
+        return linked;
+    }
+
+    // Adds the linked images the record does not have yet, pointing them at objects the user
+    // already stored with the same content; their keys are looked up in one query.
+    private void attachLinked(Long userId, Data data, Long projectId, Map<String, String> linked,
+                              Set<String> present) {
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : linked.entrySet()) {
+            if (!present.contains(imageId(Long.parseLong(sectionId(e.getKey())), e.getKey()))) {
+                missing.put(e.getKey(), e.getValue());
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<String, String> keys = batchRepo.findStoredImages(userId, new HashSet<>(missing.values()));
+        for (Map.Entry<String, String> e : missing.entrySet()) {
+            String key = keys.get(e.getValue());
+            if (key == null) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Image " + e.getKey() + " is not stored, send it again");
+            }
+            Image image = newImage(data, projectId, e.getKey(), key);
+            image.setStorageStatus(ImageUploadService.STORED);
+            image.setContentHash(e.getValue());
+            imageRepo.save(image);
+        }
+    }
+
+    private <T> T inTransaction(Work<T> work) throws IOException {
+        try {
+            return transactions.execute(status -> {
+                try {
+                    return work.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private interface Work<T> {
+        T run() throws IOException;
+    }
+
+    private record StagedImage(String name, String contentType, ImageUploadService.Staged staged) {}
+
+    /** The text parts of a streamed upload read before its images. */
+    public record StreamHead(String model, String results) {}
+
+    /** An image of a journaled upload. */
+    public record ImageFile(String name, String contentType, Path path) {}
+
+    /** Images of a record read one after the other; {@link #next} returns {@code null} after the last. */
+    public interface ImageSource {
+        ImagePart next() throws IOException;
+    }
+
+    /** An image read from an {@link ImageSource}; its body is read to the end before the next one is asked for. */
+    public record ImagePart(String name, String contentType, InputStream body) {}
+
+    /**
+     * Tells a syncing device which of its records and images the server does not have, so it
+     * sends only those. Records are matched by uuid and images by content hash among the
+     * user's stored images, each set with one indexed query. An image the server has can be
+     * referenced from a record's {@code linkedImages} instead of being sent.
+     */
+    public PresenceResponse presence(Long userId, PresenceRequest request) {
+        Set<String> uuids = distinct(request.uuids(), false);
+        Set<String> hashes = distinct(request.hashes(), true);
+        Set<String> stored = batchRepo.findDataIds(userId, uuids).keySet();
+        Set<String> storedHashes = batchRepo.findStoredImages(userId, hashes).keySet();
+        List<String> missingUuids = new ArrayList<>();
+        for (String uuid : uuids) {
+            if (!stored.contains(uuid)) {
+                missingUuids.add(uuid);
+            }
+        }
+        List<String> missingHashes = new ArrayList<>();
+        for (String hash : hashes) {
+            if (!storedHashes.contains(hash)) {
+                missingHashes.add(hash);
+            }
+        }
+        return new PresenceResponse(missingUuids, missingHashes);
+    }
+
+    // Non-blank values in request order without duplicates.
+    private Set<String> distinct(List<String> values, boolean lowerCase) {
+        Set<String> distinct = new LinkedHashSet<>();
+        if (values != null) {
+            if (values.size() > maxPresenceItems) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "At most " + maxPresenceItems + " uuids and hashes per request");
+            }
+            for (String value : values) {
+                if (value != null && !value.isBlank()) {
+                    distinct.add(lowerCase ? value.toLowerCase(Locale.ROOT) : value);
+                }
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Writes a whole offline sync in one transaction. The body is a JSON array of
+     * {@code {"model": ..., "results": ...}} objects using the same formats as
+     * {@link #record(Long, String, MultipartFile[], String)}; images are not part of a batch.
+     * Records and answers are written with JDBC batches, and invalid entries are reported in
+     * their result without failing the rest of the batch.
+     */
+    @Transactional
+    public List<RecordResult> recordBatch(Long userId, String body) {
+        List<BatchRecord> batch = gson.fromJson(body, new TypeToken<List<BatchRecord>>() {}.getType());
+        if (batch == null || batch.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Empty batch");
+        }
+        if (batch.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "At most " + maxBatchSize + " records per batch");
+        }
+
+        RecordResult[] results = new RecordResult[batch.size()];
+        Map<Integer, Map<Long, String>> answers = new HashMap<>();
+        Set<String> uuids = new HashSet<>();
+        Set<Long> projectIds = new HashSet<>();
+        Set<Long> questionIds = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            RecordData model = batch.get(i) == null ? null : batch.get(i).model();
+            String uuid = model == null ? null : model.uuid();
+            if (uuid == null || uuid.isBlank()) {
+                results[i] = RecordResult.failed(uuid, "Missing model uuid");
+            } else if (!uuids.add(uuid)) {
+                results[i] = RecordResult.failed(uuid, "Duplicate uuid in batch");
+            } else {
+                try {
+                    Map<Long, String> replies = answers(batch.get(i).results(), formCache.questionTypes(model.projectId()));
+                    answers.put(i, replies);
+                    questionIds.addAll(replies.keySet());
+                    if (model.projectId() != null) {
+                        projectIds.add(model.projectId());
+                    }
+                } catch (IllegalArgumentException e) {
+                    uuids.remove(uuid);
+                    results[i] = RecordResult.failed(uuid, "Invalid results: " + e.getMessage());
+                }
+            }
+        }
+
+        Date now = new Date();
+        Map<String, Long> existing = batchRepo.findDataIds(userId, uuids);
+        Set<Long> projects = batchRepo.findProjectIds(projectIds);
+        List<Integer> inserted = new ArrayList<>();
+        List<Integer> updated = new ArrayList<>();
+        for (Integer i : answers.keySet()) {
+            (existing.containsKey(batch.get(i).model().uuid()) ? updated : inserted).add(i);
+        }
+        Collections.sort(inserted);
+        Collections.sort(updated);
+
+        List<RecordBatchRepository.Upsert> insertedRows = batchRepo.insertData(userId, models(batch, inserted), projects, now);
+        List<Long> updatedIds = new ArrayList<>();
+        for (Integer i : updated) {
+            updatedIds.add(existing.get(batch.get(i).model().uuid()));
+        }
+        batchRepo.updateData(updatedIds, models(batch, updated), projects, now);
+
+        Map<Integer, Long> dataIds = new HashMap<>();
+        // an insert that met a record another request saved after findDataIds updated it
+        // instead; its answers are compared with the stored ones like those of updated records
+        List<Long> storedIds = new ArrayList<>(updatedIds);
+        for (int k = 0; k < inserted.size(); k++) {
+            RecordBatchRepository.Upsert row = insertedRows.get(k);
+            dataIds.put(inserted.get(k), row.id());
+            results[inserted.get(k)] = new RecordResult(batch.get(inserted.get(k)).model().uuid(), row.id(), row.created(), null);
+            if (!row.created()) {
+                storedIds.add(row.id());
+            }
+        }
+        for (int k = 0; k < updated.size(); k++) {
+            dataIds.put(updated.get(k), updatedIds.get(k));
+            results[updated.get(k)] = new RecordResult(batch.get(updated.get(k)).model().uuid(), updatedIds.get(k), false, null);
+        }
+
+        Set<Long> questions = questions(projects, questionIds);
+        Map<Long, Map<Long, RecordBatchRepository.Reply>> stored = batchRepo.findReplies(storedIds);
+        List<RecordBatchRepository.Reply> newReplies = new ArrayList<>();
+        List<RecordBatchRepository.Reply> changedReplies = new ArrayList<>();
+        for (Map.Entry<Integer, Long> d : dataIds.entrySet()) {
+            collectReplies(d.getValue(), answers.get(d.getKey()), questions,
+                    stored.getOrDefault(d.getValue(), Map.of()), newReplies, changedReplies);
+        }
+        batchRepo.insertReplies(newReplies, now);
+        batchRepo.updateReplies(changedReplies, now);
+        return Arrays.asList(results);
+    }
+
+    private static List<RecordData> models(List<BatchRecord> batch, List<Integer> indexes) {
+        List<RecordData> models = new ArrayList<>(indexes.size());
+        for (Integer i : indexes) {
+            models.add(batch.get(i).model());
+        }
+        return models;
+    }
+
+    // Answers keyed by question id, each checked against its question type when the form
+    // defines it.
+    private static Map<Long, String> answers(List<AnswerDecoder.Answer> decoded, Map<Long, Integer> types) {
+        Map<Long, String> answers = new LinkedHashMap<>();
+        if (decoded != null) {
+            for (AnswerDecoder.Answer answer : decoded) {
+                answers.put(AnswerDecoder.validate(answer, types), answer.value());
+            }
+        }
+        return answers;
+    }
+
+    static String sectionId(String name) {
+        return name.substring(0, name.indexOf("-"));
+    }
+
+    private static String imageId(Long sectionId, String name) {
+        return (sectionId + "|" + name).toLowerCase(Locale.ROOT);
+    }
+
+    private static String imageKey(RecordBatchRepository.Upsert data, String name) {
+        return imageKey(data.projectId(), data.id(), name);
+    }
+
+    static String imageKey(Long projectId, Long dataId, String name) {
+        String ext = Optional.ofNullable(name)
+                .filter(n -> n.contains("."))
+                .map(n -> n.substring(n.lastIndexOf('.')))
+                .orElse("");
+        return imageKeyPrefix(projectId, dataId, name) + UUID.randomUUID() + ext;
+    }
+
+    // every key imageKey makes for this image starts with this
+    static String imageKeyPrefix(Long projectId, Long dataId, String name) {
+        return projectId + "_" + sectionId(name) + "_" + dataId + "_";
+    }
+
+    private Image saveImage(Data data, Long projectId, String name, String path) {
+        return imageRepo.save(newImage(data, projectId, name, path));
+    }
+
+    private Image newImage(Data data, Long projectId, String name, String path) {
+        Long sectionId = Long.parseLong(sectionId(name));
+        // by reference, so the section and its project are never loaded into the session
+        Optional<Section> section = formCache.hasSection(projectId, sectionId) || sectionRepo.existsById(sectionId)
+                ? Optional.of(sectionRepo.getReferenceById(sectionId))
+                : Optional.empty();
+        Image recordImage = new Image();
+        recordImage.setUuid(path);
+        recordImage.setOriginalFileName(name);
+        recordImage.setData(data);
+        recordImage.setStatus(0);
+        recordImage.setStorageStatus(ImageUploadService.PENDING);
+        section.ifPresent(recordImage::setSection);
+        return recordImage;
+    }
+
+    /**
+     * Writes the answers of one record: answers are decoded straight from the JSON and
+     * checked against the cached form, the stored answers are read with one query (skipped
+     * for a new record), and only new and changed rows are written, in batches.
+     */
+    private void saveResults(Long dataId, Long projectId, boolean created, String results) {
+        List<AnswerDecoder.Answer> decoded = AnswerDecoder.decode(results);
+        if (decoded.isEmpty()) {
+            return;
+        }
+        Map<Long, String> answers = answers(decoded, formCache.questionTypes(projectId));
+        Set<Long> questions = questions(Collections.singleton(projectId), answers.keySet());
+        Map<Long, RecordBatchRepository.Reply> stored = created
+                ? Map.of()
+                : batchRepo.findReplies(List.of(dataId)).getOrDefault(dataId, Map.of());
+        List<RecordBatchRepository.Reply> newReplies = new ArrayList<>();
+        List<RecordBatchRepository.Reply> changedReplies = new ArrayList<>();
+        collectReplies(dataId, answers, questions, stored, newReplies, changedReplies);
+        Date now = new Date();
+        batchRepo.insertReplies(newReplies, now);
+        batchRepo.updateReplies(changedReplies, now);
+    }
+
+    // Question ids that exist, taken from the cached forms of the given projects; only ids
+    // outside those forms are looked up in the database.
+    private Set<Long> questions(Collection<Long> projectIds, Set<Long> questionIds) {
+        Set<Long> known = new HashSet<>(formCache.knownQuestions(projectIds, questionIds));
+        Set<Long> unknown = new HashSet<>(questionIds);
+        unknown.removeAll(known);
+        known.addAll(batchRepo.findQuestionIds(unknown));
+        return known;
+    }
+
+    // Sorts a record's answers into new and changed rows; answers to unknown questions and
+    // answers equal to the stored response are dropped.
+    private static void collectReplies(Long dataId, Map<Long, String> answers, Set<Long> questions,
+                                       Map<Long, RecordBatchRepository.Reply> stored,
+                                       List<RecordBatchRepository.Reply> newReplies,
+                                       List<RecordBatchRepository.Reply> changedReplies) {
+        for (Map.Entry<Long, String> a : answers.entrySet()) {
+            if (!questions.contains(a.getKey())) {
+                continue;
+            }
+            RecordBatchRepository.Reply current = stored.get(a.getKey());
+            if (current == null) {
+                newReplies.add(new RecordBatchRepository.Reply(null, dataId, a.getKey(), a.getValue()));
+            } else if (!Objects.equals(current.response(), a.getValue())) {
+                changedReplies.add(new RecordBatchRepository.Reply(current.id(), dataId, a.getKey(), a.getValue()));
+            }
         }
     }
 
@@ -151,15 +628,25 @@ public class RecordService extends BaseService {
         return new int[]{uploaded, verified, total};
     }
 
+    /**
+     * One page of records, newest first: the user's records, only their verified ones for
+     * {@code type} 1, or every record for {@code type} 2. {@code cursor} is the
+     * {@code nextCursor} of the previous page.
+     */
     @Transactional(readOnly = true)
-    public List<Data> getRecordsByUser(Long userId, Integer type){
-        if (type==2){
-            return dataRepo.findAll();
-        }else if (type==1){
-            return dataRepo.findByUser_IdAndStatusOrderByCreatedAtDesc(userId,1);
+    public RecordPage<RecordSummary> getRecordsByUser(Long userId, Integer type, String cursor, Integer limit){
+        PageCursor after = PageCursor.decode(cursor);
+        int size = pageSize(limit);
+        int t = type == null ? 0 : type;
+        List<RecordSummary> records;
+        if (t==2){
+            records = dataRepo.findPage(after.createdAt(), after.id(), size + 1);
+        }else if (t==1){
+            records = dataRepo.findPageByUserAndStatus(userId, 1, after.createdAt(), after.id(), size + 1);
         }else {
-            return dataRepo.findByUser_IdOrderByCreatedAtDesc(userId);
+            records = dataRepo.findPageByUser(userId, after.createdAt(), after.id(), size + 1);
         }
+        return page(records, size);
     }
 
     @Transactional(readOnly = true)
@@ -170,15 +657,53 @@ public class RecordService extends BaseService {
         return new int[]{uploaded, verified, total};
     }
 
+    /**
+     * One page of project records, newest first: the user's records in the project, only
+     * their verified ones for {@code type} 1, or all of the project's records for
+     * {@code type} 2.
+     */
     @Transactional(readOnly = true)
-    public List<Data> getRecordsByUserAndProject(Long userId, Long projectId, Integer type){
-        if (type==2){
-            return dataRepo.findByProject_IdOrderByCreatedAtDesc(projectId);
-        }else if (type==1) {
-            return dataRepo.findByProject_IdAndUser_IdAndStatusOrderByCreatedAtDesc(projectId, userId,1);
+    public RecordPage<RecordSummary> getRecordsByUserAndProject(Long userId, Long projectId, Integer type, String cursor, Integer limit){
+        PageCursor after = PageCursor.decode(cursor);
+        int size = pageSize(limit);
+        int t = type == null ? 0 : type;
+        List<RecordSummary> records;
+        if (t==2){
+            records = dataRepo.findPageByProject(projectId, after.createdAt(), after.id(), size + 1);
+        }else if (t==1) {
+            records = dataRepo.findPageByProjectAndUserAndStatus(projectId, userId, 1, after.createdAt(), after.id(), size + 1);
         }else {
-            return dataRepo.findByProject_IdAndUser_IdOrderByCreatedAtDesc(projectId, userId);
+            records = dataRepo.findPageByProjectAndUser(projectId, userId, after.createdAt(), after.id(), size + 1);
+        }
+        return page(records, size);
+    }
+
+    private int pageSize(Integer limit) {
+        return limit == null || limit <= 0 ? pageSize : Math.min(limit, maxPageSize);
+    }
+
+    // one row more than the page is read to tell whether another page follows
+    private static RecordPage<RecordSummary> page(List<RecordSummary> records, int size) {
+        if (records.size() <= size) {
+            return new RecordPage<>(records, null);
+        }
+        RecordSummary last = records.get(size - 1);
+        return new RecordPage<>(records.subList(0, size), new PageCursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    /**
+     * A listed record with its images and answers. Only the user who uploaded it, the
+     * creator of its project and admins may see it; anyone else gets 403, whether or not
+     * the record exists.
+     */
+    @Transactional(readOnly = true)
+    public RecordDetail getRecord(Long userId, Long id) {
+        if (!isAdmin() && !dataRepo.isVisibleTo(id, userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
         }
+        RecordSummary record = dataRepo.findSummary(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Record not found"));
+        return new RecordDetail(record, imageRepo.findSummaries(id), replyRepo.findSummaries(id));
     }
 
     @Transactional(readOnly = true)
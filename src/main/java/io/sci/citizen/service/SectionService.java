@@ -20,10 +20,12 @@ public class SectionService extends BaseService{
 
     private final SectionRepository sectionRepo;
     private final ProjectRepository projectRepo;
+    private final FormCache formCache;
 
-    public SectionService(SectionRepository sectionRepo, ProjectRepository projectRepo) {
+    public SectionService(SectionRepository sectionRepo, ProjectRepository projectRepo, FormCache formCache) {
         this.sectionRepo = sectionRepo;
         this.projectRepo = projectRepo;
+        this.formCache = formCache;
     }
 
     @Transactional(readOnly = true)
@@ -52,21 +54,31 @@ public class SectionService extends BaseService{
     public Section create(SectionRequest req) {
         Section s = new Section();
         apply(s, req);
-        return sectionRepo.save(s);
+        Section saved = sectionRepo.save(s);
+        formCache.invalidate(projectId(s));
+        return saved;
     }
 
     @Transactional
     public Section update(Long id, SectionRequest req) {
         Section s = getById(id);
+        Long before = projectId(s);
         apply(s, req);
-        return sectionRepo.save(s);
+        Section saved = sectionRepo.save(s);
+        formCache.invalidate(before, projectId(s));
+        return saved;
     }
 
     @Transactional
     public void delete(Long id) {
+        sectionRepo.findById(id).ifPresent(s -> formCache.invalidate(projectId(s)));
         sectionRepo.deleteById(id);
     }
 
+    private static Long projectId(Section s) {
+        return s.getProject() == null ? null : s.getProject().getId();
+    }
+
     private void apply(Section s, SectionRequest req) {
         s.setSequence(req.getSequence());
         s.setType(req.getType().trim());
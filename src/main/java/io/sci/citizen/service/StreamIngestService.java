@@ -0,0 +1,163 @@
+package io.sci.citizen.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.sci.citizen.api.component.FrameReader;
+import io.sci.citizen.api.dto.RecordResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Continuous ingest for stations that push records over one long-lived connection instead
+ * of one multipart request per record. Records are read from a {@link FrameReader} stream
+ * and each is saved through {@link RecordService} as soon as its end frame arrives; the
+ * caller is authenticated once for the whole stream.
+ * <p>
+ * One JSON line is written back per record, in stream order, with the outcome of that
+ * record. A record that fails is reported and skipped; a stream that breaks the framing
+ * gets a last line without uuid and is not read any further.
+ */
+@Service
+public class StreamIngestService {
+
+    private final RecordService recordService;
+    private final long maxImageSize;
+    private final int maxFrameSize;
+    private final Gson gson = new Gson();
+
+    public StreamIngestService(RecordService recordService,
+                               @Value("${spring.servlet.multipart.max-file-size:10MB}") DataSize maxImageSize,
+                               @Value("${app.ingest.stream.max-frame-size:1MB}") DataSize maxFrameSize) {
+        this.recordService = recordService;
+        this.maxImageSize = maxImageSize.toBytes();
+        this.maxFrameSize = (int) Math.min(maxFrameSize.toBytes(), Integer.MAX_VALUE);
+    }
+
+    /** Saves the records of {@code in} until it ends; returns how many were saved. */
+    public int ingest(Long userId, InputStream in, OutputStream out) throws IOException {
+        FrameReader frames = new FrameReader(in, maxFrameSize);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        int saved = 0;
+        try {
+            int type;
+            while ((type = frames.next()) != -1) {
+                if (type != FrameReader.RECORD) {
+                    throw new StreamException("Expected a record frame but got '" + (char) type + "'");
+                }
+                RecordResult result = save(userId, frames);
+                if (result.error() == null) {
+                    saved++;
+                }
+                write(writer, result);
+            }
+        } catch (StreamException | EOFException e) {
+            write(writer, RecordResult.failed(null, e.getMessage()));
+        }
+        return saved;
+    }
+
+    private RecordResult save(Long userId, FrameReader frames) throws IOException {
+        Images images = new Images(frames);
+        String uuid = null;
+        try {
+            JsonObject record = JsonParser.parseString(frames.text()).getAsJsonObject();
+            JsonElement model = record.get("model");
+            JsonElement results = record.get("results");
+            if (model != null && model.isJsonObject() && model.getAsJsonObject().has("uuid")) {
+                uuid = model.getAsJsonObject().get("uuid").getAsString();
+            }
+            return recordService.record(userId, model == null ? null : model.toString(),
+                    results == null || results.isJsonNull() ? null : results.toString(), images);
+        } catch (StreamException | EOFException e) {
+            throw e;
+        } catch (ResponseStatusException e) {
+            images.skipRest();
+            return RecordResult.failed(uuid, e.getReason());
+        } catch (RuntimeException | IOException e) {
+            images.skipRest();
+            return RecordResult.failed(uuid, e.getMessage());
+        }
+    }
+
+    private void write(Writer writer, RecordResult result) throws IOException {
+        writer.write(gson.toJson(result));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    // The image frames of one record, up to its end frame.
+    private final class Images implements RecordService.ImageSource {
+
+        private final FrameReader frames;
+        private boolean ended;
+
+        private Images(FrameReader frames) {
+            this.frames = frames;
+        }
+
+        @Override
+        public RecordService.ImagePart next() throws IOException {
+            if (ended) {
+                return null;
+            }
+            int type;
+            do {
+                // chunks of an image that was not read to the end
+                type = frames.next();
+            } while (type == FrameReader.CHUNK);
+            if (type == FrameReader.END) {
+                ended = true;
+                return null;
+            }
+            if (type != FrameReader.IMAGE) {
+                throw type == -1
+                        ? new EOFException("Stream ended inside a record")
+                        : new StreamException("Expected an image or end frame but got '" + (char) type + "'");
+            }
+            JsonObject header;
+            try {
+                header = JsonParser.parseString(frames.text()).getAsJsonObject();
+            } catch (JsonParseException | IllegalStateException e) {
+                throw new StreamException("Invalid image header");
+            }
+            return new RecordService.ImagePart(string(header, "name"), string(header, "contentType"),
+                    frames.chunks(maxImageSize));
+        }
+
+        // Moves past the end frame of a record that failed part way.
+        private void skipRest() throws IOException {
+            while (!ended) {
+                int type = frames.next();
+                if (type == -1) {
+                    throw new EOFException("Stream ended inside a record");
+                }
+                ended = type == FrameReader.END;
+            }
+        }
+    }
+
+    private static String string(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    // The stream does not follow the framing, so nothing after this point can be trusted.
+    private static final class StreamException extends IOException {
+        StreamException(String message) {
+            super(message);
+        }
+    }
+}
@@ -23,11 +23,13 @@ public class TextQueryService extends BaseService {
     private final TextQueryRepository qRepo;
     private final QueryOptionRepository oRepo;
     private final SectionRepository sectionRepo;
+    private final FormCache formCache;
 
     public TextQueryService(TextQueryRepository qRepo,
                             QueryOptionRepository oRepo,
-                            SectionRepository sectionRepo) {
-        this.qRepo = qRepo; this.oRepo = oRepo; this.sectionRepo = sectionRepo;
+                            SectionRepository sectionRepo,
+                            FormCache formCache) {
+        this.qRepo = qRepo; this.oRepo = oRepo; this.sectionRepo = sectionRepo; this.formCache = formCache;
     }
 
     @Transactional(readOnly = true)
@@ -57,14 +59,19 @@ public class TextQueryService extends BaseService {
     public TextQuery create(TextQueryRequest req) {
         TextQuery t = new TextQuery();
         apply(t, req);
-        return qRepo.save(t);
+        TextQuery saved = qRepo.save(t);
+        formCache.invalidate(projectId(t));
+        return saved;
     }
 
     @Transactional
     public TextQuery update(Long id, TextQueryRequest req) {
         TextQuery t = getById(id);
+        Long before = projectId(t);
         apply(t, req);
-        return qRepo.save(t);
+        TextQuery saved = qRepo.save(t);
+        formCache.invalidate(before, projectId(t));
+        return saved;
     }
 
 
@@ -88,6 +95,7 @@ public class TextQueryService extends BaseService {
     @Transactional
     public TextQuery save(TextQueryRequest req) {
         TextQuery q = (req.getId() == null) ? new TextQuery() : getById(req.getId());
+        Long before = projectId(q);
         q.setAttribute(req.getAttribute());
         q.setQuestion(req.getQuestion());
         q.setType(req.getType());
@@ -102,6 +110,7 @@ public class TextQueryService extends BaseService {
             q.setSection(null);
 
         TextQuery textQuery = qRepo.save(q);
+        formCache.invalidate(before, projectId(q));
         if (req.getType()==1||req.getType()==2||req.getType()==4||req.getType()==6){
             for (QueryOptionRequest optionRequest : req.getOptions()) {
                 QueryOption p = new QueryOption();
@@ -136,5 +145,13 @@ public class TextQueryService extends BaseService {
     }
 
     @Transactional
-    public void delete(Long id) { qRepo.deleteById(id); }
+    public void delete(Long id) {
+        qRepo.findById(id).ifPresent(q -> formCache.invalidate(projectId(q)));
+        qRepo.deleteById(id);
+    }
+
+    private static Long projectId(TextQuery q) {
+        Section section = q.getSection();
+        return section == null || section.getProject() == null ? null : section.getProject().getId();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,328 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.api.dto.UploadSessionRequest;
+import io.sci.citizen.api.dto.UploadSessionStatus;
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.model.Image;
+import io.sci.citizen.model.UploadSession;
+import io.sci.citizen.model.repository.DataRepository;
+import io.sci.citizen.model.repository.ImageRepository;
+import io.sci.citizen.model.repository.RecordBatchRepository;
+import io.sci.citizen.model.repository.SectionRepository;
+import io.sci.citizen.model.repository.UploadSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable image uploads. A client opens a session for an image of an existing record,
+ * sends the bytes in chunks at the offset the server reports, and completes the session to
+ * attach the image. Chunks are appended to a local tail file and forwarded to storage as
+ * multipart parts whenever a full part has arrived, so a dropped connection only costs the
+ * chunk in flight. If the tail is lost the reported offset falls back to what storage holds.
+ * <p>
+ * A tail file is named after the offset its first byte belongs at, so the tail a session
+ * reads is always the one that continues where its saved parts end.
+ */
+@Service
+public class UploadSessionService {
+
+    private final UploadSessionRepository sessionRepo;
+    private final DataRepository dataRepo;
+    private final RecordBatchRepository batchRepo;
+    private final ImageRepository imageRepo;
+    private final SectionRepository sectionRepo;
+    private final FileStorage fileStorage;
+    private final Path sessionPath;
+    private final long partSize;
+    private final long maxSize;
+    private final Duration ttl;
+    private final TransactionTemplate transactions;
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    public UploadSessionService(UploadSessionRepository sessionRepo, DataRepository dataRepo,
+                                RecordBatchRepository batchRepo, ImageRepository imageRepo, SectionRepository sectionRepo, FileStorage fileStorage,
+                                @Value("${app.ingest.staging-path:}") String stagingPath,
+                                @Value("${app.ingest.part-size:5MB}") DataSize partSize,
+                                @Value("${spring.servlet.multipart.max-file-size:10MB}") DataSize maxSize,
+                                @Value("${app.ingest.session-ttl:24h}") Duration ttl,
+                                PlatformTransactionManager transactionManager) throws IOException {
+        this.sessionRepo = sessionRepo;
+        this.dataRepo = dataRepo;
+        this.batchRepo = batchRepo;
+        this.imageRepo = imageRepo;
+        this.sectionRepo = sectionRepo;
+        this.fileStorage = fileStorage;
+        if (stagingPath.isBlank()) {
+            throw new IllegalStateException("app.ingest.staging-path must be set");
+        }
+        this.sessionPath = Files.createDirectories(Paths.get(stagingPath, "sessions").toAbsolutePath().normalize());
+        this.partSize = partSize.toBytes();
+        this.maxSize = maxSize.toBytes();
+        this.ttl = ttl;
+        this.transactions = new TransactionTemplate(transactionManager);
+    }
+
+    public UploadSessionStatus create(Long userId, UploadSessionRequest request) throws IOException {
+        if (request.uuid() == null || request.name() == null || !request.name().matches("\\d+-.+")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "uuid and a name like <sectionId>-<file> are required");
+        }
+        if (request.size() <= 0 || request.size() > maxSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Image size must be between 1 and " + maxSize + " bytes");
+        }
+        purgeExpired(userId);
+        Long dataId = batchRepo.findDataIds(userId, List.of(request.uuid())).get(request.uuid());
+        if (dataId == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Record not found");
+        }
+        Long projectId = dataRepo.findProjectId(dataId);
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUserId(userId);
+        session.setDataId(dataId);
+        session.setSectionId(Long.parseLong(RecordService.sectionId(request.name())));
+        session.setOriginalFileName(request.name());
+        session.setContentType(request.contentType());
+        session.setSize(request.size());
+        session.setStorageKey(RecordService.imageKey(projectId, dataId, request.name()));
+        session.setStorageUploadId(fileStorage.beginUpload(session.getStorageKey(), request.contentType()));
+        sessionRepo.save(session);
+        return new UploadSessionStatus(session.getId(), 0, session.getSize());
+    }
+
+    public UploadSessionStatus status(Long userId, String id) throws IOException {
+        UploadSession session = load(userId, id);
+        return new UploadSessionStatus(id, received(session), session.getSize());
+    }
+
+    /**
+     * Appends a chunk that starts at {@code offset}, which must equal the number of bytes
+     * received so far.
+     */
+    public UploadSessionStatus append(Long userId, String id, long offset, InputStream in) throws IOException {
+        return locked(userId, id, session -> {
+            Path tail = tail(session);
+            long tailSize = size(tail);
+            long received = session.getFlushed() + tailSize;
+            if (offset != received) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Expected offset " + received);
+            }
+            long limit = session.getSize() - received;
+            long written = 0;
+            try (OutputStream out = Files.newOutputStream(tail, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    written += n;
+                    if (written > limit) {
+                        break;
+                    }
+                    out.write(buf, 0, n);
+                }
+            }
+            if (written > limit) {
+                truncate(tail, tailSize);
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Chunk exceeds the declared size");
+            }
+            session.setUpdatedAt(new Date());
+            if (!flush(session, false)) {
+                sessionRepo.save(session);
+            }
+            return new UploadSessionStatus(id, received + written, session.getSize());
+        });
+    }
+
+    /**
+     * Completes the upload and attaches the image to its record; returns the image id.
+     * Storage is finished first and the image row is written in a short transaction
+     * afterwards. If that transaction fails the stored object is deleted again and the
+     * session discarded, so no blob is left without an image.
+     */
+    public Long complete(Long userId, String id) throws IOException {
+        UploadSession session = locked(userId, id, s -> {
+            long received = received(s);
+            if (received != s.getSize()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload incomplete: " + received + " of " + s.getSize() + " bytes");
+            }
+            flush(s, true);
+            fileStorage.completeUpload(s.getStorageKey(), s.getStorageUploadId(), s.getParts());
+            deleteTails(id);
+            locks.remove(id);
+            return s;
+        });
+        try {
+            return transactions.execute(status -> attach(session));
+        } catch (RuntimeException e) {
+            try {
+                fileStorage.delete(session.getStorageKey());
+                sessionRepo.delete(session);
+            } catch (IOException | RuntimeException again) {
+                // an undeleted session is cleaned up by purgeExpired
+                e.addSuppressed(again);
+            }
+            throw e;
+        }
+    }
+
+    private Long attach(UploadSession session) {
+        sessionRepo.delete(session);
+        imageRepo.deleteObsoleteImage(session.getDataId(), session.getSectionId(), session.getOriginalFileName());
+        Image image = new Image();
+        image.setUuid(session.getStorageKey());
+        image.setOriginalFileName(session.getOriginalFileName());
+        image.setData(dataRepo.getReferenceById(session.getDataId()));
+        image.setStatus(0);
+        image.setStorageStatus(ImageUploadService.STORED);
+        if (sectionRepo.existsById(session.getSectionId())) {
+            image.setSection(sectionRepo.getReferenceById(session.getSectionId()));
+        }
+        return imageRepo.save(image).getId();
+    }
+
+    public void abort(Long userId, String id) throws IOException {
+        locked(userId, id, session -> {
+            discard(session);
+            return null;
+        });
+    }
+
+    private void purgeExpired(Long userId) {
+        for (UploadSession session : sessionRepo.findByUserIdAndCreatedAtBefore(userId, new Date(System.currentTimeMillis() - ttl.toMillis()))) {
+            try {
+                discard(session);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void discard(UploadSession session) throws IOException {
+        fileStorage.abortUpload(session.getStorageKey(), session.getStorageUploadId());
+        deleteTails(session.getId());
+        sessionRepo.delete(session);
+        locks.remove(session.getId());
+    }
+
+    // Hands complete parts (or, when last, everything left) to storage and saves the session;
+    // returns false when there was nothing to hand over. The remainder goes to a new tail named
+    // after the new offset and the old tail is only deleted once the session is saved, so a
+    // failed save or a crash leaves the saved offset pointing at a tail that starts there.
+    // Parts sent before a failed save are sent again under the same numbers.
+    private boolean flush(UploadSession session, boolean last) throws IOException {
+        Path tail = tail(session);
+        long remaining = size(tail);
+        if (remaining < partSize && !(last && remaining > 0)) {
+            return false;
+        }
+        List<String> stored = session.getParts();
+        List<String> parts = session.getParts();
+        long flushed = session.getFlushed();
+        try (InputStream in = Files.newInputStream(tail)) {
+            while (remaining >= partSize || (last && remaining > 0)) {
+                int n = (int) Math.min(partSize, remaining);
+                byte[] part = in.readNBytes(n);
+                parts.add(fileStorage.uploadPart(session.getStorageKey(), session.getStorageUploadId(),
+                        parts.size() + 1, new ByteArrayInputStream(part), n));
+                flushed += n;
+                remaining -= n;
+            }
+            Path rest = tail(session.getId(), flushed);
+            if (remaining > 0) {
+                Files.copy(in, rest, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                // left over from an attempt whose session was never saved
+                Files.deleteIfExists(rest);
+            }
+        }
+        long before = session.getFlushed();
+        session.setParts(parts);
+        session.setFlushed(flushed);
+        try {
+            sessionRepo.save(session);
+        } catch (RuntimeException e) {
+            session.setParts(stored);
+            session.setFlushed(before);
+            Files.deleteIfExists(tail(session.getId(), flushed));
+            throw e;
+        }
+        Files.delete(tail);
+        return true;
+    }
+
+    private long received(UploadSession session) throws IOException {
+        return session.getFlushed() + size(tail(session));
+    }
+
+    private UploadSession load(Long userId, String id) {
+        return sessionRepo.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found"));
+    }
+
+    // Runs task on the session while holding its lock. The session is looked up before the
+    // lock is created so that unknown ids never leave a lock behind.
+    private <T> T locked(Long userId, String id, SessionTask<T> task) throws IOException {
+        load(userId, id);
+        Object lock = locks.computeIfAbsent(id, k -> new Object());
+        synchronized (lock) {
+            Optional<UploadSession> session = sessionRepo.findByIdAndUserId(id, userId);
+            if (session.isEmpty()) {
+                // completed or aborted while this request waited
+                locks.remove(id, lock);
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found");
+            }
+            return task.run(session.get());
+        }
+    }
+
+    private Path tail(UploadSession session) {
+        return tail(session.getId(), session.getFlushed());
+    }
+
+    private Path tail(String id, long offset) {
+        return sessionPath.resolve(UUID.fromString(id) + "." + offset);
+    }
+
+    private void deleteTails(String id) throws IOException {
+        try (DirectoryStream<Path> tails = Files.newDirectoryStream(sessionPath, UUID.fromString(id) + ".*")) {
+            for (Path tail : tails) {
+                Files.deleteIfExists(tail);
+            }
+        }
+    }
+
+    private static long size(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private interface SessionTask<T> {
+        T run(UploadSession session) throws IOException;
+    }
+}
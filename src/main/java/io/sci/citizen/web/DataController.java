@@ -1,12 +1,20 @@
 package io.sci.citizen.web;
 
+import io.sci.citizen.model.dto.DataTablePage;
 import io.sci.citizen.service.DataService;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 
+/**
+ * The data admin page. The page itself is an empty table; its rows are fetched a page at a
+ * time from {@code /data/table} by DataTables server-side processing.
+ */
 @Controller
 @RequestMapping("/data")
 public class DataController {
@@ -19,16 +27,27 @@ public class DataController {
 
     @GetMapping()
     public String list(Model model) {
-        model.addAttribute("data", service.findAll());
+        service.checkAccess(null);
         return "data";
     }
 
     @GetMapping("/{id}")
     public String list(@PathVariable("id") Long projectId,
                        Model model) {
-        model.addAttribute("data", service.findAll(projectId));
+        service.checkAccess(projectId);
+        model.addAttribute("projectId", projectId);
         return "data";
     }
 
-
+    @GetMapping(path = "/table", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public DataTablePage table(@RequestParam(value = "projectId", required = false) Long projectId,
+                               @RequestParam(value = "draw", defaultValue = "0") int draw,
+                               @RequestParam(value = "start", defaultValue = "0") int start,
+                               @RequestParam(value = "length", defaultValue = "10") int length,
+                               @RequestParam(value = "search[value]", required = false) String search,
+                               @RequestParam(value = "order[0][column]", defaultValue = "1") int orderColumn,
+                               @RequestParam(value = "order[0][dir]", defaultValue = "desc") String orderDir) {
+        return service.table(projectId, draw, start, length, search, orderColumn, "asc".equalsIgnoreCase(orderDir));
+    }
 }
@@ -19,7 +19,8 @@ public class FileController {
 
     @GetMapping("/{*key}")
     public ResponseEntity<?> get(@PathVariable("key") String key) throws IOException, URISyntaxException {
-        var url = storage.publicUrl(key.substring(1));
+        key = key.substring(1);
+        var url = storage.publicUrl(key);
         System.out.println("url: " + url);
         if (url.isPresent()) {
             System.out.println("uri: " + url.get());
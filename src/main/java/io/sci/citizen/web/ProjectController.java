@@ -67,6 +67,10 @@ public class ProjectController extends BaseController{
             form.setEnabled(entity.isEnabled());
             form.setPubliclyAvailable(entity.isPubliclyAvailable());
             form.setDescription(entity.getDescription());
+            form.setImageMaxDimension(entity.getImageMaxDimension());
+            form.setImageFormat(entity.getImageFormat());
+            form.setImageQuality(entity.getImageQuality());
+            form.setKeepOriginalImage(Boolean.TRUE.equals(entity.getKeepOriginalImage()));
         }
         model.addAttribute("project", form);
         model.addAttribute("projects", projectService.findAll());
@@ -0,0 +1,59 @@
+package io.sci.citizen.web;
+
+import io.sci.citizen.api.component.UploadAdmissionFilter;
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.config.SpoolingFileStorage;
+import io.sci.citizen.service.ImageUploadService;
+import io.sci.citizen.service.IngestJournal;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+@RequestMapping("/admin/upload-queue")
+public class UploadQueueController {
+
+    private final ImageUploadService service;
+    private final UploadAdmissionFilter admission;
+    private final IngestJournal journal;
+    private final FileStorage storage;
+
+    public UploadQueueController(ImageUploadService service, UploadAdmissionFilter admission, IngestJournal journal,
+                                 FileStorage storage) {
+        this.service = service;
+        this.admission = admission;
+        this.journal = journal;
+        this.storage = storage;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ImageUploadService.Stats stats() {
+        return service.stats();
+    }
+
+    @GetMapping(path = "/admission", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public UploadAdmissionFilter.Stats admission() {
+        return admission.stats();
+    }
+
+    @GetMapping(path = "/journal", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public IngestJournal.Stats journal() {
+        return journal.stats();
+    }
+
+    // 404 unless storage writes go through the spool
+    @GetMapping(path = "/spool", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<SpoolingFileStorage.Stats> spool() {
+        if (storage instanceof SpoolingFileStorage spool) {
+            return ResponseEntity.ok(spool.stats());
+        }
+        return ResponseEntity.notFound().build();
+    }
+}
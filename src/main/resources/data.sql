@@ -50,3 +50,42 @@ WHERE NOT EXISTS (
 
 SELECT setval(pg_get_serial_sequence('app_user', 'id'), (SELECT MAX(id) FROM app_user), TRUE);
 SELECT setval(pg_get_serial_sequence('menu', 'id'), (SELECT MAX(id) FROM menu), TRUE);
+
+-- Records are unique per (user_id, uuid). Older duplicates left by concurrent retries keep
+-- their rows but get a suffixed uuid so the newest copy stays addressable by the client.
+UPDATE data d
+SET uuid = d.uuid || '#' || d.id
+WHERE d.user_id IS NOT NULL
+  AND d.uuid IS NOT NULL
+  AND EXISTS (
+    SELECT 1
+    FROM data newer
+    WHERE newer.user_id = d.user_id
+      AND newer.uuid = d.uuid
+      AND (newer.created_at > d.created_at OR (newer.created_at = d.created_at AND newer.id > d.id))
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_data_user_uuid ON data (user_id, uuid);
+
+-- Ids of ingest and form tables come from pooled sequences (allocation size 50) so Hibernate
+-- can batch inserts. Identity columns from older schemas are converted: the sequence is moved
+-- past the existing ids (never backwards, so running instances keep their reserved blocks)
+-- and becomes the column default for rows inserted with plain SQL.
+ALTER TABLE data ALTER COLUMN id DROP IDENTITY IF EXISTS;
+SELECT setval('data_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM data) + 50, (SELECT last_value FROM data_seq)));
+ALTER TABLE data ALTER COLUMN id SET DEFAULT nextval('data_seq');
+ALTER TABLE image ALTER COLUMN id DROP IDENTITY IF EXISTS;
+SELECT setval('image_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM image) + 50, (SELECT last_value FROM image_seq)));
+ALTER TABLE image ALTER COLUMN id SET DEFAULT nextval('image_seq');
+ALTER TABLE survey_response ALTER COLUMN id DROP IDENTITY IF EXISTS;
+SELECT setval('survey_response_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM survey_response) + 50, (SELECT last_value FROM survey_response_seq)));
+ALTER TABLE survey_response ALTER COLUMN id SET DEFAULT nextval('survey_response_seq');
+ALTER TABLE section ALTER COLUMN id DROP IDENTITY IF EXISTS;
+SELECT setval('section_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM section) + 50, (SELECT last_value FROM section_seq)));
+ALTER TABLE section ALTER COLUMN id SET DEFAULT nextval('section_seq');
+ALTER TABLE survey_question ALTER COLUMN id DROP IDENTITY IF EXISTS;
+SELECT setval('survey_question_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM survey_question) + 50, (SELECT last_value FROM survey_question_seq)));
+ALTER TABLE survey_question ALTER COLUMN id SET DEFAULT nextval('survey_question_seq');
+ALTER TABLE survey_parameter ALTER COLUMN id DROP IDENTITY IF EXISTS;
+SELECT setval('survey_parameter_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM survey_parameter) + 50, (SELECT last_value FROM survey_parameter_seq)));
+ALTER TABLE survey_parameter ALTER COLUMN id SET DEFAULT nextval('survey_parameter_seq');
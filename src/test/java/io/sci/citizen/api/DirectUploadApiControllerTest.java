@@ -0,0 +1,72 @@
+package io.sci.citizen.api;
+
+import io.sci.citizen.api.dto.DirectUploadRequest;
+import io.sci.citizen.api.dto.DirectUploadTarget;
+import io.sci.citizen.service.DirectUploadService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DirectUploadApiControllerTest {
+
+    private static final DirectUploadRequest REQUEST = new DirectUploadRequest("u-1",
+            List.of(new DirectUploadRequest.Image("2-a.jpg", "image/jpeg", 10, null)));
+
+    @Mock
+    private DirectUploadService service;
+
+    private DirectUploadApiController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = spy(new DirectUploadApiController(service));
+    }
+
+    @Test
+    void prepareReturnsForbiddenWhenAuthorizationFails() {
+        doReturn(false).when(controller).authorize("token");
+
+        ResponseEntity<Response> response = controller.prepare("token", REQUEST);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void prepareReturnsUploadTargets() throws Exception {
+        List<DirectUploadTarget> targets = List.of(new DirectUploadTarget("2-a.jpg", "3_2_10_x.jpg",
+                "https://bucket.example/put", "PUT", Map.of("Content-Type", "image/jpeg"), 1L));
+        doReturn(true).when(controller).authorize("token");
+        doReturn("5").when(controller).getUserId("token");
+        when(service.prepare(5L, REQUEST)).thenReturn(targets);
+
+        ResponseEntity<Response> response = controller.prepare("token", REQUEST);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isEqualTo(targets);
+    }
+
+    @Test
+    void completeReturnsBadRequestWhenObjectIsMissing() throws Exception {
+        doReturn(true).when(controller).authorize("token");
+        doReturn("5").when(controller).getUserId("token");
+        when(service.complete(5L, REQUEST)).thenThrow(new ResponseStatusException(HttpStatus.CONFLICT, "2-a.jpg has not been uploaded"));
+
+        ResponseEntity<Response> response = controller.complete("token", REQUEST);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().getMessage()).contains("2-a.jpg has not been uploaded");
+    }
+}
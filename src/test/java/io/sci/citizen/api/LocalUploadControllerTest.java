@@ -0,0 +1,71 @@
+package io.sci.citizen.api;
+
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.config.UploadSigner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LocalUploadControllerTest {
+
+    @Mock
+    private FileStorage fileStorage;
+
+    private final UploadSigner signer = new UploadSigner("secret");
+
+    private LocalUploadController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new LocalUploadController(fileStorage, signer, DataSize.ofBytes(10));
+    }
+
+    @Test
+    void signedUploadIsWrittenToStorage() throws Exception {
+        long expires = System.currentTimeMillis() / 1000 + 60;
+
+        var response = controller.upload("3_2_10_a.jpg", expires, signer.sign("3_2_10_a.jpg", expires), put(5));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(fileStorage).write(eq("3_2_10_a.jpg"), any(InputStream.class), eq(5L), eq("image/jpeg"));
+    }
+
+    @Test
+    void uploadWithBadSignatureIsForbidden() throws Exception {
+        long expires = System.currentTimeMillis() / 1000 + 60;
+
+        var response = controller.upload("3_2_10_b.jpg", expires, signer.sign("3_2_10_a.jpg", expires), put(5));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verifyNoInteractions(fileStorage);
+    }
+
+    @Test
+    void oversizedUploadIsRejectedBeforeWriting() {
+        long expires = System.currentTimeMillis() / 1000 + 60;
+
+        var response = controller.upload("3_2_10_a.jpg", expires, signer.sign("3_2_10_a.jpg", expires), put(11));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+        verifyNoInteractions(fileStorage);
+    }
+
+    private static MockHttpServletRequest put(int size) {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/file/upload");
+        request.setContentType("image/jpeg");
+        request.setContent(new byte[size]);
+        return request;
+    }
+}
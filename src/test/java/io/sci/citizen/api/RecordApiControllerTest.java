@@ -1,8 +1,16 @@
 package io.sci.citizen.api;
 
+import io.sci.citizen.api.component.IdempotencyStore;
+import io.sci.citizen.api.component.MultipartReader;
 import io.sci.citizen.api.dto.DataRequest;
+import io.sci.citizen.api.dto.PresenceRequest;
+import io.sci.citizen.api.dto.PresenceResponse;
+import io.sci.citizen.api.dto.RecordDetail;
+import io.sci.citizen.api.dto.RecordPage;
+import io.sci.citizen.api.dto.RecordResult;
 import io.sci.citizen.api.dto.SummaryResponse;
-import io.sci.citizen.model.Data;
+import io.sci.citizen.model.dto.RecordSummary;
+import io.sci.citizen.service.IngestJournal;
 import io.sci.citizen.service.RecordService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,9 +19,12 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -26,11 +37,14 @@ class RecordApiControllerTest {
     @Mock
     private RecordService recordService;
 
+    @Mock
+    private IngestJournal journal;
+
     private RecordApiController controller;
 
     @BeforeEach
     void setUp() {
-        controller = spy(new RecordApiController(recordService));
+        controller = spy(new RecordApiController(recordService, journal, new IdempotencyStore(Duration.ofHours(1), 100)));
     }
 
     @Test
@@ -38,7 +52,7 @@ class RecordApiControllerTest {
         String token = "token";
         doReturn(false).when(controller).authorize(token);
 
-        ResponseEntity<Response> response = controller.upload(token, "model", null, null);
+        ResponseEntity<Response> response = controller.upload(token, null, "model", null, null);
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
         verify(recordService, never()).record(anyLong(), anyString(), any(), anyString());
@@ -52,7 +66,7 @@ class RecordApiControllerTest {
         doReturn(true).when(controller).authorize(token);
         doReturn("5").when(controller).getUserId(token);
 
-        ResponseEntity<Response> response = controller.upload(token, "model-json", images, "results");
+        ResponseEntity<Response> response = controller.upload(token, null, "model-json", images, "results");
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
@@ -60,6 +74,63 @@ class RecordApiControllerTest {
         verify(recordService).record(5L, "model-json", images, "results");
     }
 
+    @Test
+    void uploadAppendsToJournalWhenEnabled() throws Exception {
+        String token = "token";
+        MultipartFile[] images = new MultipartFile[0];
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+        when(journal.enabled()).thenReturn(true);
+
+        ResponseEntity<Response> response = controller.upload(token, null, "model-json", images, "results");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(journal).record(5L, "model-json", images, "results");
+        verify(recordService, never()).record(anyLong(), anyString(), any(MultipartFile[].class), anyString());
+    }
+
+    @Test
+    void uploadWithSameIdempotencyKeyRecordsOnce() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+
+        ResponseEntity<Response> first = controller.upload(token, "key-1", "model-json", null, "results");
+        ResponseEntity<Response> retry = controller.upload(token, "key-1", "model-json", null, "results");
+
+        assertThat(retry).isSameAs(first);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(recordService, times(1)).record(5L, "model-json", null, "results");
+    }
+
+    @Test
+    void uploadWithIdempotencyKeyOfAnotherUploadIsRejected() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+
+        controller.upload(token, "key-1", "model-json", null, "results");
+        ResponseEntity<Response> other = controller.upload(token, "key-1", "other-model", null, "results");
+
+        assertThat(other.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        verify(recordService, never()).record(5L, "other-model", null, "results");
+    }
+
+    @Test
+    void uploadIsRunAgainAfterFailureWithSameIdempotencyKey() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+        doThrow(new IOException("db down")).doNothing().when(recordService).record(5L, "model", null, null);
+
+        ResponseEntity<Response> failed = controller.upload(token, "key-1", "model", null, null);
+        ResponseEntity<Response> retry = controller.upload(token, "key-1", "model", null, null);
+
+        assertThat(failed.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(recordService, times(2)).record(5L, "model", null, null);
+    }
+
     @Test
     void uploadReturnsBadRequestWhenServiceThrows() throws Exception {
         String token = "token";
@@ -68,13 +139,126 @@ class RecordApiControllerTest {
         doThrow(new IOException("boom")).when(recordService)
                 .record(eq(3L), eq("model"), isNull(), isNull());
 
-        ResponseEntity<Response> response = controller.upload(token, "model", null, null);
+        ResponseEntity<Response> response = controller.upload(token, null, "model", null, null);
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getMessage()).isEqualTo("boom");
     }
 
+    @Test
+    void uploadStreamReturnsForbiddenWhenAuthorizationFails() throws Exception {
+        String token = "token";
+        doReturn(false).when(controller).authorize(token);
+
+        ResponseEntity<Response> response = controller.uploadStream(token, null, new MockHttpServletRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verify(recordService, never()).record(anyLong(), any(RecordService.StreamHead.class), any(MultipartReader.class));
+    }
+
+    @Test
+    void uploadStreamPassesPartsToRecordService() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("6").when(controller).getUserId(token);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/record/upload-stream");
+        request.setContentType("multipart/form-data; boundary=xyz");
+        request.setContent("--xyz\r\nContent-Disposition: form-data; name=\"model\"\r\n\r\n{}\r\n--xyz--\r\n"
+                .getBytes(StandardCharsets.UTF_8));
+        doAnswer(invocation -> {
+            MultipartReader parts = invocation.getArgument(2);
+            assertThat(parts.next()).isNull();
+            return null;
+        }).when(recordService).record(eq(6L), eq(new RecordService.StreamHead("{}", null)), any(MultipartReader.class));
+
+        ResponseEntity<Response> response = controller.uploadStream(token, null, request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isEqualTo(Boolean.TRUE);
+        verify(recordService).record(eq(6L), eq(new RecordService.StreamHead("{}", null)), any(MultipartReader.class));
+    }
+
+    @Test
+    void uploadStreamRejectsKeyReusedForAnotherModel() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("6").when(controller).getUserId(token);
+
+        ResponseEntity<Response> first = controller.uploadStream(token, "key-1", streamRequest("{\"uuid\":\"u-1\"}"));
+        ResponseEntity<Response> retry = controller.uploadStream(token, "key-1", streamRequest("{\"uuid\":\"u-1\"}"));
+        ResponseEntity<Response> reused = controller.uploadStream(token, "key-1", streamRequest("{\"uuid\":\"u-2\"}"));
+
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(reused.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        verify(recordService, times(1)).record(eq(6L), any(RecordService.StreamHead.class), any(MultipartReader.class));
+    }
+
+    @Test
+    void uploadStreamReturnsBadRequestWithoutBoundary() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/record/upload-stream");
+        request.setContentType("multipart/form-data");
+
+        ResponseEntity<Response> response = controller.uploadStream(token, null, request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(recordService, never()).record(anyLong(), any(RecordService.StreamHead.class), any(MultipartReader.class));
+    }
+
+    @Test
+    void uploadBatchReturnsForbiddenWhenAuthorizationFails() {
+        String token = "token";
+        doReturn(false).when(controller).authorize(token);
+
+        ResponseEntity<Response> response = controller.uploadBatch(token, null, "[]");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verify(recordService, never()).recordBatch(anyLong(), anyString());
+    }
+
+    @Test
+    void uploadBatchReturnsPerRecordResults() {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("6").when(controller).getUserId(token);
+        List<RecordResult> results = List.of(new RecordResult("a", 1L, true, null));
+        when(recordService.recordBatch(6L, "[{}]")).thenReturn(results);
+
+        ResponseEntity<Response> response = controller.uploadBatch(token, null, "[{}]");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isSameAs(results);
+    }
+
+    @Test
+    void presenceReturnsWhatTheServerIsMissing() {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("6").when(controller).getUserId(token);
+        PresenceRequest request = new PresenceRequest(List.of("u-1"), List.of("aa"));
+        PresenceResponse missing = new PresenceResponse(List.of("u-1"), List.of());
+        when(recordService.presence(6L, request)).thenReturn(missing);
+
+        ResponseEntity<Response> response = controller.presence(token, request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isSameAs(missing);
+    }
+
+    @Test
+    void presenceReturnsForbiddenWhenAuthorizationFails() {
+        String token = "token";
+        doReturn(false).when(controller).authorize(token);
+
+        ResponseEntity<Response> response = controller.presence(token, new PresenceRequest(List.of(), List.of()));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verifyNoInteractions(recordService);
+    }
+
     @Test
     void getListByProjectReturnsForbiddenWhenAuthorizationFails() {
         String token = "token";
@@ -84,24 +268,24 @@ class RecordApiControllerTest {
         ResponseEntity<Response> response = controller.getListByProject(token, request);
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
-        verify(recordService, never()).getRecordsByUserAndProject(anyLong(), anyLong(), any());
+        verify(recordService, never()).getRecordsByUserAndProject(anyLong(), anyLong(), any(), any(), any());
     }
 
     @Test
     void getListByProjectReturnsRecordsWhenAuthorized() {
         String token = "token";
-        DataRequest request = new DataRequest(7L, 2);
-        List<Data> records = List.of(new Data());
+        DataRequest request = new DataRequest(7L, 2, "cursor", 50);
+        RecordPage<RecordSummary> records = new RecordPage<>(List.of(mock(RecordSummary.class)), "next");
         doReturn(true).when(controller).authorize(token);
         doReturn("11").when(controller).getUserId(token);
-        when(recordService.getRecordsByUserAndProject(11L, 7L, 2)).thenReturn(records);
+        when(recordService.getRecordsByUserAndProject(11L, 7L, 2, "cursor", 50)).thenReturn(records);
 
         ResponseEntity<Response> response = controller.getListByProject(token, request);
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getData()).isSameAs(records);
-        verify(recordService).getRecordsByUserAndProject(11L, 7L, 2);
+        verify(recordService).getRecordsByUserAndProject(11L, 7L, 2, "cursor", 50);
     }
 
     @Test
@@ -113,24 +297,47 @@ class RecordApiControllerTest {
         ResponseEntity<Response> response = controller.getListByUser(token, request);
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
-        verify(recordService, never()).getRecordsByUser(anyLong(), any());
+        verify(recordService, never()).getRecordsByUser(anyLong(), any(), any(), any());
     }
 
     @Test
     void getListByUserReturnsRecordsWhenAuthorized() {
         String token = "token";
         DataRequest request = new DataRequest(null, 1);
-        List<Data> records = List.of(new Data(), new Data());
+        RecordPage<RecordSummary> records = new RecordPage<>(List.of(mock(RecordSummary.class)), null);
         doReturn(true).when(controller).authorize(token);
         doReturn("9").when(controller).getUserId(token);
-        when(recordService.getRecordsByUser(9L, 1)).thenReturn(records);
+        when(recordService.getRecordsByUser(9L, 1, null, null)).thenReturn(records);
 
         ResponseEntity<Response> response = controller.getListByUser(token, request);
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getData()).isSameAs(records);
-        verify(recordService).getRecordsByUser(9L, 1);
+        verify(recordService).getRecordsByUser(9L, 1, null, null);
+    }
+
+    @Test
+    void getDetailReturnsForbiddenWhenAuthorizationFails() {
+        doReturn(false).when(controller).authorize("token");
+
+        ResponseEntity<Response> response = controller.getDetail("token", 5L);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verify(recordService, never()).getRecord(anyLong(), anyLong());
+    }
+
+    @Test
+    void getDetailReturnsRecordWithImagesAndAnswers() {
+        RecordDetail detail = new RecordDetail(mock(RecordSummary.class), List.of(), List.of());
+        doReturn(true).when(controller).authorize("token");
+        doReturn("9").when(controller).getUserId("token");
+        when(recordService.getRecord(9L, 5L)).thenReturn(detail);
+
+        ResponseEntity<Response> response = controller.getDetail("token", 5L);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isSameAs(detail);
     }
 
     @Test
@@ -198,4 +405,12 @@ class RecordApiControllerTest {
         assertThat(summary.total()).isEqualTo(7);
         verify(recordService).getRecordsSummaryByUser(12L);
     }
+
+    private static MockHttpServletRequest streamRequest(String model) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/record/upload-stream");
+        request.setContentType("multipart/form-data; boundary=xyz");
+        request.setContent(("--xyz\r\nContent-Disposition: form-data; name=\"model\"\r\n\r\n" + model + "\r\n--xyz--\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
 }
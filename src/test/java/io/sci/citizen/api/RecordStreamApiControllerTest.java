@@ -0,0 +1,107 @@
+package io.sci.citizen.api;
+
+import io.sci.citizen.api.dto.DataRequest;
+import io.sci.citizen.service.RecordExportService;
+import io.sci.citizen.service.StreamIngestService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecordStreamApiControllerTest {
+
+    @Mock
+    private StreamIngestService streamIngest;
+
+    @Mock
+    private RecordExportService recordExport;
+
+    private RecordStreamApiController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = spy(new RecordStreamApiController(streamIngest, recordExport));
+    }
+
+    @Test
+    void streamIsIngestedForTheTokenUser() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("6").when(controller).getUserId(token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.ingest(token, new MockHttpServletRequest("POST", "/api/record/ingest-stream"), response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentType()).startsWith(RecordStreamApiController.CONTENT_TYPE);
+        verify(streamIngest).ingest(eq(6L), any(InputStream.class), any(OutputStream.class));
+    }
+
+    @Test
+    void streamIsRefusedWhenAuthorizationFails() throws Exception {
+        String token = "token";
+        doReturn(false).when(controller).authorize(token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.ingest(token, new MockHttpServletRequest("POST", "/api/record/ingest-stream"), response);
+
+        assertThat(response.getStatus()).isEqualTo(403);
+        verifyNoInteractions(streamIngest);
+    }
+
+    @Test
+    void projectRecordsAreStreamedForTheTokenUser() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("6").when(controller).getUserId(token);
+
+        ResponseEntity<StreamingResponseBody> response =
+                controller.streamListByProject(token, new DataRequest(4L, 2));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getHeaders().getContentType().toString()).isEqualTo(RecordStreamApiController.CONTENT_TYPE);
+        verifyNoInteractions(recordExport);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        verify(recordExport).exportByUserAndProject(6L, 4L, 2, out);
+    }
+
+    @Test
+    void userRecordsAreStreamedForTheTokenUser() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("6").when(controller).getUserId(token);
+
+        ResponseEntity<StreamingResponseBody> response = controller.streamListByUser(token, new DataRequest(null, 1));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        verify(recordExport).exportByUser(6L, 1, out);
+    }
+
+    @Test
+    void exportIsRefusedWhenAuthorizationFails() {
+        String token = "token";
+        doReturn(false).when(controller).authorize(token);
+
+        ResponseEntity<StreamingResponseBody> response = controller.streamListByUser(token, new DataRequest(null, 0));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(403);
+        assertThat(response.getBody()).isNull();
+        verifyNoInteractions(recordExport);
+    }
+}
@@ -0,0 +1,115 @@
+package io.sci.citizen.api;
+
+import io.sci.citizen.api.dto.UploadSessionRequest;
+import io.sci.citizen.api.dto.UploadSessionStatus;
+import io.sci.citizen.service.UploadSessionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionApiControllerTest {
+
+    @Mock
+    private UploadSessionService service;
+
+    private UploadSessionApiController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = spy(new UploadSessionApiController(service));
+    }
+
+    @Test
+    void createReturnsForbiddenWhenAuthorizationFails() throws Exception {
+        String token = "token";
+        doReturn(false).when(controller).authorize(token);
+
+        ResponseEntity<Response> response = controller.create(token, new UploadSessionRequest("u-1", "2-a.jpg", 10, "image/jpeg"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void createReturnsSessionStatus() throws Exception {
+        String token = "token";
+        UploadSessionRequest request = new UploadSessionRequest("u-1", "2-a.jpg", 10, "image/jpeg");
+        UploadSessionStatus status = new UploadSessionStatus("s-1", 0, 10);
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+        when(service.create(5L, request)).thenReturn(status);
+
+        ResponseEntity<Response> response = controller.create(token, request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isEqualTo(status);
+    }
+
+    @Test
+    void appendPassesRequestBodyAndOffset() throws Exception {
+        String token = "token";
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(new byte[4]);
+        UploadSessionStatus status = new UploadSessionStatus("s-1", 8, 10);
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+        when(service.append(eq(5L), eq("s-1"), eq(4L), any(InputStream.class))).thenReturn(status);
+
+        ResponseEntity<Response> response = controller.append(token, "s-1", 4, request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isEqualTo(status);
+    }
+
+    @Test
+    void appendReturnsBadRequestOnOffsetConflict() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+        when(service.append(eq(5L), eq("s-1"), eq(0L), any(InputStream.class)))
+                .thenThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Expected offset 4"));
+
+        ResponseEntity<Response> response = controller.append(token, "s-1", 0, new MockHttpServletRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().getMessage()).contains("Expected offset 4");
+    }
+
+    @Test
+    void completeReturnsImageId() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+        when(service.complete(5L, "s-1")).thenReturn(99L);
+
+        ResponseEntity<Response> response = controller.complete(token, "s-1");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isEqualTo(99L);
+    }
+
+    @Test
+    void abortDelegatesToService() throws Exception {
+        String token = "token";
+        doReturn(true).when(controller).authorize(token);
+        doReturn("5").when(controller).getUserId(token);
+
+        ResponseEntity<Response> response = controller.abort(token, "s-1");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(service).abort(5L, "s-1");
+    }
+}
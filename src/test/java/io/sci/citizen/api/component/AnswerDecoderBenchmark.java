@@ -0,0 +1,84 @@
+package io.sci.citizen.api.component;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bytes allocated per decoded {@code results} payload, comparing the streaming decoder with
+ * the untyped map it replaced. Run with {@code mvn test -Dtest=AnswerDecoderBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class AnswerDecoderBenchmark {
+
+    private static final int WARMUP = 20_000;
+    private static final int ROUNDS = 50_000;
+
+    private final Gson gson = new Gson();
+    private final String results = payload(40);
+
+    @Test
+    void allocationsPerUpload() {
+        long mapped = measure(this::decodeAsMap);
+        long streamed = measure(() -> AnswerDecoder.decode(results).size());
+
+        System.out.printf("results payload of %d bytes: map %d B/upload, streaming %d B/upload%n",
+                results.length(), mapped, streamed);
+        assertThat(streamed).isLessThan(mapped);
+    }
+
+    // The previous path: an untyped map, then every list answer serialized again.
+    @SuppressWarnings("unchecked")
+    private int decodeAsMap() {
+        Map<String, Object> map = gson.fromJson(results, Map.class);
+        Map<Long, String> answers = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            Object value = e.getValue();
+            answers.put(Long.parseLong(e.getKey()), value instanceof List ? gson.toJson(value) : (String) value);
+        }
+        return answers.size();
+    }
+
+    private static long measure(Decoder decoder) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += decoder.decode();
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ROUNDS; i++) {
+            sink += decoder.decode();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertThat(sink).isPositive();
+        return allocated / ROUNDS;
+    }
+
+    private static String payload(int questions) {
+        StringBuilder json = new StringBuilder("{");
+        for (int q = 1; q <= questions; q++) {
+            if (q > 1) {
+                json.append(',');
+            }
+            json.append('"').append(1000 + q).append("\":");
+            if (q % 4 == 0) {
+                json.append("[\"option ").append(q).append("\",\"option ").append(q + 1).append("\"]");
+            } else {
+                json.append("\"answer to question ").append(q).append('"');
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private interface Decoder {
+        int decode();
+    }
+}
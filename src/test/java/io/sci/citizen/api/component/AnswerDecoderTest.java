@@ -0,0 +1,106 @@
+package io.sci.citizen.api.component;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnswerDecoderTest {
+
+    @Test
+    void decodeKeepsAnswersInTheirStoredForm() {
+        List<AnswerDecoder.Answer> answers = AnswerDecoder.decode(
+                "{\"11\":\"text\",\"12\":[\"p\",\"q\"],\"13\":42,\"14\":null,\"15\":-1.50}");
+
+        assertThat(answers).containsExactly(
+                new AnswerDecoder.Answer("11", JsonToken.STRING, "text"),
+                new AnswerDecoder.Answer("12", JsonToken.BEGIN_ARRAY, "[\"p\",\"q\"]"),
+                new AnswerDecoder.Answer("13", JsonToken.NUMBER, "42"),
+                new AnswerDecoder.Answer("14", JsonToken.NULL, null),
+                new AnswerDecoder.Answer("15", JsonToken.NUMBER, "-1.50"));
+    }
+
+    @Test
+    void arraysAreWrittenLikeGsonWritesThem() {
+        List<String> options = List.of("a<b", "c&d", "e'f", "g\"h");
+
+        List<AnswerDecoder.Answer> answers = AnswerDecoder.decode("{\"12\":" + new Gson().toJson(options) + "}");
+
+        assertThat(answers.get(0).value()).isEqualTo(new Gson().toJson(options));
+    }
+
+    @Test
+    void numbersInArraysAreStoredLikeTheUntypedMapStoredThem() {
+        String results = "{\"12\":[1,2.5,{\"n\":3}]}";
+        Map<?, ?> map = new Gson().fromJson(results, Map.class);
+
+        List<AnswerDecoder.Answer> answers = AnswerDecoder.decode(results);
+
+        assertThat(answers.get(0).value()).isEqualTo(new Gson().toJson(map.get("12"))).isEqualTo("[1.0,2.5,{\"n\":3.0}]");
+    }
+
+    @Test
+    void adapterWritesAnswersBackOut() {
+        String results = "{\"11\":\"text\",\"12\":[\"p\"],\"13\":42,\"14\":null,\"15\":true}";
+        AnswerDecoder.Adapter adapter = new AnswerDecoder.Adapter();
+        List<AnswerDecoder.Answer> answers = AnswerDecoder.decode(results);
+
+        String json = adapter.toJson(answers);
+
+        assertThat(json).isEqualTo(results);
+        assertThat(AnswerDecoder.decode(json)).isEqualTo(answers);
+    }
+
+    @Test
+    void emptyResultsHaveNoAnswers() {
+        assertThat(AnswerDecoder.decode(null)).isEmpty();
+        assertThat(AnswerDecoder.decode(" ")).isEmpty();
+        assertThat(AnswerDecoder.decode("null")).isEmpty();
+        assertThat(AnswerDecoder.decode("{}")).isEmpty();
+    }
+
+    @Test
+    void malformedResultsAreRejected() {
+        assertThatThrownBy(() -> AnswerDecoder.decode("[\"11\"]")).isInstanceOf(JsonSyntaxException.class);
+        assertThatThrownBy(() -> AnswerDecoder.decode("{\"11\":\"a\"} {}")).isInstanceOf(JsonSyntaxException.class);
+    }
+
+    @Test
+    void validateChecksAnswersAgainstQuestionTypes() {
+        Map<Long, Integer> types = Map.of(1L, 3, 2L, 4, 3L, 7, 4L, 8);
+
+        assertThat(validate("{\"1\":\"text\"}", types)).isEqualTo(1L);
+        assertThat(validate("{\"2\":[\"a\"]}", types)).isEqualTo(2L);
+        assertThat(validate("{\"3\":12}", types)).isEqualTo(3L);
+        assertThat(validate("{\"3\":\"12\"}", types)).isEqualTo(3L);
+        assertThat(validate("{\"3\":\"\"}", types)).isEqualTo(3L);
+        assertThat(validate("{\"4\":\"2,5\"}", types)).isEqualTo(4L);
+        assertThat(validate("{\"4\":1e3}", types)).isEqualTo(4L);
+
+        assertThatThrownBy(() -> validate("{\"1\":[\"a\"]}", types))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("unsupported answer [\"a\"] to question 1");
+        assertThatThrownBy(() -> validate("{\"3\":1.5}", types)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> validate("{\"4\":\"many\"}", types)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void validateIsLenientForQuestionsWithoutKnownType() {
+        assertThat(validate("{\"9\":[\"a\"]}", Map.of())).isEqualTo(9L);
+        assertThat(validate("{\"9\":3}", Map.of())).isEqualTo(9L);
+
+        assertThatThrownBy(() -> validate("{\"9\":true}", Map.of())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> validate("{\"9\":{\"a\":1}}", Map.of())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> validate("{\"x\":\"a\"}", Map.of())).isInstanceOf(NumberFormatException.class);
+    }
+
+    private static long validate(String json, Map<Long, Integer> types) {
+        return AnswerDecoder.validate(AnswerDecoder.decode(json).get(0), types);
+    }
+}
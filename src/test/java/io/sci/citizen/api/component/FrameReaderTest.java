@@ -0,0 +1,106 @@
+package io.sci.citizen.api.component;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FrameReaderTest {
+
+    @Test
+    void readsFramesAndJoinsImageChunks() throws Exception {
+        FrameReader reader = reader(new Frames()
+                .add('R', "{\"model\":{}}")
+                .add('I', "{\"name\":\"1-a.jpg\"}")
+                .add('C', "ab").add('C', "").add('C', "cd")
+                .add('E', ""));
+
+        assertThat(reader.next()).isEqualTo(FrameReader.RECORD);
+        assertThat(reader.text()).isEqualTo("{\"model\":{}}");
+        assertThat(reader.next()).isEqualTo(FrameReader.IMAGE);
+        assertThat(reader.text()).isEqualTo("{\"name\":\"1-a.jpg\"}");
+        assertThat(reader.chunks(Long.MAX_VALUE).readAllBytes()).isEqualTo("abcd".getBytes(StandardCharsets.UTF_8));
+        assertThat(reader.next()).isEqualTo(FrameReader.END);
+        assertThat(reader.next()).isEqualTo(-1);
+    }
+
+    @Test
+    void unreadPayloadsAndKeepAlivesAreSkipped() throws Exception {
+        FrameReader reader = reader(new Frames()
+                .add('K', "")
+                .add('R', "{\"model\":{}}")
+                .add('I', "{}")
+                .add('C', "abc")
+                .add('K', "")
+                .add('E', ""));
+
+        assertThat(reader.next()).isEqualTo(FrameReader.RECORD);
+        assertThat(reader.next()).isEqualTo(FrameReader.IMAGE);
+        InputStream chunks = reader.chunks(Long.MAX_VALUE);
+        assertThat(chunks.read()).isEqualTo('a');
+        assertThat(reader.next()).isEqualTo(FrameReader.END);
+    }
+
+    @Test
+    void imageLargerThanLimitFails() throws Exception {
+        FrameReader reader = reader(new Frames().add('I', "{}").add('C', "abc").add('C', "def"));
+        reader.next();
+
+        assertThatThrownBy(() -> reader.chunks(4).readAllBytes())
+                .isInstanceOf(MaxUploadSizeExceededException.class);
+    }
+
+    @Test
+    void oversizedTextFrameIsRejected() throws Exception {
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(new Frames().add('R', "12345").bytes()), 4);
+        reader.next();
+
+        assertThatThrownBy(reader::text).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void truncatedFrameFails() throws Exception {
+        byte[] frames = new Frames().add('R', "{\"model\":{}}").bytes();
+        byte[] truncated = new byte[frames.length - 2];
+        System.arraycopy(frames, 0, truncated, 0, truncated.length);
+        FrameReader reader = reader(truncated);
+        reader.next();
+
+        assertThatThrownBy(reader::text).isInstanceOf(EOFException.class);
+    }
+
+    private static FrameReader reader(Frames frames) {
+        return reader(frames.bytes());
+    }
+
+    private static FrameReader reader(byte[] bytes) {
+        return new FrameReader(new ByteArrayInputStream(bytes), 1024);
+    }
+
+    static final class Frames {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Frames add(char type, String payload) throws IOException {
+            byte[] data = payload.getBytes(StandardCharsets.UTF_8);
+            out.write(type);
+            out.writeInt(data.length);
+            out.write(data);
+            return this;
+        }
+
+        byte[] bytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.sci.citizen.api.component;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyStoreTest {
+
+    private final IdempotencyStore store = new IdempotencyStore(Duration.ofHours(1), 2);
+
+    @Test
+    void sameUserAndKeyRunsOnceAndReplaysResponse() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<String> first = store.execute(5L, "k", "r", () -> ok("run " + calls.incrementAndGet()));
+        ResponseEntity<String> retry = store.execute(5L, "k", "r", () -> ok("run " + calls.incrementAndGet()));
+        ResponseEntity<String> otherUser = store.execute(6L, "k", "r", () -> ok("run " + calls.incrementAndGet()));
+
+        assertThat(retry).isSameAs(first);
+        assertThat(otherUser.getBody()).isEqualTo("run 2");
+        assertThat(store.stats()).isEqualTo(new IdempotencyStore.Stats(2, 0, 1));
+    }
+
+    @Test
+    void keyReusedForDifferentRequestIsRejected() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        store.execute(5L, "k", IdempotencyStore.fingerprint("POST /a", "body"), () -> ok("run " + calls.incrementAndGet()));
+
+        assertThatThrownBy(() -> store.execute(5L, "k", IdempotencyStore.fingerprint("POST /a", "other"),
+                () -> ok("run " + calls.incrementAndGet())))
+                .isInstanceOf(IdempotencyStore.KeyReusedException.class);
+        assertThatThrownBy(() -> store.execute(5L, "k", IdempotencyStore.fingerprint("POST /b", "body"),
+                () -> ok("run " + calls.incrementAndGet())))
+                .isInstanceOf(IdempotencyStore.KeyReusedException.class);
+        assertThat(calls).hasValue(1);
+        assertThat(store.stats().replayed()).isZero();
+    }
+
+    @Test
+    void fingerprintSeparatesParts() {
+        assertThat(IdempotencyStore.fingerprint("ab", "c")).isNotEqualTo(IdempotencyStore.fingerprint("a", "bc"));
+        assertThat(IdempotencyStore.fingerprint("a", null)).isEqualTo(IdempotencyStore.fingerprint("a", ""));
+    }
+
+    @Test
+    void callsWithoutKeyAlwaysRun() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        store.execute(5L, null, "r", () -> ok("run " + calls.incrementAndGet()));
+        store.execute(5L, " ", "r", () -> ok("run " + calls.incrementAndGet()));
+
+        assertThat(calls).hasValue(2);
+        assertThat(store.stats().stored()).isZero();
+    }
+
+    @Test
+    void failedCallsAreNotKept() throws Exception {
+        assertThatThrownBy(() -> store.execute(5L, "k", "r", () -> {
+            throw new IOException("db down");
+        })).isInstanceOf(IOException.class);
+        ResponseEntity<String> rejected = store.execute(5L, "k", "r",
+                () -> new ResponseEntity<>("bad", HttpStatus.BAD_REQUEST));
+        ResponseEntity<String> retry = store.execute(5L, "k", "r", () -> ok("done"));
+
+        assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(retry.getBody()).isEqualTo("done");
+        assertThat(store.stats()).isEqualTo(new IdempotencyStore.Stats(1, 0, 0));
+    }
+
+    @Test
+    void duplicateWaitsForRunningOriginal() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<ResponseEntity<String>> original = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store.execute(5L, "k", "r", () -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    release.await();
+                    return ok("original");
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(store.stats().running()).isEqualTo(1);
+
+        CompletableFuture<ResponseEntity<String>> duplicate = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store.execute(5L, "k", "r", () -> ok("duplicate " + calls.incrementAndGet()));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        release.countDown();
+
+        assertThat(duplicate.get(5, TimeUnit.SECONDS).getBody()).isEqualTo("original");
+        assertThat(original.get(5, TimeUnit.SECONDS).getBody()).isEqualTo("original");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void oldestResponseIsDroppedWhenFull() throws Exception {
+        store.execute(5L, "a", "r", () -> ok("a"));
+        store.execute(5L, "b", "r", () -> ok("b"));
+        store.execute(5L, "c", "r", () -> ok("c"));
+
+        assertThat(store.execute(5L, "a", "r", () -> ok("a again")).getBody()).isEqualTo("a again");
+        assertThat(store.stats().stored()).isEqualTo(2);
+    }
+
+    @Test
+    void expiredResponseIsNotReplayed() throws Exception {
+        IdempotencyStore shortLived = new IdempotencyStore(Duration.ZERO, 10);
+
+        shortLived.execute(5L, "k", "r", () -> ok("first"));
+
+        assertThat(shortLived.execute(5L, "k", "r", () -> ok("second")).getBody()).isEqualTo("second");
+    }
+
+    @Test
+    void overlongKeyIsRejected() {
+        String key = "k".repeat(IdempotencyStore.MAX_KEY_LENGTH + 1);
+
+        assertThatThrownBy(() -> store.execute(5L, key, "r", () -> ok("x")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ResponseEntity<String> ok(String body) {
+        return ResponseEntity.ok(body);
+    }
+}
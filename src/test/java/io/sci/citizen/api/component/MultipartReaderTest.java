@@ -0,0 +1,166 @@
+package io.sci.citizen.api.component;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultipartReaderTest {
+
+    private static final String BOUNDARY = "----citizen-boundary";
+
+    @Test
+    void boundaryIsParsedFromContentType() {
+        assertThat(MultipartReader.boundary("multipart/form-data; boundary=abc123")).isEqualTo("abc123");
+        assertThat(MultipartReader.boundary("multipart/form-data; charset=UTF-8; boundary=\"quoted\"")).isEqualTo("quoted");
+        assertThatThrownBy(() -> MultipartReader.boundary("multipart/form-data"))
+                .isInstanceOf(MultipartException.class);
+    }
+
+    @Test
+    void readsFieldsAndFilesInOrder() throws Exception {
+        byte[] image = new byte[200_000];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) (i % 251);
+        }
+        byte[] body = new Body()
+                .field("model", "{\"uuid\":\"u-1\"}")
+                .file("images", "3-photo.jpg", "image/jpeg", image)
+                .field("results", "{}")
+                .close();
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, Long.MAX_VALUE);
+
+        MultipartReader.Part model = reader.next();
+        assertThat(model.name()).isEqualTo("model");
+        assertThat(model.isFile()).isFalse();
+        assertThat(model.text()).isEqualTo("{\"uuid\":\"u-1\"}");
+
+        MultipartReader.Part file = reader.next();
+        assertThat(file.name()).isEqualTo("images");
+        assertThat(file.filename()).isEqualTo("3-photo.jpg");
+        assertThat(file.contentType()).isEqualTo("image/jpeg");
+        assertThat(file.body().readAllBytes()).isEqualTo(image);
+
+        MultipartReader.Part results = reader.next();
+        assertThat(results.text()).isEqualTo("{}");
+
+        assertThat(reader.next()).isNull();
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void unreadPartsAreSkipped() throws Exception {
+        byte[] body = new Body()
+                .file("images", "1-a.jpg", "image/jpeg", new byte[100_000])
+                .file("images", "1-b.jpg", "image/jpeg", "second".getBytes(StandardCharsets.UTF_8))
+                .close();
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, Long.MAX_VALUE);
+
+        assertThat(reader.next().filename()).isEqualTo("1-a.jpg");
+        MultipartReader.Part second = reader.next();
+        assertThat(second.filename()).isEqualTo("1-b.jpg");
+        assertThat(second.text()).isEqualTo("second");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void handlesInputDeliveredOneByteAtATime() throws Exception {
+        byte[] body = new Body()
+                .field("model", "--" + BOUNDARY.substring(0, 10) + " not a boundary")
+                .close();
+
+        MultipartReader reader = new MultipartReader(new TrickleInputStream(body), BOUNDARY, Long.MAX_VALUE);
+
+        assertThat(reader.next().text()).isEqualTo("--" + BOUNDARY.substring(0, 10) + " not a boundary");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void partsLargerThanTheLimitAreRejected() throws Exception {
+        byte[] body = new Body()
+                .file("images", "1-big.jpg", "image/jpeg", new byte[2048])
+                .close();
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, 1024);
+        MultipartReader.Part part = reader.next();
+
+        assertThatThrownBy(() -> part.body().readAllBytes())
+                .isInstanceOf(MaxUploadSizeExceededException.class);
+    }
+
+    @Test
+    void truncatedBodyFails() throws Exception {
+        byte[] full = new Body().field("model", "value").close();
+        byte[] truncated = java.util.Arrays.copyOf(full, full.length - 20);
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(truncated), BOUNDARY, Long.MAX_VALUE);
+        MultipartReader.Part part = reader.next();
+
+        assertThatThrownBy(part::text).isInstanceOf(java.io.EOFException.class);
+    }
+
+    private static final class Body {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Body field(String name, String value) {
+            write("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n");
+            write(value);
+            write("\r\n");
+            return this;
+        }
+
+        Body file(String name, String filename, String contentType, byte[] content) {
+            write("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + filename + "\"\r\n"
+                    + "Content-Type: " + contentType + "\r\n\r\n");
+            out.writeBytes(content);
+            write("\r\n");
+            return this;
+        }
+
+        byte[] close() {
+            write("--" + BOUNDARY + "--\r\n");
+            return out.toByteArray();
+        }
+
+        private void write(String s) {
+            out.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final class TrickleInputStream extends InputStream {
+        private final byte[] data;
+        private int pos;
+
+        TrickleInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= data.length) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            b[off] = data[pos++];
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.sci.citizen.api.component;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadAdmissionFilterTest {
+
+    private UploadAdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new UploadAdmissionFilter(DataSize.ofMegabytes(3), 1, DataSize.ofMegabytes(1), Duration.ofSeconds(7),
+                DataSize.ofMegabytes(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void uploadWithinBudgetIsAdmittedAndReleased() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<UploadAdmissionFilter.Stats> during = new AtomicReference<>();
+
+        filter.doFilter(upload("alice", 2_000_000), response, (req, res) -> during.set(filter.stats()));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(during.get().inFlightBytes()).isEqualTo(2_000_000);
+        assertThat(during.get().activeUsers()).isEqualTo(1);
+        assertThat(filter.stats().inFlightBytes()).isZero();
+        assertThat(filter.stats().activeUsers()).isZero();
+    }
+
+    @Test
+    void secondUploadOfSameUserIsRejected() throws Exception {
+        MockHttpServletResponse second = new MockHttpServletResponse();
+
+        filter.doFilter(upload("alice", 10), new MockHttpServletResponse(),
+                (req, res) -> filter.doFilter(upload("alice", 10), second, failing()));
+
+        assertThat(second.getStatus()).isEqualTo(429);
+        assertThat(second.getHeader("Retry-After")).isEqualTo("7");
+        assertThat(second.getContentAsString()).contains("this user");
+        assertThat(filter.stats().rejected()).isEqualTo(1);
+    }
+
+    @Test
+    void uploadBeyondByteBudgetIsRejected() throws Exception {
+        MockHttpServletResponse second = new MockHttpServletResponse();
+
+        filter.doFilter(upload("alice", 2_500_000), new MockHttpServletResponse(),
+                (req, res) -> filter.doFilter(upload("bob", 10), second, failing()));
+
+        assertThat(second.getStatus()).isEqualTo(429);
+        assertThat(second.getContentAsString()).contains("busy");
+        assertThat(filter.stats().activeUsers()).isZero();
+    }
+
+    @Test
+    void oversizedUploadIsAdmittedWhenIdle() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        List<Boolean> called = new ArrayList<>();
+
+        filter.doFilter(upload("alice", 4_000_000), response, (req, res) -> called.add(true));
+
+        assertThat(called).containsExactly(true);
+        assertThat(response.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void uploadWithoutLengthIsChargedTheLargestRequest() throws Exception {
+        MockHttpServletRequest chunked = upload("alice", 0);
+        chunked.setContent(null);
+        AtomicReference<UploadAdmissionFilter.Stats> during = new AtomicReference<>();
+        MockHttpServletResponse second = new MockHttpServletResponse();
+
+        filter.doFilter(chunked, new MockHttpServletResponse(), (req, res) -> {
+            during.set(filter.stats());
+            filter.doFilter(upload("bob", 1_500_000), second, failing());
+        });
+
+        assertThat(during.get().inFlightBytes()).isEqualTo(DataSize.ofMegabytes(2).toBytes());
+        assertThat(second.getStatus()).isEqualTo(429);
+        assertThat(filter.stats().inFlightBytes()).isZero();
+    }
+
+    @Test
+    void otherEndpointsAreNotLimited() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/record/list-by-user");
+        List<Boolean> called = new ArrayList<>();
+
+        filter.doFilter(upload("alice", 10), new MockHttpServletResponse(),
+                (req, res) -> filter.doFilter(request, new MockHttpServletResponse(), (r, s) -> called.add(true)));
+
+        assertThat(called).containsExactly(true);
+    }
+
+    private static MockHttpServletRequest upload(String user, int size) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, List.of()));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/record/upload-stream");
+        request.setContent(new byte[size]);
+        return request;
+    }
+
+    private static FilterChain failing() {
+        return (req, res) -> {
+            throw new AssertionError("request should not reach the controller");
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package io.sci.citizen.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalFileStorageTest {
+
+    @TempDir
+    Path dir;
+
+    private final ExecutorService partWrites = Executors.newFixedThreadPool(3);
+
+    private LocalFileStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        StorageProps props = new StorageProps();
+        props.getLocal().setBasePath(dir.toString());
+        props.getLocal().setBaseUrl("http://localhost/file/");
+        props.getLocal().setMultipartThreshold(DataSize.ofKilobytes(64));
+        storage = new LocalFileStorage(props, new UploadSigner("secret"), partWrites);
+    }
+
+    @AfterEach
+    void tearDown() {
+        partWrites.shutdownNow();
+    }
+
+    @Test
+    void largeObjectIsWrittenInPartsAtTheirOffsets() throws Exception {
+        byte[] content = new byte[64 * 1024 * 5 + 123];
+        new Random(7).nextBytes(content);
+
+        storage.write("a/large.jpg", new ByteArrayInputStream(content), -1, "image/jpeg");
+
+        assertThat(Files.readAllBytes(dir.resolve("a/large.jpg"))).isEqualTo(content);
+        assertThat(files(dir.resolve("a"))).containsExactly("large.jpg");
+    }
+
+    @Test
+    void smallObjectIsCopiedAndSized() throws Exception {
+        StoredFile stored = storage.store("small.jpg", new ByteArrayInputStream(new byte[10]), 10, "image/jpeg");
+
+        assertThat(stored.size()).isEqualTo(10);
+        assertThat(Files.size(dir.resolve("small.jpg"))).isEqualTo(10);
+    }
+
+    @Test
+    void failedReadLeavesNoPartialObject() {
+        InputStream broken = new InputStream() {
+            private int left = 64 * 1024 * 2;
+
+            @Override
+            public int read() throws IOException {
+                if (left-- <= 0) {
+                    throw new IOException("connection reset");
+                }
+                return 1;
+            }
+        };
+
+        assertThatThrownBy(() -> storage.write("broken.jpg", broken, -1, "image/jpeg"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("connection reset");
+        assertThat(files(dir)).isEmpty();
+    }
+
+    private static List<String> files(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).toList();
+        }
+    }
+}
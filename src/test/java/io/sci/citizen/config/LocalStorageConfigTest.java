@@ -49,7 +49,7 @@ class LocalStorageConfigTest {
 
         LocalStorageConfig config = new LocalStorageConfig(props);
 
-        FileStorage storage = config.localStorage();
+        FileStorage storage = config.localStorage(new UploadSigner("secret"));
 
         assertThat(storage).isInstanceOf(LocalFileStorage.class);
         assertThat(Files.exists(basePath)).isTrue();
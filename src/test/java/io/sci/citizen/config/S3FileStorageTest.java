@@ -1,5 +1,6 @@
 package io.sci.citizen.config;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -7,19 +8,30 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -29,9 +41,17 @@ class S3FileStorageTest {
     @Mock
     private S3Client s3;
 
+    @Mock
+    private S3AsyncClient s3Async;
+
     @Mock
     private S3Presigner presigner;
 
+    private final ExecutorService bodyReads = Executors.newCachedThreadPool();
+
+    // bytes each async upload read from its body
+    private final AtomicLong uploaded = new AtomicLong();
+
     private StorageProps props;
 
     private S3FileStorage storage;
@@ -41,7 +61,12 @@ class S3FileStorageTest {
         props = new StorageProps();
         props.getS3().setBucket("test-bucket");
         props.getS3().setUrlMinutes(15);
-        storage = new S3FileStorage(s3, presigner, props);
+        storage = new S3FileStorage(s3, s3Async, presigner, props, bodyReads);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bodyReads.shutdownNow();
     }
 
     @Test
@@ -51,6 +76,7 @@ class S3FileStorageTest {
         PresignedGetObjectRequest presigned = mock(PresignedGetObjectRequest.class);
         when(presigned.url()).thenReturn(expectedUri.toURL());
         when(presigner.presignGetObject(any(GetObjectPresignRequest.class))).thenReturn(presigned);
+        uploadsSucceed();
 
         StoredFile stored = storage.store("uploads/hello.txt", file);
 
@@ -60,7 +86,7 @@ class S3FileStorageTest {
         assertThat(stored.contentType()).isEqualTo("text/plain");
 
         ArgumentCaptor<PutObjectRequest> putCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
-        verify(s3).putObject(putCaptor.capture(), any(RequestBody.class));
+        verify(s3Async).putObject(putCaptor.capture(), any(AsyncRequestBody.class));
         PutObjectRequest put = putCaptor.getValue();
         assertThat(put.bucket()).isEqualTo("test-bucket");
         assertThat(put.key()).isEqualTo("uploads/hello.txt");
@@ -81,15 +107,70 @@ class S3FileStorageTest {
         PresignedGetObjectRequest presigned = mock(PresignedGetObjectRequest.class);
         when(presigned.url()).thenReturn(expectedUri.toURL());
         when(presigner.presignGetObject(any(GetObjectPresignRequest.class))).thenReturn(presigned);
+        uploadsSucceed();
 
         storage.store("uploads/data.bin", file);
 
         ArgumentCaptor<PutObjectRequest> putCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
-        verify(s3).putObject(putCaptor.capture(), any(RequestBody.class));
+        verify(s3Async).putObject(putCaptor.capture(), any(AsyncRequestBody.class));
         PutObjectRequest put = putCaptor.getValue();
         assertThat(put.contentType()).isEqualTo("application/octet-stream");
     }
 
+    @Test
+    void storeStreamOfUnknownLengthGoesThroughAsyncClientAndCountsBytes() throws Exception {
+        PresignedGetObjectRequest presigned = mock(PresignedGetObjectRequest.class);
+        when(presigned.url()).thenReturn(new URI("https://example.com/large.jpg").toURL());
+        when(presigner.presignGetObject(any(GetObjectPresignRequest.class))).thenReturn(presigned);
+        uploadsSucceed();
+        int size = 5 * 1024 * 1024 + 10;
+
+        StoredFile stored = storage.store("uploads/large.jpg", new ByteArrayInputStream(new byte[size]), -1, null);
+
+        assertThat(stored.size()).isEqualTo(size);
+        assertThat(stored.contentType()).isEqualTo("application/octet-stream");
+        assertThat(uploaded).hasValue(size);
+        ArgumentCaptor<AsyncRequestBody> body = ArgumentCaptor.forClass(AsyncRequestBody.class);
+        verify(s3Async).putObject(any(PutObjectRequest.class), body.capture());
+        assertThat(body.getValue().contentLength()).isEmpty();
+        verify(s3, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void storeStreamPassesFailureOfAsyncUploadOn() {
+        when(s3Async.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.failedFuture(SdkClientException.create("network")));
+
+        assertThatThrownBy(() -> storage.store("uploads/fail.jpg",
+                new ByteArrayInputStream(new byte[10]), 10, "image/jpeg"))
+                .isInstanceOf(SdkClientException.class)
+                .hasMessage("network");
+        verify(presigner, never()).presignGetObject(any(GetObjectPresignRequest.class));
+    }
+
+    @Test
+    void deleteRemovesObjectFromBucket() {
+        storage.delete("uploads/orphan.jpg");
+
+        ArgumentCaptor<DeleteObjectRequest> delete = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3).deleteObject(delete.capture());
+        assertThat(delete.getValue().key()).isEqualTo("uploads/orphan.jpg");
+        assertThat(delete.getValue().bucket()).isEqualTo(props.getS3().getBucket());
+    }
+
+    @Test
+    void writeStoresWithoutPresigning() throws Exception {
+        uploadsSucceed();
+
+        storage.write("uploads/plain.jpg", new ByteArrayInputStream(new byte[10]), 10, "image/jpeg");
+
+        ArgumentCaptor<AsyncRequestBody> body = ArgumentCaptor.forClass(AsyncRequestBody.class);
+        verify(s3Async).putObject(any(PutObjectRequest.class), body.capture());
+        assertThat(body.getValue().contentLength()).contains(10L);
+        assertThat(uploaded).hasValue(10);
+        verify(presigner, never()).presignGetObject(any(GetObjectPresignRequest.class));
+    }
+
     @Test
     void publicUrlReturnsPresignedUri() throws Exception {
         URI expectedUri = new URI("https://example.com/fetch.txt");
@@ -106,4 +187,38 @@ class S3FileStorageTest {
         assertThat(request.getObjectRequest().bucket()).isEqualTo("test-bucket");
         assertThat(request.getObjectRequest().key()).isEqualTo("uploads/fetch.txt");
     }
+
+    @Test
+    void presignPutSignsPutOfKeyWithContentType() throws Exception {
+        URI expectedUri = new URI("https://example.com/upload.jpg?X-Amz-Signature=abc");
+        PresignedPutObjectRequest presigned = mock(PresignedPutObjectRequest.class);
+        when(presigned.url()).thenReturn(expectedUri.toURL());
+        when(presigner.presignPutObject(any(PutObjectPresignRequest.class))).thenReturn(presigned);
+
+        assertThat(storage.presignPut("3_2_10_x.jpg", "image/jpeg", Duration.ofMinutes(5))).isEqualTo(expectedUri);
+
+        ArgumentCaptor<PutObjectPresignRequest> captor = ArgumentCaptor.forClass(PutObjectPresignRequest.class);
+        verify(presigner).presignPutObject(captor.capture());
+        assertThat(captor.getValue().signatureDuration()).isEqualTo(Duration.ofMinutes(5));
+        assertThat(captor.getValue().putObjectRequest().bucket()).isEqualTo("test-bucket");
+        assertThat(captor.getValue().putObjectRequest().key()).isEqualTo("3_2_10_x.jpg");
+        assertThat(captor.getValue().putObjectRequest().contentType()).isEqualTo("image/jpeg");
+    }
+
+    // the async client completes once it has read the whole body, as the real one does
+    private void uploadsSucceed() {
+        when(s3Async.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenAnswer(inv ->
+                inv.<AsyncRequestBody>getArgument(1).subscribe(buffer -> uploaded.addAndGet(buffer.remaining()))
+                        .thenApply(done -> PutObjectResponse.builder().build()));
+    }
+
+    @Test
+    void sizeReadsObjectHeadAndIsEmptyForMissingObject() {
+        when(s3.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().contentLength(42L).build())
+                .thenThrow(NoSuchKeyException.builder().build());
+
+        assertThat(storage.size("present.jpg")).hasValue(42L);
+        assertThat(storage.size("missing.jpg")).isEmpty();
+    }
 }
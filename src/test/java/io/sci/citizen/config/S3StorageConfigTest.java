@@ -11,6 +11,8 @@ import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3ClientBuilder;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
@@ -33,8 +35,10 @@ class S3StorageConfigTest {
         TestBuilders builders = mockBuilders();
 
         try (MockedStatic<S3Client> s3ClientStatic = mockStatic(S3Client.class);
+             MockedStatic<S3AsyncClient> asyncClientStatic = mockStatic(S3AsyncClient.class);
              MockedStatic<S3Presigner> presignerStatic = mockStatic(S3Presigner.class)) {
             s3ClientStatic.when(S3Client::builder).thenReturn(builders.clientBuilder);
+            asyncClientStatic.when(S3AsyncClient::builder).thenReturn(builders.asyncClientBuilder);
             presignerStatic.when(S3Presigner::builder).thenReturn(builders.presignerBuilder);
 
             FileStorage storage = new S3StorageConfig().s3Storage(props);
@@ -50,6 +54,8 @@ class S3StorageConfigTest {
             assertThat(basic.secretAccessKey()).isEqualTo("secret");
 
             verify(builders.presignerBuilder).credentialsProvider(provider);
+            verify(builders.asyncClientBuilder).credentialsProvider(provider);
+            verify(builders.asyncClientBuilder).multipartEnabled(true);
         }
     }
 
@@ -63,8 +69,10 @@ class S3StorageConfigTest {
         TestBuilders builders = mockBuilders();
 
         try (MockedStatic<S3Client> s3ClientStatic = mockStatic(S3Client.class);
+             MockedStatic<S3AsyncClient> asyncClientStatic = mockStatic(S3AsyncClient.class);
              MockedStatic<S3Presigner> presignerStatic = mockStatic(S3Presigner.class)) {
             s3ClientStatic.when(S3Client::builder).thenReturn(builders.clientBuilder);
+            asyncClientStatic.when(S3AsyncClient::builder).thenReturn(builders.asyncClientBuilder);
             presignerStatic.when(S3Presigner::builder).thenReturn(builders.presignerBuilder);
 
             FileStorage storage = new S3StorageConfig().s3Storage(props);
@@ -92,8 +100,10 @@ class S3StorageConfigTest {
         TestBuilders builders = mockBuilders();
 
         try (MockedStatic<S3Client> s3ClientStatic = mockStatic(S3Client.class);
+             MockedStatic<S3AsyncClient> asyncClientStatic = mockStatic(S3AsyncClient.class);
              MockedStatic<S3Presigner> presignerStatic = mockStatic(S3Presigner.class)) {
             s3ClientStatic.when(S3Client::builder).thenReturn(builders.clientBuilder);
+            asyncClientStatic.when(S3AsyncClient::builder).thenReturn(builders.asyncClientBuilder);
             presignerStatic.when(S3Presigner::builder).thenReturn(builders.presignerBuilder);
 
             FileStorage storage = new S3StorageConfig().s3Storage(props);
@@ -114,8 +124,10 @@ class S3StorageConfigTest {
         TestBuilders builders = mockBuilders();
 
         try (MockedStatic<S3Client> s3ClientStatic = mockStatic(S3Client.class);
+             MockedStatic<S3AsyncClient> asyncClientStatic = mockStatic(S3AsyncClient.class);
              MockedStatic<S3Presigner> presignerStatic = mockStatic(S3Presigner.class)) {
             s3ClientStatic.when(S3Client::builder).thenReturn(builders.clientBuilder);
+            asyncClientStatic.when(S3AsyncClient::builder).thenReturn(builders.asyncClientBuilder);
             presignerStatic.when(S3Presigner::builder).thenReturn(builders.presignerBuilder);
 
             FileStorage storage = new S3StorageConfig().s3Storage(props);
@@ -143,17 +155,22 @@ class S3StorageConfigTest {
 
     private TestBuilders mockBuilders() {
         S3ClientBuilder clientBuilder = mock(S3ClientBuilder.class, RETURNS_SELF);
+        S3AsyncClientBuilder asyncClientBuilder = mock(S3AsyncClientBuilder.class, RETURNS_SELF);
         S3Presigner.Builder presignerBuilder = mock(S3Presigner.Builder.class, RETURNS_SELF);
         S3Client client = mock(S3Client.class);
+        S3AsyncClient asyncClient = mock(S3AsyncClient.class);
         S3Presigner presigner = mock(S3Presigner.class);
 
         org.mockito.Mockito.when(clientBuilder.build()).thenReturn(client);
+        org.mockito.Mockito.when(asyncClientBuilder.build()).thenReturn(asyncClient);
         org.mockito.Mockito.when(presignerBuilder.build()).thenReturn(presigner);
         org.mockito.Mockito.when(clientBuilder.region(any(Region.class))).thenReturn(clientBuilder);
+        org.mockito.Mockito.when(asyncClientBuilder.region(any(Region.class))).thenReturn(asyncClientBuilder);
         org.mockito.Mockito.when(presignerBuilder.region(any(Region.class))).thenReturn(presignerBuilder);
 
-        return new TestBuilders(clientBuilder, presignerBuilder);
+        return new TestBuilders(clientBuilder, asyncClientBuilder, presignerBuilder);
     }
 
-    private record TestBuilders(S3ClientBuilder clientBuilder, S3Presigner.Builder presignerBuilder) { }
+    private record TestBuilders(S3ClientBuilder clientBuilder, S3AsyncClientBuilder asyncClientBuilder,
+                                S3Presigner.Builder presignerBuilder) { }
 }
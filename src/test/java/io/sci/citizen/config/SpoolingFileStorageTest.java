@@ -0,0 +1,236 @@
+package io.sci.citizen.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SpoolingFileStorageTest {
+
+    @Mock
+    private FileStorage delegate;
+
+    @TempDir
+    Path dir;
+
+    private final Map<String, String> replicated = new ConcurrentHashMap<>();
+    private final CountDownLatch s3Available = new CountDownLatch(1);
+    private final List<SpoolingFileStorage> storages = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        s3Available.countDown();
+        for (SpoolingFileStorage storage : storages) {
+            storage.shutdown();
+        }
+    }
+
+    @Test
+    void writeIsReadFromSpoolUntilReplicated() throws Exception {
+        replicateWhenAvailable();
+        when(delegate.publicUrl("a.jpg")).thenReturn(Optional.of(URI.create("https://s3.test/a.jpg")));
+        SpoolingFileStorage storage = open(DataSize.ofMegabytes(1));
+
+        storage.write("a.jpg", bytes("hello"), 5, "image/jpeg");
+
+        assertThat(storage.size("a.jpg")).hasValue(5);
+        assertThat(storage.publicUrl("a.jpg")).isEmpty();
+        FileDownload download = storage.download("a.jpg").orElseThrow();
+        assertThat(download.contentType()).isEqualTo("image/jpeg");
+        assertThat(new String(download.stream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("hello");
+
+        s3Available.countDown();
+        await(() -> storage.stats().pending() == 0 && storage.stats().bytes() == 0);
+        assertThat(replicated).containsEntry("a.jpg", "hello");
+        assertThat(storage.publicUrl("a.jpg")).contains(URI.create("https://s3.test/a.jpg"));
+    }
+
+    @Test
+    void failedReplicationIsRetried() throws Exception {
+        s3Available.countDown();
+        doThrow(new IOException("slow down")).doAnswer(inv -> {
+            replicated.put(inv.getArgument(0), new String(inv.<InputStream>getArgument(1).readAllBytes(), StandardCharsets.UTF_8));
+            return null;
+        }).when(delegate).write(anyString(), any(InputStream.class), anyLong(), anyString());
+        SpoolingFileStorage storage = open(DataSize.ofMegabytes(1));
+
+        storage.write("a.jpg", bytes("hello"), 5, "image/jpeg");
+
+        await(() -> storage.stats().replicated() == 1);
+        assertThat(replicated).containsEntry("a.jpg", "hello");
+        assertThat(storage.stats().retries()).isEqualTo(1);
+    }
+
+    @Test
+    void writeFailsWhenSpoolStaysFull() throws Exception {
+        replicateWhenAvailable();
+        SpoolingFileStorage storage = open(DataSize.ofBytes(5));
+        storage.write("a.jpg", bytes("hello"), 5, "image/jpeg");
+
+        assertThatThrownBy(() -> storage.write("b.jpg", bytes("x"), 1, "image/jpeg"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Storage spool is full");
+        assertThat(storage.stats().pending()).isEqualTo(1);
+    }
+
+    @Test
+    void writeOfUnknownSizeIsHeldToTheLimit() throws Exception {
+        replicateWhenAvailable();
+        SpoolingFileStorage storage = open(DataSize.ofBytes(5));
+        storage.write("a.jpg", bytes("hello"), 5, "image/jpeg");
+
+        assertThatThrownBy(() -> storage.write("b.jpg", bytes("xyz"), -1, "image/jpeg"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Storage spool is full");
+        assertThat(storage.stats().pending()).isEqualTo(1);
+        assertThat(storage.stats().bytes()).isEqualTo(5);
+    }
+
+    @Test
+    void writeOfUnknownSizeIsAccountedAsWritten() throws Exception {
+        replicateWhenAvailable();
+        SpoolingFileStorage storage = open(DataSize.ofMegabytes(1));
+
+        storage.write("a.jpg", bytes("hello"), -1, "image/jpeg");
+
+        assertThat(storage.size("a.jpg")).hasValue(5);
+        assertThat(storage.stats().bytes()).isEqualTo(5);
+    }
+
+    @Test
+    void olderCopyNeverLandsAfterNewerWriteOfSameKey() throws Exception {
+        CountDownLatch oldCopyStarted = new CountDownLatch(1);
+        doAnswer(inv -> {
+            String content = new String(inv.<InputStream>getArgument(1).readAllBytes(), StandardCharsets.UTF_8);
+            if (content.equals("old")) {
+                oldCopyStarted.countDown();
+                s3Available.await();
+            }
+            replicated.put(inv.getArgument(0), content);
+            return null;
+        }).when(delegate).write(anyString(), any(InputStream.class), anyLong(), anyString());
+        SpoolingFileStorage storage = open(DataSize.ofMegabytes(1));
+        storage.write("a.jpg", bytes("old"), 3, "image/jpeg");
+        oldCopyStarted.await();
+
+        storage.write("a.jpg", bytes("new"), 3, "image/jpeg");
+        Thread.sleep(50);
+        s3Available.countDown();
+
+        await(() -> storage.stats().pending() == 0 && storage.stats().bytes() == 0);
+        assertThat(replicated).containsEntry("a.jpg", "new");
+    }
+
+    @Test
+    void rewrittenKeyIsReplicatedWithNewestContentsAfterRestart() throws Exception {
+        replicateWhenAvailable();
+        SpoolingFileStorage first = open(DataSize.ofMegabytes(1));
+        first.write("a.jpg", bytes("old"), 3, "image/jpeg");
+        first.write("a.jpg", bytes("new"), 3, "image/jpeg");
+        first.shutdown();
+
+        SpoolingFileStorage second = open(DataSize.ofMegabytes(1));
+        assertThat(second.stats().pending()).isEqualTo(1);
+        assertThat(second.stats().bytes()).isEqualTo(3);
+        second.write("a.jpg", bytes("newest"), 6, "image/jpeg");
+        s3Available.countDown();
+
+        await(() -> second.stats().pending() == 0 && second.stats().bytes() == 0);
+        assertThat(replicated).containsEntry("a.jpg", "newest");
+    }
+
+    @Test
+    void enabledSpoolNeedsAnExplicitPath() {
+        StorageProps.Spool props = new StorageProps.Spool();
+
+        assertThatThrownBy(() -> new SpoolingFileStorage(delegate, props))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.storage.spool.path");
+    }
+
+    @Test
+    void spooledObjectsAreReplicatedAfterRestart() throws Exception {
+        replicateWhenAvailable();
+        SpoolingFileStorage first = open(DataSize.ofMegabytes(1));
+        first.write("a.jpg", bytes("hello"), 5, "image/jpeg");
+        first.shutdown();
+
+        SpoolingFileStorage second = open(DataSize.ofMegabytes(1));
+        assertThat(second.stats().pending()).isEqualTo(1);
+        s3Available.countDown();
+
+        await(() -> second.stats().pending() == 0);
+        assertThat(replicated).containsEntry("a.jpg", "hello");
+    }
+
+    @Test
+    void deleteDropsSpooledCopy() throws Exception {
+        replicateWhenAvailable();
+        when(delegate.download("a.jpg")).thenReturn(Optional.empty());
+        SpoolingFileStorage storage = open(DataSize.ofMegabytes(1));
+        storage.write("a.jpg", bytes("hello"), 5, "image/jpeg");
+
+        storage.delete("a.jpg");
+
+        assertThat(storage.stats().pending()).isZero();
+        assertThat(storage.stats().bytes()).isZero();
+        assertThat(storage.download("a.jpg")).isEmpty();
+        verify(delegate).delete("a.jpg");
+    }
+
+    private SpoolingFileStorage open(DataSize maxSize) throws IOException {
+        StorageProps.Spool props = new StorageProps.Spool();
+        props.setPath(dir.toString());
+        props.setMaxSize(maxSize);
+        props.setMaxWait(Duration.ofMillis(100));
+        props.setRetryDelay(Duration.ofMillis(10));
+        SpoolingFileStorage storage = new SpoolingFileStorage(delegate, props);
+        storages.add(storage);
+        return storage;
+    }
+
+    private void replicateWhenAvailable() throws IOException {
+        // lenient: a test may end before a worker gets to the copy
+        lenient().doAnswer(inv -> {
+            s3Available.await();
+            replicated.put(inv.getArgument(0), new String(inv.<InputStream>getArgument(1).readAllBytes(), StandardCharsets.UTF_8));
+            return null;
+        }).when(delegate).write(anyString(), any(InputStream.class), anyLong(), anyString());
+    }
+
+    private static InputStream bytes(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -1,6 +1,7 @@
 package io.sci.citizen.config;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -15,6 +16,8 @@ class StoragePropsTest {
         assertThat(props.getS3()).isNotNull();
         assertThat(props.getS3().getPrefix()).isEqualTo("uploads/");
         assertThat(props.getS3().getUrlMinutes()).isEqualTo(10);
+        assertThat(props.getSpool().isEnabled()).isFalse();
+        assertThat(props.getSpool().getMaxSize()).isEqualTo(DataSize.ofGigabytes(2));
     }
 
     @Test
@@ -0,0 +1,36 @@
+package io.sci.citizen.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadSignerTest {
+
+    private final UploadSigner signer = new UploadSigner("secret");
+
+    @Test
+    void signatureIsAcceptedForSameKeyUntilItExpires() {
+        long expires = System.currentTimeMillis() / 1000 + 60;
+        String signature = signer.sign("3_2_10_a.jpg", expires);
+
+        assertThat(signer.verify("3_2_10_a.jpg", expires, signature)).isTrue();
+        assertThat(signer.verify("3_2_11_a.jpg", expires, signature)).isFalse();
+        assertThat(signer.verify("3_2_10_a.jpg", expires + 1, signature)).isFalse();
+        assertThat(signer.verify("3_2_10_a.jpg", expires, null)).isFalse();
+    }
+
+    @Test
+    void expiredSignatureIsRejected() {
+        long expires = System.currentTimeMillis() / 1000 - 1;
+
+        assertThat(signer.verify("a.jpg", expires, signer.sign("a.jpg", expires))).isFalse();
+    }
+
+    @Test
+    void signersWithDifferentSecretsDisagree() {
+        long expires = System.currentTimeMillis() / 1000 + 60;
+
+        assertThat(new UploadSigner("other").verify("a.jpg", expires, signer.sign("a.jpg", expires))).isFalse();
+        assertThat(new UploadSigner("").verify("a.jpg", expires, signer.sign("a.jpg", expires))).isFalse();
+    }
+}
@@ -3,7 +3,10 @@ package io.sci.citizen.service;
 import io.sci.citizen.model.Data;
 import io.sci.citizen.model.Project;
 import io.sci.citizen.model.User;
+import io.sci.citizen.model.dto.DataTablePage;
+import io.sci.citizen.model.dto.DataTableRow;
 import io.sci.citizen.model.repository.DataRepository;
+import io.sci.citizen.model.repository.DataTableRepository;
 import io.sci.citizen.model.repository.ProjectRepository;
 import io.sci.citizen.model.repository.UserRepository;
 import org.junit.jupiter.api.AfterEach;
@@ -34,6 +37,9 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -50,11 +56,14 @@ class DataServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private DataTableRepository tableRepository;
+
     private DataService dataService;
 
     @BeforeEach
     void setUp() {
-        dataService = new DataService(dataRepository, projectRepository);
+        dataService = new DataService(dataRepository, projectRepository, tableRepository, 100);
         ReflectionTestUtils.setField(dataService, "userRepo", userRepository);
         SecurityContextHolder.clearContext();
     }
@@ -231,6 +240,57 @@ class DataServiceTest {
         assertNotNull(saved.getVerifiedAt());
     }
 
+    @Test
+    void tableReturnsOnePageWithTotalAndFilteredCounts() {
+        mockAuthentication("admin", "ROLE_ADMIN");
+        List<DataTableRow> rows = List.of(new DataTableRow(5L, null, "Ann", "Birds", 0, null, null));
+        when(dataRepository.getRecordCountByProjectId(2L)).thenReturn(40);
+        when(tableRepository.count(2L, "ann")).thenReturn(3L);
+        when(tableRepository.findPage(2L, "ann", 2, true, 20, 10)).thenReturn(rows);
+
+        DataTablePage page = dataService.table(2L, 4, 20, 10, "ann", 2, true);
+
+        assertEquals(4, page.draw());
+        assertEquals(40, page.recordsTotal());
+        assertEquals(3, page.recordsFiltered());
+        assertSame(rows, page.data());
+    }
+
+    @Test
+    void tableWithoutSearchSkipsTheFilteredCountAndCapsLength() {
+        mockAuthentication("admin", "ROLE_ADMIN");
+        when(dataRepository.getRecordCount()).thenReturn(5000);
+        when(tableRepository.findPage(null, "", 1, false, 0, 100)).thenReturn(List.of());
+
+        DataTablePage page = dataService.table(null, 1, -5, -1, "", 1, false);
+
+        assertEquals(5000, page.recordsFiltered());
+        verify(tableRepository, never()).count(any(), any());
+    }
+
+    @Test
+    void tableOfAllProjectsAsNonAdminThrowsForbidden() {
+        mockAuthentication("user", "ROLE_USER");
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> dataService.table(null, 1, 0, 10, null, 1, false));
+
+        assertEquals(HttpStatus.FORBIDDEN, ex.getStatusCode());
+        verifyNoInteractions(tableRepository);
+    }
+
+    @Test
+    void tableOfOtherUsersProjectThrowsForbidden() {
+        mockAuthentication("user", "ROLE_USER");
+        when(userRepository.findByUsername("user")).thenReturn(Optional.of(createUser(1L, "user")));
+        Project project = new Project();
+        project.setCreator(createUser(2L, "other"));
+        when(projectRepository.findById(99L)).thenReturn(Optional.of(project));
+
+        assertThrows(ResponseStatusException.class, () -> dataService.table(99L, 1, 0, 10, null, 1, false));
+        verify(tableRepository, never()).findPage(any(), any(), anyInt(), anyBoolean(), anyInt(), anyInt());
+    }
+
     private void mockAuthentication(String username, String... roles) {
         List<GrantedAuthority> authorities = Arrays.stream(roles)
                 .map(SimpleGrantedAuthority::new)
@@ -0,0 +1,174 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.api.dto.DirectUploadRequest;
+import io.sci.citizen.api.dto.DirectUploadTarget;
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.model.Data;
+import io.sci.citizen.model.Image;
+import io.sci.citizen.model.Project;
+import io.sci.citizen.model.Section;
+import io.sci.citizen.model.repository.DataRepository;
+import io.sci.citizen.model.repository.ImageRepository;
+import io.sci.citizen.model.repository.SectionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DirectUploadServiceTest {
+
+    private static final String KEY = "3_2_10_abc.jpg";
+
+    @Mock
+    private DataRepository dataRepo;
+
+    @Mock
+    private ImageRepository imageRepo;
+
+    @Mock
+    private SectionRepository sectionRepo;
+
+    @Mock
+    private FileStorage fileStorage;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private DirectUploadService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new DirectUploadService(dataRepo, imageRepo, sectionRepo, fileStorage, DataSize.ofBytes(100),
+                Duration.ofMinutes(15), transactionManager);
+    }
+
+    @Test
+    void prepareReturnsPresignedPutForEachImage() throws Exception {
+        when(dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(5L, "u-1")).thenReturn(List.of(record()));
+        when(fileStorage.presignPut(startsWith("3_2_10_"), eq("image/jpeg"), eq(Duration.ofMinutes(15))))
+                .thenReturn(URI.create("https://bucket.example/put"));
+
+        List<DirectUploadTarget> targets = service.prepare(5L, request(image("2-a.jpg", 50, null)));
+
+        assertThat(targets).hasSize(1);
+        assertThat(targets.get(0).name()).isEqualTo("2-a.jpg");
+        assertThat(targets.get(0).key()).startsWith("3_2_10_").endsWith(".jpg");
+        assertThat(targets.get(0).url()).isEqualTo("https://bucket.example/put");
+        assertThat(targets.get(0).method()).isEqualTo("PUT");
+        assertThat(targets.get(0).headers()).isEqualTo(Map.of("Content-Type", "image/jpeg"));
+        assertThat(targets.get(0).expiresAt()).isGreaterThan(System.currentTimeMillis());
+    }
+
+    @Test
+    void prepareRejectsOversizedImage() {
+        when(dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(5L, "u-1")).thenReturn(List.of(record()));
+
+        assertThatThrownBy(() -> service.prepare(5L, request(image("2-a.jpg", 101, null))))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        verifyNoInteractions(fileStorage);
+    }
+
+    @Test
+    void prepareRejectsUnknownRecord() {
+        when(dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(5L, "u-1")).thenReturn(List.of());
+
+        assertThatThrownBy(() -> service.prepare(5L, request(image("2-a.jpg", 50, null))))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+    }
+
+    @Test
+    void completeAttachesUploadedObjects() throws Exception {
+        Data data = record();
+        Section section = new Section();
+        when(dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(5L, "u-1")).thenReturn(List.of(data));
+        when(fileStorage.size(KEY)).thenReturn(OptionalLong.of(50));
+        when(dataRepo.getReferenceById(10L)).thenReturn(data);
+        when(sectionRepo.existsById(2L)).thenReturn(true);
+        when(sectionRepo.getReferenceById(2L)).thenReturn(section);
+        when(imageRepo.save(any(Image.class))).thenAnswer(inv -> {
+            Image image = inv.getArgument(0);
+            image.setId(99L);
+            return image;
+        });
+
+        List<Long> ids = service.complete(5L, request(image("2-a.jpg", 0, KEY)));
+
+        assertThat(ids).containsExactly(99L);
+        verify(imageRepo).deleteObsoleteImage(10L, 2L, "2-a.jpg");
+        ArgumentCaptor<Image> image = ArgumentCaptor.forClass(Image.class);
+        verify(imageRepo).save(image.capture());
+        assertThat(image.getValue().getUuid()).isEqualTo(KEY);
+        assertThat(image.getValue().getSection()).isSameAs(section);
+        assertThat(image.getValue().getStorageStatus()).isEqualTo(ImageUploadService.STORED);
+    }
+
+    @Test
+    void completeRejectsKeyOfAnotherRecord() {
+        when(dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(5L, "u-1")).thenReturn(List.of(record()));
+
+        assertThatThrownBy(() -> service.complete(5L, request(image("2-a.jpg", 0, "3_2_11_abc.jpg"))))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        verifyNoInteractions(fileStorage, imageRepo, transactionManager);
+    }
+
+    @Test
+    void completeFailsWithoutWritingWhenAnObjectIsMissing() throws Exception {
+        when(dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(5L, "u-1")).thenReturn(List.of(record()));
+        when(fileStorage.size(KEY)).thenReturn(OptionalLong.of(50));
+        when(fileStorage.size("3_4_10_def.jpg")).thenReturn(OptionalLong.empty());
+
+        assertThatThrownBy(() -> service.complete(5L, request(image("2-a.jpg", 0, KEY), image("4-b.jpg", 0, "3_4_10_def.jpg"))))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+        verifyNoInteractions(imageRepo, transactionManager);
+    }
+
+    @Test
+    void completeDeletesOversizedObject() throws Exception {
+        when(dataRepo.findByUser_IdAndUuidOrderByCreatedAtDesc(5L, "u-1")).thenReturn(List.of(record()));
+        when(fileStorage.size(KEY)).thenReturn(OptionalLong.of(101));
+
+        assertThatThrownBy(() -> service.complete(5L, request(image("2-a.jpg", 0, KEY))))
+                .isInstanceOf(ResponseStatusException.class);
+        verify(fileStorage).delete(KEY);
+        verifyNoInteractions(imageRepo);
+    }
+
+    private static Data record() {
+        Project project = new Project();
+        project.setId(3L);
+        Data data = new Data();
+        data.setId(10L);
+        data.setProject(project);
+        return data;
+    }
+
+    private static DirectUploadRequest request(DirectUploadRequest.Image... images) {
+        return new DirectUploadRequest("u-1", List.of(images));
+    }
+
+    private static DirectUploadRequest.Image image(String name, long size, String key) {
+        return new DirectUploadRequest.Image(name, "image/jpeg", size, key);
+    }
+}
@@ -0,0 +1,128 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.model.repository.RecordBatchRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FormCacheTest {
+
+    @Mock
+    private RecordBatchRepository batchRepo;
+
+    private FormCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new FormCache(batchRepo, Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void formIsLoadedOncePerProject() {
+        when(batchRepo.findForm(3L)).thenReturn(form());
+
+        assertThat(cache.hasSection(3L, 2L)).isTrue();
+        assertThat(cache.hasSection(3L, 9L)).isFalse();
+        assertThat(cache.knownQuestions(List.of(3L), List.of(11L, 12L, 99L))).containsExactlyInAnyOrder(11L, 12L);
+        assertThat(cache.questionTypes(3L)).containsEntry(11L, 4).containsEntry(12L, 7);
+
+        verify(batchRepo, times(1)).findForm(3L);
+    }
+
+    @Test
+    void unknownProjectNeverHitsTheDatabase() {
+        assertThat(cache.hasSection(null, 2L)).isFalse();
+        assertThat(cache.knownQuestions(Set.of(), List.of(11L))).isEmpty();
+        assertThat(cache.questionTypes(null)).isEmpty();
+
+        verifyNoInteractions(batchRepo);
+    }
+
+    @Test
+    void invalidateOutsideTransactionReloadsRightAway() {
+        when(batchRepo.findForm(3L)).thenReturn(form());
+        cache.form(3L);
+
+        cache.invalidate(3L);
+        cache.form(3L);
+
+        verify(batchRepo, times(2)).findForm(3L);
+        assertThat(cache.version()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidateInsideTransactionWaitsForCommit() {
+        when(batchRepo.findForm(3L)).thenReturn(form());
+        cache.form(3L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.invalidate(3L);
+        cache.form(3L);
+        verify(batchRepo, times(1)).findForm(3L);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        cache.form(3L);
+        verify(batchRepo, times(2)).findForm(3L);
+    }
+
+    @Test
+    void formLoadedDuringInvalidationIsNotCached() {
+        when(batchRepo.findForm(3L)).thenAnswer(inv -> {
+            cache.invalidate(3L);
+            return form();
+        }).thenReturn(form());
+
+        cache.form(3L);
+        cache.form(3L);
+
+        verify(batchRepo, times(2)).findForm(3L);
+    }
+
+    @Test
+    void imagePolicyIsLoadedWithTheForm() {
+        when(batchRepo.findForm(3L)).thenReturn(form());
+        when(batchRepo.findImageSettings(3L)).thenReturn(new RecordBatchRepository.ImageSettings(1600, "JPG", 0.8f, null));
+
+        assertThat(cache.imagePolicy(3L)).isEqualTo(new ImagePolicy(1600, "jpeg", 0.8f, false));
+        assertThat(cache.hasSection(3L, 2L)).isTrue();
+        assertThat(cache.imagePolicy(null)).isSameAs(ImagePolicy.NONE);
+
+        verify(batchRepo, times(1)).findImageSettings(3L);
+    }
+
+    @Test
+    void expiredFormIsReloaded() {
+        cache = new FormCache(batchRepo, Duration.ZERO);
+        when(batchRepo.findForm(3L)).thenReturn(form());
+
+        cache.form(3L);
+        cache.form(3L);
+
+        verify(batchRepo, times(2)).findForm(3L);
+    }
+
+    private static RecordBatchRepository.Form form() {
+        return new RecordBatchRepository.Form(Set.of(1L, 2L), Map.of(11L, Set.of(101L), 12L, Set.of()), Map.of(11L, 4, 12L, 7));
+    }
+}
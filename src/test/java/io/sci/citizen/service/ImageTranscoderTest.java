@@ -0,0 +1,134 @@
+package io.sci.citizen.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageTranscoderTest {
+
+    private final ImageTranscoder transcoder = new ImageTranscoder(12_000_000, 100_000_000);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void downscalesKeepingAspectRatio() throws Exception {
+        Path source = write("a.png", encode(image(800, 600), "png"));
+        Path target = dir.resolve("out");
+
+        String contentType = transcoder.transcode(source, new ImagePolicy(200, "jpeg", 0.7f, false), target);
+
+        assertThat(contentType).isEqualTo("image/jpeg");
+        BufferedImage out = ImageIO.read(target.toFile());
+        assertThat(out.getWidth()).isEqualTo(200);
+        assertThat(out.getHeight()).isEqualTo(150);
+        assertThat(Files.size(target)).isLessThan(Files.size(source));
+    }
+
+    @Test
+    void appliesExifOrientation() throws Exception {
+        Path source = write("a.jpg", withOrientation(encode(image(40, 20), "jpeg"), 6));
+        Path target = dir.resolve("out");
+
+        assertThat(ImageTranscoder.orientation(source)).isEqualTo(6);
+        String contentType = transcoder.transcode(source, new ImagePolicy(1000, null, null, false), target);
+
+        assertThat(contentType).isEqualTo("image/jpeg");
+        BufferedImage out = ImageIO.read(target.toFile());
+        assertThat(out.getWidth()).isEqualTo(20);
+        assertThat(out.getHeight()).isEqualTo(40);
+        // the red left half of the photo ends up on top once turned clockwise
+        assertThat(new Color(out.getRGB(10, 5)).getRed()).isGreaterThan(200);
+        assertThat(new Color(out.getRGB(10, 35)).getBlue()).isGreaterThan(200);
+    }
+
+    @Test
+    void keepsUploadThatWouldNotChange() throws Exception {
+        Path source = write("a.png", encode(image(100, 50), "png"));
+        Path target = dir.resolve("out");
+
+        assertThat(transcoder.transcode(source, new ImagePolicy(1600, null, null, false), target)).isNull();
+        assertThat(target).doesNotExist();
+    }
+
+    @Test
+    void keepsBytesItCannotDecode() throws Exception {
+        Path source = write("a.jpg", "not an image".getBytes());
+        Path target = dir.resolve("out");
+
+        assertThat(transcoder.transcode(source, new ImagePolicy(100, "jpeg", null, false), target)).isNull();
+        assertThat(target).doesNotExist();
+        assertThat(ImageTranscoder.orientation(source)).isEqualTo(1);
+    }
+
+    @Test
+    void capsPixelsWhenPolicyOnlyChangesFormat() throws Exception {
+        Path source = write("a.png", encode(image(400, 200), "png"));
+        Path target = dir.resolve("out");
+
+        String contentType = new ImageTranscoder(20_000, 100_000_000)
+                .transcode(source, new ImagePolicy(null, "jpeg", null, false), target);
+
+        assertThat(contentType).isEqualTo("image/jpeg");
+        BufferedImage out = ImageIO.read(target.toFile());
+        assertThat((long) out.getWidth() * out.getHeight()).isLessThanOrEqualTo(20_000);
+        assertThat(out.getWidth()).isEqualTo(2 * out.getHeight());
+    }
+
+    @Test
+    void keepsUploadThatDeclaresTooManyPixels() throws Exception {
+        Path source = write("a.png", encode(image(400, 200), "png"));
+        Path target = dir.resolve("out");
+
+        assertThat(new ImageTranscoder(12_000_000, 50_000)
+                .transcode(source, new ImagePolicy(100, "jpeg", null, false), target)).isNull();
+        assertThat(target).doesNotExist();
+    }
+
+    // left half red, right half blue
+    private static BufferedImage image(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width / 2, height);
+        g.setColor(Color.BLUE);
+        g.fillRect(width / 2, 0, width - width / 2, height);
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    // inserts an EXIF segment holding only the orientation tag right after the start marker
+    private static byte[] withOrientation(byte[] jpeg, int orientation) {
+        ByteBuffer exif = ByteBuffer.allocate(2 + 2 + 6 + 8 + 2 + 12 + 4);
+        exif.putShort((short) 0xFFE1).putShort((short) (exif.capacity() - 2));
+        exif.put("Exif".getBytes()).put((byte) 0).put((byte) 0);
+        exif.put("MM".getBytes()).putShort((short) 42).putInt(8);
+        exif.putShort((short) 1);
+        exif.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        exif.putInt(0);
+        ByteBuffer out = ByteBuffer.allocate(jpeg.length + exif.capacity());
+        out.put(jpeg, 0, 2).put(exif.array()).put(jpeg, 2, jpeg.length - 2);
+        return out.array();
+    }
+
+    private Path write(String name, byte[] bytes) throws IOException {
+        return Files.write(dir.resolve(name), bytes);
+    }
+}
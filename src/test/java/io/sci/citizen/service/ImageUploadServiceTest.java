@@ -0,0 +1,360 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.model.Image;
+import io.sci.citizen.model.dto.PendingImage;
+import io.sci.citizen.model.repository.ImageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageUploadServiceTest {
+
+    @Mock
+    private FileStorage fileStorage;
+
+    @Mock
+    private ImageRepository imageRepo;
+
+    @Mock
+    private FormCache formCache;
+
+    @TempDir
+    Path staging;
+
+    private ImageUploadService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service = new ImageUploadService(fileStorage, imageRepo, formCache, new ImageTranscoder(12_000_000, 100_000_000), staging.toString(), 1, 10, 2, Duration.ofMillis(10), false);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        service.shutdown();
+    }
+
+    @Test
+    void submitOutsideTransactionStoresImageAndMarksItStored() throws Exception {
+        service.submit(image(7L, "3_2_10_a.jpg"), service.stage(bytes("photo")), "image/jpeg", ImagePolicy.NONE);
+
+        verify(imageRepo, timeout(2000)).updateStorageStatus(7L, ImageUploadService.STORED);
+        service.shutdown();
+        verify(fileStorage).write(eq("3_2_10_a.jpg"), any(InputStream.class), eq(5L), eq("image/jpeg"));
+        assertThat(staging.resolve("3_2_10_a.jpg")).doesNotExist();
+        assertThat(service.stats().stored()).isEqualTo(1);
+        assertThat(service.stats().storedBytes()).isEqualTo(5);
+    }
+
+    @Test
+    void stageHashesBytesAndDiscardRemovesUnsubmittedCopy() throws Exception {
+        ImageUploadService.Staged staged = service.stage(bytes("photo"));
+
+        assertThat(staged.hash()).isEqualTo(sha256("photo"));
+        assertThat(staged.file()).hasContent("photo");
+        service.discard(staged);
+        assertThat(staged.file()).doesNotExist();
+        verifyNoInteractions(imageRepo, fileStorage);
+    }
+
+    @Test
+    void submitInsideTransactionWaitsForCommit() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.submit(image(7L, "3_2_10_a.jpg"), service.stage(bytes("photo")), "image/jpeg", ImagePolicy.NONE);
+
+        assertThat(staging.resolve("3_2_10_a.jpg")).hasContent("photo");
+        verifyNoInteractions(fileStorage);
+
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        syncs.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        verify(imageRepo, timeout(2000)).updateStorageStatus(7L, ImageUploadService.STORED);
+    }
+
+    @Test
+    void rollbackDiscardsStagedImage() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.submit(image(7L, "3_2_10_a.jpg"), service.stage(bytes("photo")), "image/jpeg", ImagePolicy.NONE);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertThat(staging.resolve("3_2_10_a.jpg")).doesNotExist();
+        verifyNoInteractions(fileStorage);
+        verify(imageRepo).save(any(Image.class));
+        verifyNoMoreInteractions(imageRepo);
+    }
+
+    @Test
+    void contentAddressedSubmitKeysImageByHash() throws Exception {
+        contentAddressed();
+        Image image = image(7L, "3_2_10_a.jpg");
+        image.setOriginalFileName("2-a.JPG");
+
+        service.submit(image, service.stage(bytes("photo")), "image/jpeg", ImagePolicy.NONE);
+
+        String key = sha256("photo") + ".jpg";
+        verify(imageRepo, timeout(2000)).updateStorageStatus(7L, ImageUploadService.STORED);
+        verify(fileStorage).write(eq(key), any(InputStream.class), eq(5L), eq("image/jpeg"));
+        assertThat(image.getUuid()).isEqualTo(key);
+        assertThat(image.getContentHash()).isEqualTo(sha256("photo"));
+    }
+
+    @Test
+    void contentAlreadyStoredIsNotUploadedAgain() throws Exception {
+        contentAddressed();
+        String key = sha256("photo") + ".jpg";
+        when(imageRepo.existsByUuidAndStorageStatus(key, ImageUploadService.STORED)).thenReturn(true);
+        Image image = image(7L, "3_2_10_a.jpg");
+        image.setOriginalFileName("2-a.jpg");
+
+        service.submit(image, service.stage(bytes("photo")), "image/jpeg", ImagePolicy.NONE);
+
+        assertThat(image.getUuid()).isEqualTo(key);
+        assertThat(image.getStorageStatus()).isEqualTo(ImageUploadService.STORED);
+        verify(imageRepo).save(image);
+        verifyNoInteractions(fileStorage);
+        try (var files = Files.list(staging)) {
+            assertThat(files).isEmpty();
+        }
+        assertThat(service.stats().deduplicated()).isEqualTo(1);
+    }
+
+    @Test
+    void rollbackKeepsStagedContentStillNeededByAnotherImage() throws Exception {
+        contentAddressed();
+        TransactionSynchronizationManager.initSynchronization();
+        Image first = image(7L, "3_2_10_a.jpg");
+        first.setOriginalFileName("2-a.jpg");
+        Image second = image(8L, "3_2_11_b.jpg");
+        second.setOriginalFileName("2-b.jpg");
+
+        service.submit(first, service.stage(bytes("photo")), "image/jpeg", ImagePolicy.NONE);
+        service.submit(second, service.stage(bytes("photo")), "image/jpeg", ImagePolicy.NONE);
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        syncs.get(0).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        Path staged = staging.resolve(sha256("photo") + ".jpg");
+        assertThat(staged).hasContent("photo");
+
+        syncs.get(1).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(imageRepo, timeout(2000)).updateStorageStatus(8L, ImageUploadService.STORED);
+        service.shutdown();
+        assertThat(staged).doesNotExist();
+        verify(imageRepo, never()).updateStorageStatus(eq(7L), anyInt());
+    }
+
+    @Test
+    void policyReencodesImageAndKeepsOriginalWhenAsked() throws Exception {
+        Map<String, byte[]> written = new ConcurrentHashMap<>();
+        doAnswer(inv -> {
+            written.put(inv.getArgument(0), ((InputStream) inv.getArgument(1)).readAllBytes());
+            return null;
+        }).when(fileStorage).write(anyString(), any(InputStream.class), anyLong(), any());
+        byte[] png = png(400, 200);
+        Image image = image(7L, "3_2_10_a.png");
+
+        service.submit(image, service.stage(new ByteArrayInputStream(png)), "image/png",
+                new ImagePolicy(100, "jpeg", 0.8f, true));
+
+        verify(imageRepo, timeout(2000)).updateStorageStatus(7L, ImageUploadService.STORED);
+        service.shutdown();
+        assertThat(image.getUuid()).isEqualTo("3_2_10_a.jpg");
+        verify(fileStorage).write(eq("3_2_10_a.jpg"), any(InputStream.class), anyLong(), eq("image/jpeg"));
+        verify(fileStorage).write(eq("originals/3_2_10_a.png"), any(InputStream.class), eq((long) png.length), eq("image/png"));
+        BufferedImage stored = ImageIO.read(new ByteArrayInputStream(written.get("3_2_10_a.jpg")));
+        assertThat(stored.getWidth()).isEqualTo(100);
+        assertThat(stored.getHeight()).isEqualTo(50);
+        assertThat(written.get("originals/3_2_10_a.png")).isEqualTo(png);
+        try (var files = Files.list(staging)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void contentAddressedKeyCarriesPolicy() throws Exception {
+        contentAddressed();
+        Image image = image(7L, "3_2_10_a.png");
+        image.setOriginalFileName("2-a.PNG");
+        ImageUploadService.Staged staged = service.stage(new ByteArrayInputStream(png(40, 20)));
+
+        service.submit(image, staged, "image/png", new ImagePolicy(1600, "jpeg", null, false));
+
+        assertThat(image.getUuid()).isEqualTo(staged.hash() + "-w1600j.jpg");
+        verify(imageRepo, timeout(2000)).updateStorageStatus(7L, ImageUploadService.STORED);
+        service.shutdown();
+        verify(fileStorage).write(eq(image.getUuid()), any(InputStream.class), anyLong(), eq("image/jpeg"));
+        verify(fileStorage, never()).write(startsWith("originals/"), any(InputStream.class), anyLong(), any());
+    }
+
+    @Test
+    void failingUploadIsRetriedThenMarkedFailed() throws Exception {
+        doThrow(new IOException("storage down"))
+                .when(fileStorage).write(anyString(), any(InputStream.class), anyLong(), any());
+
+        service.submit(image(7L, "3_2_10_a.jpg"), service.stage(bytes("photo")), "image/jpeg", ImagePolicy.NONE);
+
+        verify(imageRepo, timeout(2000)).updateStorageStatus(7L, ImageUploadService.FAILED);
+        verify(fileStorage, times(2)).write(eq("3_2_10_a.jpg"), any(InputStream.class), eq(5L), eq("image/jpeg"));
+        verify(imageRepo, never()).updateStorageStatus(7L, ImageUploadService.STORED);
+        assertThat(staging.resolve("3_2_10_a.jpg")).exists();
+        assertThat(service.stats().failed()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueDefersUploadsInsteadOfRunningThemOnTheCaller() throws Exception {
+        service.shutdown();
+        service = new ImageUploadService(fileStorage, imageRepo, formCache, new ImageTranscoder(12_000_000, 100_000_000),
+                staging.toString(), 1, 1, 2, Duration.ofMillis(10), false);
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, String> writers = new ConcurrentHashMap<>();
+        doAnswer(inv -> {
+            writers.put(inv.getArgument(0), Thread.currentThread().getName());
+            release.await(2, TimeUnit.SECONDS);
+            return null;
+        }).when(fileStorage).write(anyString(), any(InputStream.class), anyLong(), any());
+
+        service.submit(image(1L, "1_1_1_a.jpg"), service.stage(bytes("a")), "image/jpeg", ImagePolicy.NONE);
+        verify(fileStorage, timeout(2000)).write(eq("1_1_1_a.jpg"), any(InputStream.class), anyLong(), any());
+        service.submit(image(2L, "1_1_1_b.jpg"), service.stage(bytes("b")), "image/jpeg", ImagePolicy.NONE);
+        service.submit(image(3L, "1_1_1_c.jpg"), service.stage(bytes("c")), "image/jpeg", ImagePolicy.NONE);
+
+        assertThat(service.stats().deferred()).isEqualTo(1);
+        release.countDown();
+        verify(imageRepo, timeout(2000)).updateStorageStatus(3L, ImageUploadService.STORED);
+        verify(imageRepo, timeout(2000)).updateStorageStatus(2L, ImageUploadService.STORED);
+        assertThat(writers.values()).allMatch(name -> name.startsWith("image-upload-"))
+                .noneMatch(name -> name.startsWith("image-upload-retry-"));
+        assertThat(service.stats().deferred()).isZero();
+    }
+
+    @Test
+    void recoverRequeuesOnlyImagesWithStagedBytes() throws Exception {
+        Files.writeString(staging.resolve("1_1_1_a.jpg"), "photo");
+        when(imageRepo.findPending(List.of(ImageUploadService.PENDING, ImageUploadService.FAILED), 0, ImageUploadService.RECOVER_PAGE_SIZE))
+                .thenReturn(List.of(pending(1L, "1_1_1_a.jpg", null, null, null), pending(2L, "1_1_1_elsewhere.jpg", null, null, null)));
+
+        service.recover();
+
+        verify(imageRepo, timeout(2000)).updateStorageStatus(1L, ImageUploadService.STORED);
+        service.shutdown();
+        verify(fileStorage).write(eq("1_1_1_a.jpg"), any(InputStream.class), eq(5L), eq("image/jpeg"));
+        verify(fileStorage, never()).write(eq("1_1_1_elsewhere.jpg"), any(InputStream.class), anyLong(), any());
+        verify(imageRepo, never()).updateStorageStatus(eq(2L), anyInt());
+    }
+
+    @Test
+    void recoverPagesThroughPendingImagesAfterTheLastId() throws Exception {
+        List<Integer> statuses = List.of(ImageUploadService.PENDING, ImageUploadService.FAILED);
+        List<PendingImage> full = new ArrayList<>();
+        for (long id = 1; id <= ImageUploadService.RECOVER_PAGE_SIZE; id++) {
+            full.add(pending(id, "1_1_" + id + "_gone.jpg", null, null, null));
+        }
+        Files.writeString(staging.resolve("1_1_1_a.jpg"), "photo");
+        when(imageRepo.findPending(statuses, 0, ImageUploadService.RECOVER_PAGE_SIZE)).thenReturn(full);
+        when(imageRepo.findPending(statuses, ImageUploadService.RECOVER_PAGE_SIZE, ImageUploadService.RECOVER_PAGE_SIZE))
+                .thenReturn(List.of(pending(ImageUploadService.RECOVER_PAGE_SIZE + 1L, "1_1_1_a.jpg", null, null, null)));
+
+        service.recover();
+
+        verify(imageRepo, timeout(2000)).updateStorageStatus(ImageUploadService.RECOVER_PAGE_SIZE + 1L, ImageUploadService.STORED);
+        verify(imageRepo, times(2)).findPending(eq(statuses), anyLong(), anyInt());
+    }
+
+    @Test
+    void recoverKeepsOriginalWhenPolicyAsksForIt() throws Exception {
+        contentAddressed();
+        byte[] png = png(400, 200);
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png));
+        Files.write(staging.resolve(hash + "-w100j.jpg"), png);
+        when(imageRepo.findPending(List.of(ImageUploadService.PENDING, ImageUploadService.FAILED), 0, ImageUploadService.RECOVER_PAGE_SIZE))
+                .thenReturn(List.of(pending(7L, hash + "-w100j.jpg", hash, "2-a.png", 3L)));
+        when(formCache.imagePolicy(3L)).thenReturn(new ImagePolicy(100, "jpeg", null, true));
+
+        service.recover();
+
+        verify(imageRepo, timeout(2000)).updateStorageStatus(7L, ImageUploadService.STORED);
+        service.shutdown();
+        verify(fileStorage).write(eq("originals/" + hash + ".png"), any(InputStream.class), eq((long) png.length), eq("image/png"));
+        verify(fileStorage).write(eq(hash + "-w100j.jpg"), any(InputStream.class), anyLong(), eq("image/jpeg"));
+    }
+
+    @Test
+    void stagingPathMustBeSet() {
+        assertThatThrownBy(() -> new ImageUploadService(fileStorage, imageRepo, formCache, new ImageTranscoder(12_000_000, 100_000_000), " ", 1, 10, 2, Duration.ofMillis(10), false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("app.ingest.staging-path must be set");
+    }
+
+    private void contentAddressed() throws Exception {
+        service.shutdown();
+        service = new ImageUploadService(fileStorage, imageRepo, formCache, new ImageTranscoder(12_000_000, 100_000_000), staging.toString(), 1, 10, 2, Duration.ofMillis(10), true);
+    }
+
+    private static String sha256(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Image image(Long id, String key) {
+        Image image = new Image();
+        image.setId(id);
+        image.setUuid(key);
+        return image;
+    }
+
+    private static PendingImage pending(Long id, String uuid, String contentHash, String originalFileName, Long projectId) {
+        return new PendingImage() {
+            public Long getId() { return id; }
+            public String getUuid() { return uuid; }
+            public String getContentHash() { return contentHash; }
+            public String getOriginalFileName() { return originalFileName; }
+            public Integer getStorageStatus() { return ImageUploadService.PENDING; }
+            public Long getProjectId() { return projectId; }
+        };
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private static InputStream bytes(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
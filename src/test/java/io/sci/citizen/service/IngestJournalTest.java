@@ -0,0 +1,260 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.api.component.AnswerDecoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IngestJournalTest {
+
+    private static final String MODEL = "{\"uuid\":\"u-1\",\"projectId\":7}";
+    private static final String RESULTS = "{\"11\":\"yes\"}";
+
+    @Mock
+    private RecordService recordService;
+
+    @Mock
+    private FormCache formCache;
+
+    @TempDir
+    Path dir;
+
+    private final List<IngestJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (IngestJournal journal : journals) {
+            journal.shutdown();
+        }
+    }
+
+    @Test
+    void recordIsAppliedInBackgroundAndItsImagesRemoved() throws Exception {
+        List<String> replayed = new ArrayList<>();
+        doAnswer(inv -> {
+            List<RecordService.ImageFile> files = inv.getArgument(2);
+            for (RecordService.ImageFile file : files) {
+                replayed.add(file.name() + ":" + file.contentType() + ":" + Files.readString(file.path()));
+            }
+            return null;
+        }).when(recordService).replay(eq(5L), eq(MODEL), anyList(), eq(RESULTS));
+        IngestJournal journal = open();
+
+        journal.record(5L, MODEL, new MultipartFile[]{image("3-a.jpg", "photo")}, RESULTS);
+        assertThat(journal.stats().pending()).isEqualTo(1);
+        journal.start();
+
+        await(() -> journal.stats().applied() == 1 && blobs().isEmpty());
+        assertThat(replayed).containsExactly("3-a.jpg:image/jpeg:photo");
+        assertThat(journal.stats()).isEqualTo(new IngestJournal.Stats(true, 0, 1, 1, 0));
+        assertThat(Files.readString(dir.resolve("checkpoint"))).startsWith("1 ");
+    }
+
+    @Test
+    void restartReplaysEntriesThatWereNotApplied() throws Exception {
+        IngestJournal first = open();
+        first.record(5L, MODEL, new MultipartFile[]{image("3-a.jpg", "photo")}, RESULTS);
+        first.shutdown();
+
+        IngestJournal second = open();
+        assertThat(second.stats().pending()).isEqualTo(1);
+        assertThat(blobs()).hasSize(1);
+        second.start();
+
+        verify(recordService, timeout(5000)).replay(eq(5L), eq(MODEL), anyList(), eq(RESULTS));
+    }
+
+    @Test
+    void recoveryCutsOffTornEntryAtTheEnd() throws Exception {
+        IngestJournal first = open();
+        first.record(5L, MODEL, null, RESULTS);
+        first.shutdown();
+        Path segment = dir.resolve(String.format("%020d.log", 1));
+        long size = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        IngestJournal second = open();
+        assertThat(Files.size(segment)).isEqualTo(size);
+        second.record(6L, MODEL, null, RESULTS);
+        second.start();
+
+        verify(recordService, timeout(5000)).replay(eq(5L), eq(MODEL), eq(List.of()), eq(RESULTS));
+        verify(recordService, timeout(5000)).replay(eq(6L), eq(MODEL), eq(List.of()), eq(RESULTS));
+    }
+
+    @Test
+    void entryThatCanNeverBeAppliedIsSkipped() throws Exception {
+        doAnswer(inv -> {
+            if (inv.<Long>getArgument(0) == 5L) {
+                throw new IllegalArgumentException("unsupported answer");
+            }
+            return null;
+        }).when(recordService).replay(anyLong(), anyString(), anyList(), anyString());
+        IngestJournal journal = open();
+        journal.record(5L, MODEL, null, RESULTS);
+        journal.record(6L, MODEL, null, RESULTS);
+        journal.start();
+
+        await(() -> journal.stats().pending() == 0);
+        assertThat(journal.stats()).isEqualTo(new IngestJournal.Stats(true, 0, 2, 1, 1));
+        verify(recordService).replay(eq(6L), eq(MODEL), eq(List.of()), eq(RESULTS));
+    }
+
+    @Test
+    void entryIsRetriedWhileTheDatabaseIsUnavailable() throws Exception {
+        doThrow(new IllegalStateException("connection refused")).doNothing().when(recordService)
+                .replay(eq(5L), eq(MODEL), anyList(), eq(RESULTS));
+        IngestJournal journal = open();
+        journal.record(5L, MODEL, null, RESULTS);
+        journal.start();
+
+        await(() -> journal.stats().applied() == 1);
+        verify(recordService, times(2)).replay(eq(5L), eq(MODEL), anyList(), eq(RESULTS));
+    }
+
+    @Test
+    void entriesAreReadAcrossSegments() throws Exception {
+        IngestJournal journal = new IngestJournal(recordService, formCache, true, dir.toString(), DataSize.ofBytes(1),
+                Duration.ofMillis(10));
+        journals.add(journal);
+        journal.record(5L, MODEL, null, RESULTS);
+        journal.record(6L, MODEL, null, RESULTS);
+        journal.record(7L, MODEL, null, RESULTS);
+        journal.start();
+
+        await(() -> journal.stats().applied() == 3);
+        verify(recordService).replay(eq(7L), eq(MODEL), anyList(), eq(RESULTS));
+        await(() -> segments().size() == 1);
+        assertThat(segments()).containsExactly(String.format("%020d.log", 3));
+    }
+
+    @Test
+    void recordRejectsUploadWithoutUuidOrWithBadImageName() throws Exception {
+        IngestJournal journal = open();
+
+        assertThatThrownBy(() -> journal.record(5L, "{\"projectId\":7}", null, RESULTS))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> journal.record(5L, MODEL, new MultipartFile[]{image("a.jpg", "x")}, RESULTS))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> journal.record(5L, MODEL, null, "{\"11\":"))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThat(journal.stats().appended()).isZero();
+        assertThat(blobs()).isEmpty();
+    }
+
+    @Test
+    void recordRejectsAnswersTheFormDoesNotAccept() throws Exception {
+        when(formCache.questionTypes(7L)).thenReturn(Map.of(11L, AnswerDecoder.INTEGER));
+        IngestJournal journal = open();
+
+        assertThatThrownBy(() -> journal.record(5L, MODEL, null, "{\"11\":\"many\"}"))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("unsupported answer many to question 11");
+        journal.record(5L, MODEL, null, "{\"11\":\"12\"}");
+
+        assertThat(journal.stats().appended()).isEqualTo(1);
+    }
+
+    @Test
+    void recordChecksOnlyWhatItCanWhileTheFormCannotBeLoaded() throws Exception {
+        when(formCache.questionTypes(7L)).thenThrow(new DataAccessResourceFailureException("db down"));
+        IngestJournal journal = open();
+
+        journal.record(5L, MODEL, null, "{\"11\":\"many\"}");
+        assertThatThrownBy(() -> journal.record(5L, MODEL, null, "{\"11\":true}"))
+                .isInstanceOf(ResponseStatusException.class);
+
+        assertThat(journal.stats().appended()).isEqualTo(1);
+    }
+
+    @Test
+    void unreferencedImagesAreRemovedOnStart() throws Exception {
+        IngestJournal first = open();
+        first.shutdown();
+        Files.writeString(dir.resolve("images").resolve("orphan"), "x");
+
+        open();
+
+        assertThat(blobs()).isEmpty();
+    }
+
+    @Test
+    void disabledJournalDoesNotTouchTheDisk() throws Exception {
+        IngestJournal journal = new IngestJournal(recordService, formCache, false, dir.resolve("journal").toString(),
+                DataSize.ofMegabytes(64), Duration.ofSeconds(1));
+        journal.start();
+
+        assertThat(journal.enabled()).isFalse();
+        assertThat(dir.resolve("journal")).doesNotExist();
+    }
+
+    @Test
+    void enabledJournalNeedsAnExplicitPath() {
+        assertThatThrownBy(() -> new IngestJournal(recordService, formCache, true, "", DataSize.ofMegabytes(64),
+                Duration.ofSeconds(1)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.ingest.journal.path");
+    }
+
+    private IngestJournal open() throws IOException {
+        IngestJournal journal = new IngestJournal(recordService, formCache, true, dir.toString(), DataSize.ofMegabytes(64),
+                Duration.ofMillis(10));
+        journals.add(journal);
+        return journal;
+    }
+
+    private static MockMultipartFile image(String name, String content) {
+        return new MockMultipartFile("images", name, "image/jpeg", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> blobs() {
+        try (Stream<Path> files = Files.list(dir.resolve("images"))) {
+            return files.map(p -> p.getFileName().toString()).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<String> segments() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(".log")).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -38,6 +38,9 @@ class ProjectServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private FormCache formCache;
+
     @InjectMocks
     private ProjectService projectService;
 
@@ -210,5 +213,30 @@ class ProjectServiceTest {
         assertThat(result.isEnabled()).isTrue();
         assertThat(result.isPubliclyAvailable()).isTrue();
         verify(projectRepository).save(existing);
+        verify(formCache).invalidate(30L);
+    }
+
+    @Test
+    void updateAppliesImagePolicyAndClearsBlankFormat() {
+        Project existing = new Project();
+        existing.setImageFormat("png");
+
+        when(projectRepository.findById(30L)).thenReturn(Optional.of(existing));
+        when(projectRepository.save(existing)).thenReturn(existing);
+
+        ProjectRequest request = new ProjectRequest();
+        request.setName("New");
+        request.setImageMaxDimension(1600);
+        request.setImageFormat("");
+        request.setImageQuality(0.8f);
+        request.setKeepOriginalImage(true);
+
+        Project result = projectService.update(30L, request);
+
+        assertThat(result.getImageMaxDimension()).isEqualTo(1600);
+        assertThat(result.getImageFormat()).isNull();
+        assertThat(result.getImageQuality()).isEqualTo(0.8f);
+        assertThat(result.getKeepOriginalImage()).isTrue();
+        verify(formCache).invalidate(30L);
     }
 }
@@ -0,0 +1,95 @@
+package io.sci.citizen.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.sci.citizen.model.dto.RecordSummary;
+import io.sci.citizen.model.repository.DataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecordExportServiceTest {
+
+    @Mock
+    private DataRepository dataRepo;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private RecordExportService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new RecordExportService(dataRepo, new ObjectMapper(), transactionManager);
+    }
+
+    @Test
+    void writesOneJsonLinePerRecordAndClosesTheCursor() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(dataRepo.streamByUser(3L)).thenReturn(Stream.of(record(2L), record(1L)).onClose(() -> closed.set(true)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = service.exportByUser(3L, null, out);
+
+        assertThat(written).isEqualTo(2);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).startsWith("{").contains("\"id\":2");
+        assertThat(lines[1]).contains("\"id\":1");
+        assertThat(closed).isTrue();
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void typeSelectsTheListing() throws Exception {
+        when(dataRepo.streamAll()).thenReturn(Stream.empty());
+        when(dataRepo.streamByProjectAndUserAndStatus(4L, 3L, 1)).thenReturn(Stream.empty());
+        when(dataRepo.streamByProject(4L)).thenReturn(Stream.of(record(9L)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThat(service.exportByUser(3L, 2, out)).isZero();
+        assertThat(service.exportByUserAndProject(3L, 4L, 1, out)).isZero();
+        assertThat(service.exportByUserAndProject(3L, 4L, 2, out)).isEqualTo(1);
+        verify(dataRepo, never()).streamByUser(anyLong());
+        verify(dataRepo, never()).streamByProjectAndUser(anyLong(), anyLong());
+    }
+
+    @Test
+    void clientThatGoesAwayRollsBackAndClosesTheCursor() {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(dataRepo.streamByUser(3L)).thenReturn(Stream.of(record(1L)).onClose(() -> closed.set(true)));
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThatThrownBy(() -> service.exportByUser(3L, 0, broken))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Broken pipe");
+        assertThat(closed).isTrue();
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    private static RecordSummary record(long id) {
+        RecordSummary record = mock(RecordSummary.class);
+        lenient().when(record.getId()).thenReturn(id);
+        return record;
+    }
+}
@@ -1,15 +1,27 @@
 package io.sci.citizen.service;
 
-import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.api.component.MultipartReader;
+import io.sci.citizen.api.dto.PresenceRequest;
+import io.sci.citizen.api.dto.PresenceResponse;
+import io.sci.citizen.api.dto.RecordData;
+import io.sci.citizen.api.dto.RecordDetail;
+import io.sci.citizen.api.dto.RecordPage;
+import io.sci.citizen.api.dto.RecordResult;
 import io.sci.citizen.model.Data;
 import io.sci.citizen.model.Image;
 import io.sci.citizen.model.Project;
+import io.sci.citizen.model.Section;
 import io.sci.citizen.model.User;
+import io.sci.citizen.model.dto.AnswerSummary;
+import io.sci.citizen.model.dto.ImageSummary;
+import io.sci.citizen.model.dto.RecordSummary;
 import io.sci.citizen.model.repository.*;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -18,11 +30,22 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -41,6 +64,24 @@ class RecordServiceTest {
     @Mock
     private UserRepository userRepo;
 
+    @Mock
+    private QueryReplyRepository replyRepo;
+
+    @Mock
+    private SectionRepository sectionRepo;
+
+    @Mock
+    private RecordBatchRepository batchRepo;
+
+    @Mock
+    private ImageUploadService imageUploads;
+
+    @Mock
+    private FormCache formCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private RecordService recordService;
 
@@ -66,42 +107,64 @@ class RecordServiceTest {
     }
 
     @Test
-    void getRecordsByUserTypeTwoReturnsAllRecords() {
-        List<Data> records = List.of(new Data(), new Data());
-        when(dataRepo.findAll()).thenReturn(records);
+    void getRecordsByUserTypeTwoReturnsFirstPageOfAllRecords() {
+        List<RecordSummary> records = List.of(record(2L, 2000), record(1L, 1000));
+        when(dataRepo.findPage(PageCursor.FIRST.createdAt(), Long.MAX_VALUE, 101)).thenReturn(records);
 
-        List<Data> result = recordService.getRecordsByUser(99L, 2);
+        RecordPage<RecordSummary> result = recordService.getRecordsByUser(99L, 2, null, null);
 
-        assertThat(result).isEqualTo(records);
-        verify(dataRepo).findAll();
-        verify(dataRepo, never()).findByUser_IdOrderByCreatedAtDesc(anyLong());
-        verify(dataRepo, never()).findByUser_IdAndStatusOrderByCreatedAtDesc(anyLong(), anyInt());
+        assertThat(result.items()).isEqualTo(records);
+        assertThat(result.nextCursor()).isNull();
+        verify(dataRepo, never()).findPageByUser(anyLong(), any(), anyLong(), anyInt());
+        verify(dataRepo, never()).findPageByUserAndStatus(anyLong(), anyInt(), any(), anyLong(), anyInt());
     }
 
     @Test
     void getRecordsByUserTypeOneReturnsVerifiedRecords() {
-        List<Data> verified = List.of(new Data());
-        when(dataRepo.findByUser_IdAndStatusOrderByCreatedAtDesc(12L, 1)).thenReturn(verified);
+        List<RecordSummary> verified = List.of(record(1L, 1000));
+        when(dataRepo.findPageByUserAndStatus(eq(12L), eq(1), any(), anyLong(), eq(101))).thenReturn(verified);
 
-        List<Data> result = recordService.getRecordsByUser(12L, 1);
+        RecordPage<RecordSummary> result = recordService.getRecordsByUser(12L, 1, null, null);
 
-        assertThat(result).isEqualTo(verified);
-        verify(dataRepo).findByUser_IdAndStatusOrderByCreatedAtDesc(12L, 1);
-        verify(dataRepo, never()).findAll();
-        verify(dataRepo, never()).findByUser_IdOrderByCreatedAtDesc(anyLong());
+        assertThat(result.items()).isEqualTo(verified);
+        verify(dataRepo, never()).findPage(any(), anyLong(), anyInt());
+        verify(dataRepo, never()).findPageByUser(anyLong(), any(), anyLong(), anyInt());
     }
 
     @Test
-    void getRecordsByUserDefaultReturnsAllUserRecords() {
-        List<Data> all = List.of(new Data(), new Data(), new Data());
-        when(dataRepo.findByUser_IdOrderByCreatedAtDesc(8L)).thenReturn(all);
+    void getRecordsByUserReturnsCursorThatResumesAfterLastRecord() {
+        List<RecordSummary> records = List.of(record(9L, 9000), record(8L, 8000), record(7L, 8000));
+        when(dataRepo.findPageByUser(eq(8L), any(), anyLong(), eq(3))).thenReturn(records);
+
+        RecordPage<RecordSummary> first = recordService.getRecordsByUser(8L, 0, null, 2);
 
-        List<Data> result = recordService.getRecordsByUser(8L, 0);
+        assertThat(first.items()).containsExactly(records.get(0), records.get(1));
+        assertThat(first.nextCursor()).isNotNull();
 
-        assertThat(result).isEqualTo(all);
-        verify(dataRepo).findByUser_IdOrderByCreatedAtDesc(8L);
-        verify(dataRepo, never()).findAll();
-        verify(dataRepo, never()).findByUser_IdAndStatusOrderByCreatedAtDesc(anyLong(), anyInt());
+        RecordSummary last = record(6L, 7000);
+        when(dataRepo.findPageByUser(8L, new Date(8000), 8L, 3)).thenReturn(List.of(last));
+
+        RecordPage<RecordSummary> second = recordService.getRecordsByUser(8L, 0, first.nextCursor(), 2);
+
+        assertThat(second.items()).containsExactly(last);
+        assertThat(second.nextCursor()).isNull();
+    }
+
+    @Test
+    void getRecordsByUserCapsPageSize() {
+        when(dataRepo.findPageByUser(eq(8L), any(), anyLong(), anyInt())).thenReturn(List.of());
+
+        recordService.getRecordsByUser(8L, 0, null, 1_000_000);
+
+        verify(dataRepo).findPageByUser(eq(8L), any(), anyLong(), eq(1001));
+    }
+
+    @Test
+    void getRecordsByUserRejectsMalformedCursor() {
+        assertThatThrownBy(() -> recordService.getRecordsByUser(8L, 0, "not a cursor", null))
+                .isInstanceOfSatisfying(ResponseStatusException.class, ex ->
+                        assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        verifyNoInteractions(dataRepo);
     }
 
     @Test
@@ -117,41 +180,80 @@ class RecordServiceTest {
 
     @Test
     void getRecordsByUserAndProjectTypeTwoReturnsAllProjectRecords() {
-        List<Data> records = List.of(new Data());
-        when(dataRepo.findByProject_IdOrderByCreatedAtDesc(15L)).thenReturn(records);
+        List<RecordSummary> records = List.of(record(1L, 1000));
+        when(dataRepo.findPageByProject(eq(15L), any(), anyLong(), eq(101))).thenReturn(records);
 
-        List<Data> result = recordService.getRecordsByUserAndProject(2L, 15L, 2);
+        RecordPage<RecordSummary> result = recordService.getRecordsByUserAndProject(2L, 15L, 2, null, null);
 
-        assertThat(result).isEqualTo(records);
-        verify(dataRepo).findByProject_IdOrderByCreatedAtDesc(15L);
-        verify(dataRepo, never()).findByProject_IdAndUser_IdOrderByCreatedAtDesc(anyLong(), anyLong());
-        verify(dataRepo, never()).findByProject_IdAndUser_IdAndStatusOrderByCreatedAtDesc(anyLong(), anyLong(), anyInt());
+        assertThat(result.items()).isEqualTo(records);
+        verify(dataRepo, never()).findPageByProjectAndUser(anyLong(), anyLong(), any(), anyLong(), anyInt());
+        verify(dataRepo, never()).findPageByProjectAndUserAndStatus(anyLong(), anyLong(), anyInt(), any(), anyLong(), anyInt());
     }
 
     @Test
     void getRecordsByUserAndProjectTypeOneReturnsVerifiedUserRecords() {
-        List<Data> verified = List.of(new Data());
-        when(dataRepo.findByProject_IdAndUser_IdAndStatusOrderByCreatedAtDesc(9L, 10L, 1)).thenReturn(verified);
+        List<RecordSummary> verified = List.of(record(1L, 1000));
+        when(dataRepo.findPageByProjectAndUserAndStatus(eq(9L), eq(10L), eq(1), any(), anyLong(), eq(101))).thenReturn(verified);
+
+        RecordPage<RecordSummary> result = recordService.getRecordsByUserAndProject(10L, 9L, 1, null, null);
+
+        assertThat(result.items()).isEqualTo(verified);
+        verify(dataRepo, never()).findPageByProject(anyLong(), any(), anyLong(), anyInt());
+        verify(dataRepo, never()).findPageByProjectAndUser(anyLong(), anyLong(), any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void getRecordsByUserAndProjectDefaultReturnsUserProjectRecords() {
+        List<RecordSummary> all = List.of(record(2L, 2000), record(1L, 1000));
+        when(dataRepo.findPageByProjectAndUser(eq(20L), eq(21L), any(), anyLong(), eq(101))).thenReturn(all);
 
-        List<Data> result = recordService.getRecordsByUserAndProject(10L, 9L, 1);
+        RecordPage<RecordSummary> result = recordService.getRecordsByUserAndProject(21L, 20L, 0, null, null);
 
-        assertThat(result).isEqualTo(verified);
-        verify(dataRepo).findByProject_IdAndUser_IdAndStatusOrderByCreatedAtDesc(9L, 10L, 1);
-        verify(dataRepo, never()).findByProject_IdOrderByCreatedAtDesc(anyLong());
-        verify(dataRepo, never()).findByProject_IdAndUser_IdOrderByCreatedAtDesc(anyLong(), anyLong());
+        assertThat(result.items()).isEqualTo(all);
+        verify(dataRepo, never()).findPageByProject(anyLong(), any(), anyLong(), anyInt());
+        verify(dataRepo, never()).findPageByProjectAndUserAndStatus(anyLong(), anyLong(), anyInt(), any(), anyLong(), anyInt());
     }
 
     @Test
-    void getRecordsByUserAndProjectDefaultReturnsAllUserProjectRecords() {
-        List<Data> all = List.of(new Data(), new Data());
-        when(dataRepo.findByProject_IdAndUser_IdOrderByCreatedAtDesc(20L, 21L)).thenReturn(all);
+    void getRecordReturnsSummaryWithImagesAndAnswers() {
+        RecordSummary record = record(4L, 1000);
+        List<ImageSummary> images = List.of(mock(ImageSummary.class));
+        List<AnswerSummary> answers = List.of(mock(AnswerSummary.class), mock(AnswerSummary.class));
+        authenticate("user", "ROLE_USER");
+        when(dataRepo.isVisibleTo(4L, 21L)).thenReturn(true);
+        when(dataRepo.findSummary(4L)).thenReturn(Optional.of(record));
+        when(imageRepo.findSummaries(4L)).thenReturn(images);
+        when(replyRepo.findSummaries(4L)).thenReturn(answers);
 
-        List<Data> result = recordService.getRecordsByUserAndProject(21L, 20L, 0);
+        RecordDetail detail = recordService.getRecord(21L, 4L);
 
-        assertThat(result).isEqualTo(all);
-        verify(dataRepo).findByProject_IdAndUser_IdOrderByCreatedAtDesc(20L, 21L);
-        verify(dataRepo, never()).findByProject_IdOrderByCreatedAtDesc(anyLong());
-        verify(dataRepo, never()).findByProject_IdAndUser_IdAndStatusOrderByCreatedAtDesc(anyLong(), anyLong(), anyInt());
+        assertThat(detail.record()).isSameAs(record);
+        assertThat(detail.images()).isSameAs(images);
+        assertThat(detail.answers()).isSameAs(answers);
+    }
+
+    @Test
+    void getRecordThrowsWhenRecordMissing() {
+        authenticate("admin", "ROLE_ADMIN");
+        when(dataRepo.findSummary(4L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> recordService.getRecord(21L, 4L))
+                .isInstanceOfSatisfying(ResponseStatusException.class, ex ->
+                        assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+        verifyNoInteractions(imageRepo, replyRepo);
+        verify(dataRepo, never()).isVisibleTo(anyLong(), anyLong());
+    }
+
+    @Test
+    void getRecordThrowsForbiddenForOtherUsersRecord() {
+        authenticate("user", "ROLE_USER");
+        when(dataRepo.isVisibleTo(4L, 21L)).thenReturn(false);
+
+        assertThatThrownBy(() -> recordService.getRecord(21L, 4L))
+                .isInstanceOfSatisfying(ResponseStatusException.class, ex ->
+                        assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN));
+        verify(dataRepo, never()).findSummary(anyLong());
+        verifyNoInteractions(imageRepo, replyRepo);
     }
 
     @Test
@@ -260,6 +362,441 @@ class RecordServiceTest {
         verify(imageRepo).save(image);
     }
 
+    @Test
+    void recordStreamStoresNewImagesAndSkipsExistingOnes() throws Exception {
+        Data existing = new Data();
+        existing.setId(10L);
+        Section newSection = new Section();
+        newSection.setId(2L);
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(10L, 3L, false));
+        when(dataRepo.getReferenceById(10L)).thenReturn(existing);
+        when(batchRepo.findImages(10L)).thenReturn(List.of(new RecordBatchRepository.ImageName(1L, "1-old.jpg")));
+        when(imageRepo.save(any(Image.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(sectionRepo.existsById(2L)).thenReturn(true);
+        when(sectionRepo.getReferenceById(2L)).thenReturn(newSection);
+        ImageUploadService.Staged oldBytes = staged("old");
+        ImageUploadService.Staged newBytes = staged("new");
+        when(imageUploads.stage(any(InputStream.class))).thenReturn(oldBytes, newBytes);
+
+        stream(5L, multipart(
+                part("model", null, "{\"uuid\":\"u-1\",\"projectId\":3}"),
+                part("images", "1-old.jpg", "old-bytes"),
+                part("images", "2-new.jpg", "new-bytes")));
+
+        ArgumentCaptor<Image> saved = ArgumentCaptor.forClass(Image.class);
+        verify(imageRepo).save(saved.capture());
+        assertThat(saved.getValue().getUuid()).startsWith("3_2_10_").endsWith(".jpg");
+        assertThat(saved.getValue().getOriginalFileName()).isEqualTo("2-new.jpg");
+        assertThat(saved.getValue().getSection()).isSameAs(newSection);
+        assertThat(saved.getValue().getStorageStatus()).isEqualTo(ImageUploadService.PENDING);
+        verify(imageUploads, times(1)).submit(same(saved.getValue()), same(newBytes), eq("image/jpeg"), any());
+        verify(imageUploads).discard(oldBytes);
+        verify(imageRepo, never()).deleteObsoleteImage(anyLong(), anyLong(), anyString());
+    }
+
+    @Test
+    void recordStreamDeletesImagesThatWereNotResent() throws Exception {
+        Data existing = new Data();
+        existing.setId(10L);
+        Section oldSection = new Section();
+        oldSection.setId(1L);
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(10L, 3L, false));
+        when(dataRepo.getReferenceById(10L)).thenReturn(existing);
+        when(batchRepo.findImages(10L)).thenReturn(List.of(new RecordBatchRepository.ImageName(1L, "1-old.jpg")));
+        when(sectionRepo.existsById(1L)).thenReturn(true);
+        when(sectionRepo.getReferenceById(1L)).thenReturn(oldSection);
+        when(imageUploads.stage(any(InputStream.class))).thenReturn(staged("other"));
+
+        stream(5L, multipart(
+                part("model", null, "{\"uuid\":\"u-1\",\"projectId\":3}"),
+                part("images", "1-other.jpg", "bytes")));
+
+        verify(imageRepo).deleteObsoleteImage(10L, 1L, "1-old.jpg");
+        verify(imageUploads).submit(any(), any(ImageUploadService.Staged.class), eq("image/jpeg"), any());
+    }
+
+    @Test
+    void recordComparesUploadWithStoredImageNamesOnly() throws Exception {
+        Data existing = new Data();
+        existing.setId(10L);
+        MultipartFile image = mock(MultipartFile.class);
+        when(image.getOriginalFilename()).thenReturn("2-new.jpg");
+        when(image.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1}));
+        when(image.getContentType()).thenReturn("image/jpeg");
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(10L, 3L, false));
+        when(dataRepo.getReferenceById(10L)).thenReturn(existing);
+        when(batchRepo.findImages(10L)).thenReturn(List.of(new RecordBatchRepository.ImageName(1L, "1-old.jpg")));
+        when(formCache.hasSection(3L, 2L)).thenReturn(true);
+        when(imageUploads.stage(any(InputStream.class))).thenReturn(staged("new"));
+
+        recordService.record(5L, "{\"uuid\":\"u-1\",\"projectId\":3}", new MultipartFile[]{image}, null);
+
+        verify(imageRepo).deleteObsoleteImage(10L, 1L, "1-old.jpg");
+        verify(sectionRepo).getReferenceById(2L);
+        verify(imageUploads).submit(any(), any(ImageUploadService.Staged.class), eq("image/jpeg"), any());
+        verify(imageRepo, never()).findByDataId(anyLong());
+    }
+
+    @Test
+    void recordUpsertsModelAndSkipsImageLookupForNewRecords() throws Exception {
+        Data created = new Data();
+        created.setId(11L);
+        MultipartFile image = mock(MultipartFile.class);
+        when(image.getOriginalFilename()).thenReturn("2-new.jpg");
+        when(image.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1}));
+        when(image.getContentType()).thenReturn("image/jpeg");
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(11L, 3L, true));
+        when(dataRepo.getReferenceById(11L)).thenReturn(created);
+        when(sectionRepo.existsById(2L)).thenReturn(false);
+        when(imageUploads.stage(any(InputStream.class))).thenReturn(staged("new"));
+
+        recordService.record(5L, "{\"uuid\":\"u-2\",\"projectId\":3}", new MultipartFile[]{image}, null);
+
+        ArgumentCaptor<RecordData> model = ArgumentCaptor.forClass(RecordData.class);
+        verify(batchRepo).upsertData(eq(5L), model.capture(), any(Date.class));
+        assertThat(model.getValue().uuid()).isEqualTo("u-2");
+        verify(batchRepo, never()).findImages(anyLong());
+        verify(imageUploads).submit(any(), any(ImageUploadService.Staged.class), eq("image/jpeg"), any());
+        verify(dataRepo, never()).save(any(Data.class));
+    }
+
+    @Test
+    void recordStagesImagesBeforeTransactionAndDiscardsThemWhenItFails() throws Exception {
+        ImageUploadService.Staged bytes = staged("new");
+        when(imageUploads.stage(any(InputStream.class))).thenReturn(bytes);
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class))).thenThrow(new IllegalStateException("db down"));
+
+        assertThatThrownBy(() -> stream(5L, multipart(
+                part("model", null, "{\"uuid\":\"u-1\",\"projectId\":3}"),
+                part("images", "2-new.jpg", "new-bytes"))))
+                .hasMessage("db down");
+
+        InOrder order = inOrder(imageUploads, transactionManager);
+        order.verify(imageUploads).stage(any(InputStream.class));
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(transactionManager).rollback(any());
+        order.verify(imageUploads).discard(bytes);
+        verify(imageUploads, never()).submit(any(), any(ImageUploadService.Staged.class), anyString(), any());
+    }
+
+    @Test
+    void recordStreamLinksStoredImageInsteadOfUpload() throws Exception {
+        Data existing = new Data();
+        existing.setId(10L);
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(10L, 3L, false));
+        when(dataRepo.getReferenceById(10L)).thenReturn(existing);
+        when(batchRepo.findImages(10L)).thenReturn(List.of(new RecordBatchRepository.ImageName(1L, "1-old.jpg")));
+        when(batchRepo.findStoredImages(5L, Set.of("abc"))).thenReturn(Map.of("abc", "abc.jpg"));
+        when(sectionRepo.existsById(2L)).thenReturn(false);
+
+        stream(5L, multipart(
+                part("model", null, "{\"uuid\":\"u-1\",\"projectId\":3,\"linkedImages\":{\"2-same.jpg\":\"ABC\"}}")));
+
+        ArgumentCaptor<Image> saved = ArgumentCaptor.forClass(Image.class);
+        verify(imageRepo).save(saved.capture());
+        assertThat(saved.getValue().getUuid()).isEqualTo("abc.jpg");
+        assertThat(saved.getValue().getOriginalFileName()).isEqualTo("2-same.jpg");
+        assertThat(saved.getValue().getContentHash()).isEqualTo("abc");
+        assertThat(saved.getValue().getStorageStatus()).isEqualTo(ImageUploadService.STORED);
+        verify(imageRepo).deleteObsoleteImage(10L, 1L, "1-old.jpg");
+        verifyNoInteractions(imageUploads);
+    }
+
+    @Test
+    void recordRejectsLinkedImageThatIsNotStored() {
+        Data created = new Data();
+        created.setId(11L);
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(11L, 3L, true));
+        when(dataRepo.getReferenceById(11L)).thenReturn(created);
+        when(batchRepo.findStoredImages(5L, Set.of("abc"))).thenReturn(Map.of());
+
+        assertThatThrownBy(() -> recordService.record(5L,
+                "{\"uuid\":\"u-2\",\"projectId\":3,\"linkedImages\":{\"2-same.jpg\":\"abc\"}}", null, null))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode())
+                        .isEqualTo(HttpStatus.CONFLICT));
+        verify(imageRepo, never()).save(any(Image.class));
+    }
+
+    @Test
+    void presenceReturnsOnlyUuidsAndHashesTheServerLacks() {
+        when(batchRepo.findDataIds(5L, Set.of("u-1", "u-2", "u-3"))).thenReturn(Map.of("u-2", 20L));
+        when(batchRepo.findStoredImages(5L, Set.of("aa", "bb"))).thenReturn(Map.of("aa", "aa.jpg"));
+
+        PresenceResponse response = recordService.presence(5L,
+                new PresenceRequest(List.of("u-3", "u-2", "u-1", "u-3"), List.of("AA", "bb", "", "aa")));
+
+        assertThat(response.missingUuids()).containsExactly("u-3", "u-1");
+        assertThat(response.missingHashes()).containsExactly("bb");
+    }
+
+    @Test
+    void presenceRejectsOversizedLists() {
+        ReflectionTestUtils.setField(recordService, "maxPresenceItems", 1);
+
+        assertThatThrownBy(() -> recordService.presence(5L, new PresenceRequest(List.of("a", "b"), null)))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode())
+                        .isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        verifyNoInteractions(batchRepo);
+    }
+
+    @Test
+    void recordFromImageSourceStagesImagesAndReportsSavedRecord() throws Exception {
+        Data created = new Data();
+        created.setId(11L);
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(11L, 3L, true));
+        when(dataRepo.getReferenceById(11L)).thenReturn(created);
+        when(imageRepo.save(any(Image.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(sectionRepo.existsById(2L)).thenReturn(false);
+        ImageUploadService.Staged bytes = staged("new");
+        when(imageUploads.stage(any(InputStream.class))).thenReturn(bytes);
+        ImagePolicy policy = new ImagePolicy(1600, "jpeg", 0.8f, false);
+        when(formCache.imagePolicy(3L)).thenReturn(policy);
+        List<RecordService.ImagePart> parts = new ArrayList<>(List.of(
+                new RecordService.ImagePart("2-new.jpg", "image/jpeg", new ByteArrayInputStream(new byte[]{1}))));
+
+        RecordResult result = recordService.record(5L, "{\"uuid\":\"u-2\",\"projectId\":3}", null,
+                () -> parts.isEmpty() ? null : parts.remove(0));
+
+        assertThat(result).isEqualTo(new RecordResult("u-2", 11L, true, null));
+        verify(imageUploads).submit(any(Image.class), same(bytes), eq("image/jpeg"), same(policy));
+        verify(imageUploads).discard(bytes);
+    }
+
+    @Test
+    void recordStreamRejectsImagesBeforeModel() {
+        assertThatThrownBy(() -> stream(5L, multipart(part("images", "1-a.jpg", "bytes"))))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode())
+                        .isEqualTo(HttpStatus.BAD_REQUEST));
+        verifyNoInteractions(imageUploads);
+    }
+
+    @Test
+    void readHeadStopsAtModelAndKeepsEarlierResults() throws Exception {
+        MultipartReader parts = multipart(part("results", null, "{\"1\":\"a\"}"),
+                part("model", null, "{\"uuid\":\"u-1\"}"), part("images", "1-a.jpg", "bytes"));
+
+        assertThat(RecordService.readHead(parts)).isEqualTo(new RecordService.StreamHead("{\"uuid\":\"u-1\"}", "{\"1\":\"a\"}"));
+        assertThat(parts.next().filename()).isEqualTo("1-a.jpg");
+    }
+
+    @Test
+    void recordStreamRejectsMissingModel() {
+        assertThatThrownBy(() -> stream(5L, multipart(part("results", null, "{}"))))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode())
+                        .isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recordBatchInsertsNewRecordsUpdatesExistingOnesAndReportsInvalidEntries() {
+        String body = "["
+                + "{\"model\":{\"uuid\":\"a\",\"projectId\":3},\"results\":{\"11\":\"x\",\"12\":[\"p\",\"q\"],\"99\":\"gone\"}},"
+                + "{\"model\":{\"uuid\":\"b\",\"projectId\":3},\"results\":{\"11\":\"y\"}},"
+                + "{\"results\":{}},"
+                + "{\"model\":{\"uuid\":\"a\",\"projectId\":3}}"
+                + "]";
+        when(batchRepo.findDataIds(5L, Set.of("a", "b"))).thenReturn(Map.of("b", 20L));
+        when(batchRepo.findProjectIds(Set.of(3L))).thenReturn(Set.of(3L));
+        when(batchRepo.insertData(eq(5L), anyList(), eq(Set.of(3L)), any(Date.class)))
+                .thenReturn(List.of(new RecordBatchRepository.Upsert(21L, 3L, true)));
+        when(batchRepo.findQuestionIds(Set.of(11L, 12L, 99L))).thenReturn(Set.of(11L, 12L));
+        when(batchRepo.findReplies(List.of(20L))).thenReturn(Map.of(20L, Map.of(
+                11L, new RecordBatchRepository.Reply(300L, 20L, 11L, "old"))));
+
+        List<RecordResult> results = recordService.recordBatch(5L, body);
+
+        assertThat(results).containsExactly(
+                new RecordResult("a", 21L, true, null),
+                new RecordResult("b", 20L, false, null),
+                RecordResult.failed(null, "Missing model uuid"),
+                RecordResult.failed("a", "Duplicate uuid in batch"));
+
+        ArgumentCaptor<List<RecordData>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(batchRepo).insertData(eq(5L), inserted.capture(), eq(Set.of(3L)), any(Date.class));
+        assertThat(inserted.getValue()).extracting(RecordData::uuid).containsExactly("a");
+        ArgumentCaptor<List<RecordData>> updated = ArgumentCaptor.forClass(List.class);
+        verify(batchRepo).updateData(eq(List.of(20L)), updated.capture(), eq(Set.of(3L)), any(Date.class));
+        assertThat(updated.getValue()).extracting(RecordData::uuid).containsExactly("b");
+
+        ArgumentCaptor<List<RecordBatchRepository.Reply>> newReplies = ArgumentCaptor.forClass(List.class);
+        verify(batchRepo).insertReplies(newReplies.capture(), any(Date.class));
+        assertThat(newReplies.getValue()).containsExactlyInAnyOrder(
+                new RecordBatchRepository.Reply(null, 21L, 11L, "x"),
+                new RecordBatchRepository.Reply(null, 21L, 12L, "[\"p\",\"q\"]"));
+        ArgumentCaptor<List<RecordBatchRepository.Reply>> changedReplies = ArgumentCaptor.forClass(List.class);
+        verify(batchRepo).updateReplies(changedReplies.capture(), any(Date.class));
+        assertThat(changedReplies.getValue()).containsExactly(new RecordBatchRepository.Reply(300L, 20L, 11L, "y"));
+        verifyNoInteractions(dataRepo);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recordBatchDiffsAnswersOfRecordInsertedConcurrently() {
+        String body = "[{\"model\":{\"uuid\":\"a\",\"projectId\":3},\"results\":{\"11\":\"x\",\"12\":\"new\"}}]";
+        when(batchRepo.findDataIds(5L, Set.of("a"))).thenReturn(Map.of());
+        when(batchRepo.findProjectIds(Set.of(3L))).thenReturn(Set.of(3L));
+        when(batchRepo.insertData(eq(5L), anyList(), eq(Set.of(3L)), any(Date.class)))
+                .thenReturn(List.of(new RecordBatchRepository.Upsert(21L, 3L, false)));
+        when(batchRepo.findQuestionIds(Set.of(11L, 12L))).thenReturn(Set.of(11L, 12L));
+        when(batchRepo.findReplies(List.of(21L))).thenReturn(Map.of(21L, Map.of(
+                11L, new RecordBatchRepository.Reply(300L, 21L, 11L, "x"),
+                12L, new RecordBatchRepository.Reply(301L, 21L, 12L, "old"))));
+
+        List<RecordResult> results = recordService.recordBatch(5L, body);
+
+        assertThat(results).containsExactly(new RecordResult("a", 21L, false, null));
+        verify(batchRepo).insertReplies(eq(List.of()), any(Date.class));
+        ArgumentCaptor<List<RecordBatchRepository.Reply>> changedReplies = ArgumentCaptor.forClass(List.class);
+        verify(batchRepo).updateReplies(changedReplies.capture(), any(Date.class));
+        assertThat(changedReplies.getValue()).containsExactly(new RecordBatchRepository.Reply(301L, 21L, 12L, "new"));
+    }
+
+    @Test
+    void recordBatchRejectsAnswersThatDoNotFitTheQuestionType() {
+        String body = "["
+                + "{\"model\":{\"uuid\":\"a\",\"projectId\":3},\"results\":{\"11\":\"many\"}},"
+                + "{\"model\":{\"uuid\":\"b\",\"projectId\":3},\"results\":{\"11\":12}}"
+                + "]";
+        when(formCache.questionTypes(3L)).thenReturn(Map.of(11L, 7));
+        when(batchRepo.findDataIds(5L, Set.of("b"))).thenReturn(Map.of());
+        when(batchRepo.findProjectIds(Set.of(3L))).thenReturn(Set.of(3L));
+        when(batchRepo.insertData(eq(5L), anyList(), eq(Set.of(3L)), any(Date.class)))
+                .thenReturn(List.of(new RecordBatchRepository.Upsert(21L, 3L, true)));
+        when(batchRepo.findQuestionIds(Set.of(11L))).thenReturn(Set.of(11L));
+
+        List<RecordResult> results = recordService.recordBatch(5L, body);
+
+        assertThat(results).containsExactly(
+                RecordResult.failed("a", "Invalid results: unsupported answer many to question 11"),
+                new RecordResult("b", 21L, true, null));
+        verify(batchRepo).insertReplies(eq(List.of(new RecordBatchRepository.Reply(null, 21L, 11L, "12"))), any(Date.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recordWritesOnlyNewAndChangedAnswers() throws Exception {
+        Data existing = new Data();
+        existing.setId(10L);
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(10L, 3L, false));
+        when(dataRepo.getReferenceById(10L)).thenReturn(existing);
+        when(batchRepo.findQuestionIds(Set.of(11L, 12L, 13L, 99L))).thenReturn(Set.of(11L, 12L, 13L));
+        when(batchRepo.findReplies(List.of(10L))).thenReturn(Map.of(10L, Map.of(
+                11L, new RecordBatchRepository.Reply(300L, 10L, 11L, "same"),
+                13L, new RecordBatchRepository.Reply(301L, 10L, 13L, "before"))));
+
+        recordService.record(5L, "{\"uuid\":\"u-1\",\"projectId\":3}", null,
+                "{\"11\":\"same\",\"12\":[\"a\"],\"13\":\"after\",\"99\":\"gone\"}");
+
+        ArgumentCaptor<List<RecordBatchRepository.Reply>> newReplies = ArgumentCaptor.forClass(List.class);
+        verify(batchRepo).insertReplies(newReplies.capture(), any(Date.class));
+        assertThat(newReplies.getValue()).containsExactly(new RecordBatchRepository.Reply(null, 10L, 12L, "[\"a\"]"));
+        ArgumentCaptor<List<RecordBatchRepository.Reply>> changedReplies = ArgumentCaptor.forClass(List.class);
+        verify(batchRepo).updateReplies(changedReplies.capture(), any(Date.class));
+        assertThat(changedReplies.getValue()).containsExactly(new RecordBatchRepository.Reply(301L, 10L, 13L, "after"));
+    }
+
+    @Test
+    void recordResolvesSectionsAndQuestionsFromCachedForm() throws Exception {
+        Data created = new Data();
+        created.setId(11L);
+        Section section = new Section();
+        section.setId(2L);
+        MultipartFile image = mock(MultipartFile.class);
+        when(image.getOriginalFilename()).thenReturn("2-new.jpg");
+        when(image.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1}));
+        when(image.getContentType()).thenReturn("image/jpeg");
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(11L, 3L, true));
+        when(dataRepo.getReferenceById(11L)).thenReturn(created);
+        when(formCache.hasSection(3L, 2L)).thenReturn(true);
+        when(sectionRepo.getReferenceById(2L)).thenReturn(section);
+        when(imageRepo.save(any(Image.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(formCache.knownQuestions(Set.of(3L), Set.of(11L))).thenReturn(Set.of(11L));
+
+        recordService.record(5L, "{\"uuid\":\"u-2\",\"projectId\":3}", new MultipartFile[]{image}, "{\"11\":\"x\"}");
+
+        verify(sectionRepo, never()).existsById(anyLong());
+        verify(batchRepo).findQuestionIds(Set.of());
+        verify(batchRepo).insertReplies(eq(List.of(new RecordBatchRepository.Reply(null, 11L, 11L, "x"))), any(Date.class));
+        ArgumentCaptor<Image> saved = ArgumentCaptor.forClass(Image.class);
+        verify(imageRepo).save(saved.capture());
+        assertThat(saved.getValue().getSection()).isSameAs(section);
+    }
+
+    @Test
+    void recordSkipsStoredAnswerLookupForNewRecords() throws Exception {
+        Data created = new Data();
+        created.setId(11L);
+        when(batchRepo.upsertData(eq(5L), any(RecordData.class), any(Date.class)))
+                .thenReturn(new RecordBatchRepository.Upsert(11L, 3L, true));
+        when(dataRepo.getReferenceById(11L)).thenReturn(created);
+        when(batchRepo.findQuestionIds(Set.of(11L))).thenReturn(Set.of(11L));
+
+        recordService.record(5L, "{\"uuid\":\"u-2\",\"projectId\":3}", null, "{\"11\":\"x\"}");
+
+        verify(batchRepo, never()).findReplies(anyCollection());
+        verify(batchRepo).insertReplies(eq(List.of(new RecordBatchRepository.Reply(null, 11L, 11L, "x"))), any(Date.class));
+        verify(batchRepo).updateReplies(eq(List.of()), any(Date.class));
+    }
+
+    @Test
+    void recordBatchRejectsEmptyBatch() {
+        assertThatThrownBy(() -> recordService.recordBatch(5L, "[]"))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode())
+                        .isEqualTo(HttpStatus.BAD_REQUEST));
+        verifyNoInteractions(batchRepo);
+    }
+
+    @Test
+    void recordBatchRejectsOversizedBatch() {
+        ReflectionTestUtils.setField(recordService, "maxBatchSize", 1);
+
+        assertThatThrownBy(() -> recordService.recordBatch(5L, "[{\"model\":{\"uuid\":\"a\"}},{\"model\":{\"uuid\":\"b\"}}]"))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode())
+                        .isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        verifyNoInteractions(batchRepo);
+    }
+
+    private static RecordSummary record(Long id, long createdAt) {
+        RecordSummary record = mock(RecordSummary.class);
+        lenient().when(record.getId()).thenReturn(id);
+        lenient().when(record.getCreatedAt()).thenReturn(new Date(createdAt));
+        return record;
+    }
+
+    private static ImageUploadService.Staged staged(String name) {
+        return new ImageUploadService.Staged(Path.of(name + ".part"), "hash-" + name);
+    }
+
+    private static String part(String name, String filename, String content) {
+        String disposition = "Content-Disposition: form-data; name=\"" + name + "\""
+                + (filename != null ? "; filename=\"" + filename + "\"\r\nContent-Type: image/jpeg" : "");
+        return "--b\r\n" + disposition + "\r\n\r\n" + content + "\r\n";
+    }
+
+    private void stream(Long userId, MultipartReader parts) throws IOException {
+        recordService.record(userId, RecordService.readHead(parts), parts);
+    }
+
+    private static MultipartReader multipart(String... parts) {
+        String body = String.join("", parts) + "--b--\r\n";
+        return new MultipartReader(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "b", Long.MAX_VALUE);
+    }
+
     private void authenticate(String username, String... roles) {
         var authorities = Arrays.stream(roles)
                 .map(SimpleGrantedAuthority::new)
@@ -41,6 +41,9 @@ class SectionServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private FormCache formCache;
+
     @InjectMocks
     private SectionService sectionService;
 
@@ -167,11 +170,13 @@ class SectionServiceTest {
         existing.setName("Old Name");
         existing.setEnabled(true);
         Project oldProject = new Project();
+        oldProject.setId(2L);
         existing.setProject(oldProject);
 
         when(sectionRepository.findById(4L)).thenReturn(Optional.of(existing));
 
         Project newProject = new Project();
+        newProject.setId(9L);
         when(projectRepository.findById(9L)).thenReturn(Optional.of(newProject));
         when(sectionRepository.save(existing)).thenReturn(existing);
 
@@ -190,6 +195,7 @@ class SectionServiceTest {
         assertThat(result.isEnabled()).isFalse();
         assertThat(result.getProject()).isSameAs(newProject);
         verify(sectionRepository).save(existing);
+        verify(formCache).invalidate(2L, 9L);
     }
 
     @Test
@@ -219,6 +225,20 @@ class SectionServiceTest {
         verify(sectionRepository).deleteById(12L);
     }
 
+    @Test
+    void deleteInvalidatesFormOfSectionProject() {
+        Project project = new Project();
+        project.setId(3L);
+        Section existing = new Section();
+        existing.setProject(project);
+        when(sectionRepository.findById(12L)).thenReturn(Optional.of(existing));
+
+        sectionService.delete(12L);
+
+        verify(formCache).invalidate(3L);
+        verify(sectionRepository).deleteById(12L);
+    }
+
     private void setAuthentication(String username, String role) {
         var auth = new UsernamePasswordAuthenticationToken(
                 username,
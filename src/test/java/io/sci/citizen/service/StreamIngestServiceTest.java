@@ -0,0 +1,137 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.api.dto.RecordResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StreamIngestServiceTest {
+
+    @Mock
+    private RecordService recordService;
+
+    private StreamIngestService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new StreamIngestService(recordService, DataSize.ofBytes(10), DataSize.ofKilobytes(1));
+    }
+
+    @Test
+    void recordsAreSavedAsTheyArriveWithTheirImages() throws Exception {
+        List<String> images = new ArrayList<>();
+        doAnswer(inv -> {
+            RecordService.ImageSource source = inv.getArgument(3);
+            RecordService.ImagePart part;
+            while ((part = source.next()) != null) {
+                images.add(part.name() + ":" + part.contentType() + ":"
+                        + new String(part.body().readAllBytes(), StandardCharsets.UTF_8));
+            }
+            String uuid = inv.<String>getArgument(1).contains("u-1") ? "u-1" : "u-2";
+            return new RecordResult(uuid, 10L, true, null);
+        }).when(recordService).record(eq(5L), anyString(), any(), any(RecordService.ImageSource.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int saved = service.ingest(5L, new ByteArrayInputStream(new Frames()
+                .add('R', "{\"model\":{\"uuid\":\"u-1\"},\"results\":{\"11\":\"yes\"}}")
+                .add('I', "{\"name\":\"3-a.jpg\",\"contentType\":\"image/jpeg\"}")
+                .add('C', "ab").add('C', "cd")
+                .add('E', "")
+                .add('K', "")
+                .add('R', "{\"model\":{\"uuid\":\"u-2\"}}")
+                .add('E', "")
+                .bytes()), out);
+
+        assertThat(saved).isEqualTo(2);
+        assertThat(images).containsExactly("3-a.jpg:image/jpeg:abcd");
+        verify(recordService).record(eq(5L), eq("{\"uuid\":\"u-1\"}"), eq("{\"11\":\"yes\"}"), any(RecordService.ImageSource.class));
+        verify(recordService).record(eq(5L), eq("{\"uuid\":\"u-2\"}"), isNull(), any(RecordService.ImageSource.class));
+        assertThat(lines(out)).containsExactly(
+                "{\"uuid\":\"u-1\",\"id\":10,\"created\":true}",
+                "{\"uuid\":\"u-2\",\"id\":10,\"created\":true}");
+    }
+
+    @Test
+    void failedRecordIsReportedAndTheStreamContinues() throws Exception {
+        doAnswer(inv -> {
+            if (inv.<String>getArgument(1).contains("bad")) {
+                RecordService.ImageSource source = inv.getArgument(3);
+                source.next();
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image names must look like <sectionId>-<file>");
+            }
+            return new RecordResult("u-2", 11L, false, null);
+        }).when(recordService).record(eq(5L), anyString(), any(), any(RecordService.ImageSource.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int saved = service.ingest(5L, new ByteArrayInputStream(new Frames()
+                .add('R', "{\"model\":{\"uuid\":\"bad\"}}")
+                .add('I', "{\"name\":\"a.jpg\"}")
+                .add('C', "ab")
+                .add('I', "{\"name\":\"3-b.jpg\"}")
+                .add('C', "cd")
+                .add('E', "")
+                .add('R', "{\"model\":{\"uuid\":\"u-2\"}}")
+                .add('E', "")
+                .bytes()), out);
+
+        assertThat(saved).isEqualTo(1);
+        assertThat(lines(out)).containsExactly(
+                "{\"uuid\":\"bad\",\"created\":false,\"error\":\"Image names must look like <sectionId>-<file>\"}",
+                "{\"uuid\":\"u-2\",\"id\":11,\"created\":false}");
+    }
+
+    @Test
+    void streamThatBreaksTheFramingIsNotReadFurther() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int saved = service.ingest(5L, new ByteArrayInputStream(new Frames()
+                .add('C', "ab")
+                .add('R', "{\"model\":{\"uuid\":\"u-1\"}}")
+                .add('E', "")
+                .bytes()), out);
+
+        assertThat(saved).isZero();
+        assertThat(lines(out)).containsExactly("{\"created\":false,\"error\":\"Expected a record frame but got 'C'\"}");
+        verifyNoInteractions(recordService);
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out) {
+        return out.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+    private static final class Frames {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Frames add(char type, String payload) throws IOException {
+            byte[] data = payload.getBytes(StandardCharsets.UTF_8);
+            out.write(type);
+            out.writeInt(data.length);
+            out.write(data);
+            return this;
+        }
+
+        byte[] bytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -49,6 +49,9 @@ class TextQueryServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private FormCache formCache;
+
     @InjectMocks
     private TextQueryService service;
 
@@ -251,6 +254,22 @@ class TextQueryServiceTest {
         verify(textQueryRepository).deleteById(123L);
     }
 
+    @Test
+    void deleteInvalidatesFormOfQuestionProject() {
+        Project project = new Project();
+        project.setId(7L);
+        Section section = new Section();
+        section.setProject(project);
+        TextQuery question = new TextQuery();
+        question.setSection(section);
+        when(textQueryRepository.findById(123L)).thenReturn(Optional.of(question));
+
+        service.delete(123L);
+
+        verify(formCache).invalidate(7L);
+        verify(textQueryRepository).deleteById(123L);
+    }
+
     private Section buildSectionWithCreatorId(Long userId) {
         User creator = new User();
         creator.setId(userId);
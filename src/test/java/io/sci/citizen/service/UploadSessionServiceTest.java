@@ -0,0 +1,289 @@
+package io.sci.citizen.service;
+
+import io.sci.citizen.api.dto.UploadSessionRequest;
+import io.sci.citizen.api.dto.UploadSessionStatus;
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.model.Data;
+import io.sci.citizen.model.Image;
+import io.sci.citizen.model.UploadSession;
+import io.sci.citizen.model.repository.DataRepository;
+import io.sci.citizen.model.repository.ImageRepository;
+import io.sci.citizen.model.repository.RecordBatchRepository;
+import io.sci.citizen.model.repository.SectionRepository;
+import io.sci.citizen.model.repository.UploadSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceTest {
+
+    private static final String ID = "0b6f0c1e-8f7e-4c55-9a3b-2f1d9b5e7c11";
+    private static final String KEY = "3_2_10_abc.jpg";
+
+    @Mock
+    private UploadSessionRepository sessionRepo;
+
+    @Mock
+    private DataRepository dataRepo;
+
+    @Mock
+    private RecordBatchRepository batchRepo;
+
+    @Mock
+    private ImageRepository imageRepo;
+
+    @Mock
+    private SectionRepository sectionRepo;
+
+    @Mock
+    private FileStorage fileStorage;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path staging;
+
+    private UploadSessionService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service = new UploadSessionService(sessionRepo, dataRepo, batchRepo, imageRepo, sectionRepo, fileStorage,
+                staging.toString(), DataSize.ofBytes(10), DataSize.ofBytes(100), Duration.ofHours(24), transactionManager);
+    }
+
+    @Test
+    void createRejectsUnknownRecord() {
+        when(sessionRepo.findByUserIdAndCreatedAtBefore(eq(5L), any(Date.class))).thenReturn(List.of());
+        when(batchRepo.findDataIds(5L, List.of("u-1"))).thenReturn(Map.of());
+
+        assertThatThrownBy(() -> service.create(5L, new UploadSessionRequest("u-1", "2-photo.jpg", 15, "image/jpeg")))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+        verifyNoInteractions(fileStorage);
+    }
+
+    @Test
+    void createRejectsOversizedImage() {
+        assertThatThrownBy(() -> service.create(5L, new UploadSessionRequest("u-1", "2-photo.jpg", 101, "image/jpeg")))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        verifyNoInteractions(sessionRepo, dataRepo, fileStorage);
+    }
+
+    @Test
+    void createOpensStorageUploadForExistingRecord() throws Exception {
+        when(sessionRepo.findByUserIdAndCreatedAtBefore(eq(5L), any(Date.class))).thenReturn(List.of());
+        when(batchRepo.findDataIds(5L, List.of("u-1"))).thenReturn(Map.of("u-1", 10L));
+        when(dataRepo.findProjectId(10L)).thenReturn(3L);
+        when(fileStorage.beginUpload(startsWith("3_2_10_"), eq("image/jpeg"))).thenReturn("up-1");
+
+        UploadSessionStatus status = service.create(5L, new UploadSessionRequest("u-1", "2-photo.jpg", 15, "image/jpeg"));
+
+        ArgumentCaptor<UploadSession> saved = ArgumentCaptor.forClass(UploadSession.class);
+        verify(sessionRepo).save(saved.capture());
+        assertThat(status.id()).isEqualTo(saved.getValue().getId());
+        assertThat(status.offset()).isZero();
+        assertThat(status.size()).isEqualTo(15);
+        assertThat(saved.getValue().getStorageUploadId()).isEqualTo("up-1");
+        assertThat(saved.getValue().getSectionId()).isEqualTo(2L);
+        assertThat(saved.getValue().getStorageKey()).startsWith("3_2_10_").endsWith(".jpg");
+    }
+
+    @Test
+    void appendForwardsFullPartsAndKeepsTheRestLocally() throws Exception {
+        UploadSession session = session(15, 0, List.of());
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session));
+        when(fileStorage.uploadPart(eq(KEY), eq("up-1"), eq(1), any(InputStream.class), eq(10L))).thenReturn("etag-1");
+
+        UploadSessionStatus status = service.append(5L, ID, 0, new ByteArrayInputStream(new byte[12]));
+
+        assertThat(status.offset()).isEqualTo(12);
+        assertThat(session.getFlushed()).isEqualTo(10);
+        assertThat(session.getParts()).containsExactly("etag-1");
+        assertThat(Files.size(tail(10))).isEqualTo(2);
+        assertThat(tail(0)).doesNotExist();
+        verify(sessionRepo).save(session);
+    }
+
+    @Test
+    void failedSaveAfterFlushKeepsOffsetAndTailAligned() throws Exception {
+        UploadSession session = session(15, 0, List.of());
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session));
+        when(fileStorage.uploadPart(eq(KEY), eq("up-1"), eq(1), any(InputStream.class), eq(10L))).thenReturn("etag-1");
+        when(sessionRepo.save(session)).thenThrow(new IllegalStateException("db down")).thenReturn(session);
+        byte[] chunk = new byte[12];
+        chunk[0] = 7;
+
+        assertThatThrownBy(() -> service.append(5L, ID, 0, new ByteArrayInputStream(chunk))).hasMessage("db down");
+
+        assertThat(session.getFlushed()).isZero();
+        assertThat(session.getParts()).isEmpty();
+        assertThat(tail(10)).doesNotExist();
+        assertThat(Files.readAllBytes(tail(0))).isEqualTo(chunk);
+        assertThat(service.status(5L, ID).offset()).isEqualTo(12);
+
+        // the next chunk sends the same first part again, starting at byte 0
+        service.append(5L, ID, 12, new ByteArrayInputStream(new byte[1]));
+
+        verify(fileStorage, times(2)).uploadPart(eq(KEY), eq("up-1"), eq(1), any(InputStream.class), eq(10L));
+        assertThat(session.getFlushed()).isEqualTo(10);
+        assertThat(session.getParts()).containsExactly("etag-1");
+        assertThat(Files.size(tail(10))).isEqualTo(3);
+        assertThat(tail(0)).doesNotExist();
+    }
+
+    @Test
+    void unknownSessionLeavesNoLockBehind() {
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> service.append(5L, ID, 0, new ByteArrayInputStream(new byte[1])))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+        assertThat((Map<?, ?>) ReflectionTestUtils.getField(service, "locks")).isEmpty();
+    }
+
+    @Test
+    void appendRejectsUnexpectedOffset() {
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session(15, 10, List.of("etag-1"))));
+
+        assertThatThrownBy(() -> service.append(5L, ID, 0, new ByteArrayInputStream(new byte[5])))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+        verifyNoInteractions(fileStorage);
+    }
+
+    @Test
+    void statusReportsStoredAndStagedBytes() throws Exception {
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session(15, 10, List.of("etag-1"))));
+        Files.write(tail(10), new byte[3]);
+
+        assertThat(service.status(5L, ID).offset()).isEqualTo(13);
+    }
+
+    @Test
+    void completeUploadsLastPartAndAttachesImage() throws Exception {
+        UploadSession session = session(15, 10, List.of("etag-1"));
+        Data data = new Data();
+        data.setId(10L);
+        Files.write(tail(10), new byte[5]);
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session));
+        when(fileStorage.uploadPart(eq(KEY), eq("up-1"), eq(2), any(InputStream.class), eq(5L))).thenReturn("etag-2");
+        when(dataRepo.getReferenceById(10L)).thenReturn(data);
+        when(sectionRepo.existsById(2L)).thenReturn(false);
+        when(imageRepo.save(any(Image.class))).thenAnswer(inv -> {
+            Image image = inv.getArgument(0);
+            image.setId(99L);
+            return image;
+        });
+
+        Long imageId = service.complete(5L, ID);
+
+        assertThat(imageId).isEqualTo(99L);
+        verify(fileStorage).completeUpload(KEY, "up-1", List.of("etag-1", "etag-2"));
+        verify(sessionRepo).delete(session);
+        verify(imageRepo).deleteObsoleteImage(10L, 2L, "2-photo.jpg");
+        ArgumentCaptor<Image> image = ArgumentCaptor.forClass(Image.class);
+        verify(imageRepo).save(image.capture());
+        assertThat(image.getValue().getUuid()).isEqualTo(KEY);
+        assertThat(image.getValue().getStorageStatus()).isEqualTo(ImageUploadService.STORED);
+        assertThat(staging.resolve("sessions")).isEmptyDirectory();
+    }
+
+    @Test
+    void completeFinishesStorageBeforeTheTransaction() throws Exception {
+        UploadSession session = session(15, 15, List.of("etag-1", "etag-2"));
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session));
+        when(sectionRepo.existsById(2L)).thenReturn(false);
+        when(imageRepo.save(any(Image.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        service.complete(5L, ID);
+
+        InOrder order = inOrder(fileStorage, transactionManager, imageRepo);
+        order.verify(fileStorage).completeUpload(KEY, "up-1", List.of("etag-1", "etag-2"));
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(imageRepo).save(any(Image.class));
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void completeDeletesStoredObjectWhenAttachingFails() throws Exception {
+        UploadSession session = session(15, 15, List.of("etag-1", "etag-2"));
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session));
+        when(dataRepo.getReferenceById(10L)).thenThrow(new IllegalStateException("db down"));
+
+        assertThatThrownBy(() -> service.complete(5L, ID)).hasMessage("db down");
+
+        verify(transactionManager).rollback(any());
+        verify(fileStorage).delete(KEY);
+        verify(sessionRepo, times(2)).delete(session);
+        verify(imageRepo, never()).save(any(Image.class));
+    }
+
+    @Test
+    void completeRejectsIncompleteUpload() {
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session(15, 10, List.of("etag-1"))));
+
+        assertThatThrownBy(() -> service.complete(5L, ID))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+        verifyNoInteractions(fileStorage, imageRepo);
+    }
+
+    @Test
+    void abortDiscardsStorageUploadAndSession() throws Exception {
+        UploadSession session = session(15, 10, List.of("etag-1"));
+        when(sessionRepo.findByIdAndUserId(ID, 5L)).thenReturn(Optional.of(session));
+
+        service.abort(5L, ID);
+
+        verify(fileStorage).abortUpload(KEY, "up-1");
+        verify(sessionRepo).delete(session);
+    }
+
+    private Path tail(long offset) {
+        return staging.resolve("sessions").resolve(ID + "." + offset);
+    }
+
+    private static UploadSession session(long size, long flushed, List<String> parts) {
+        UploadSession session = new UploadSession();
+        session.setId(ID);
+        session.setUserId(5L);
+        session.setDataId(10L);
+        session.setSectionId(2L);
+        session.setOriginalFileName("2-photo.jpg");
+        session.setContentType("image/jpeg");
+        session.setSize(size);
+        session.setStorageKey(KEY);
+        session.setStorageUploadId("up-1");
+        session.setFlushed(flushed);
+        session.setParts(parts);
+        return session;
+    }
+}
@@ -1,6 +1,6 @@
 package io.sci.citizen.web;
 
-import io.sci.citizen.model.Data;
+import io.sci.citizen.model.dto.DataTablePage;
 import io.sci.citizen.service.DataService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,12 +8,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
 import org.springframework.ui.ExtendedModelMap;
 import org.springframework.ui.Model;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -35,27 +39,45 @@ class DataControllerTest {
     }
 
     @Test
-    void listWithoutProjectIdAddsAllDataAndReturnsView() {
-        List<Data> data = List.of(new Data(), new Data());
-        when(dataService.findAll()).thenReturn(data);
-
+    void listWithoutProjectIdChecksAccessAndReturnsEmptyShell() {
         String viewName = controller.list(model);
 
         assertThat(viewName).isEqualTo("data");
-        assertThat(model.getAttribute("data")).isEqualTo(data);
-        verify(dataService).findAll();
+        assertThat(model.getAttribute("projectId")).isNull();
+        verify(dataService).checkAccess(null);
+        verify(dataService, never()).findAll();
     }
 
     @Test
-    void listWithProjectIdUsesServiceFilterAndReturnsView() {
-        List<Data> projectData = List.of(new Data());
-        when(dataService.findAll(7L)).thenReturn(projectData);
-
+    void listWithProjectIdPassesProjectToTheShell() {
         String viewName = controller.list(7L, model);
 
         assertThat(viewName).isEqualTo("data");
-        assertThat(model.getAttribute("data")).isEqualTo(projectData);
-        verify(dataService).findAll(7L);
-        verify(dataService, never()).findAll();
+        assertThat(model.getAttribute("projectId")).isEqualTo(7L);
+        verify(dataService).checkAccess(7L);
+        verify(dataService, never()).findAll(7L);
+    }
+
+    @Test
+    void listOfForbiddenProjectFails() {
+        doThrow(new ResponseStatusException(HttpStatus.FORBIDDEN)).when(dataService).checkAccess(7L);
+
+        assertThatThrownBy(() -> controller.list(7L, model)).isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void tablePassesDataTablesParametersToService() {
+        DataTablePage page = new DataTablePage(3, 10, 2, List.of());
+        when(dataService.table(7L, 3, 20, 10, "ann", 2, true)).thenReturn(page);
+
+        assertThat(controller.table(7L, 3, 20, 10, "ann", 2, "ASC")).isSameAs(page);
+    }
+
+    @Test
+    void tableSortsDescendingUnlessAskedForAscending() {
+        DataTablePage page = new DataTablePage(1, 0, 0, List.of());
+        when(dataService.table(null, 1, 0, 10, null, 1, false)).thenReturn(page);
+
+        assertThat(controller.table(null, 1, 0, 10, null, 1, "desc")).isSameAs(page);
     }
 }
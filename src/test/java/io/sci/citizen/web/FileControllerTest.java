@@ -47,7 +47,7 @@ class FileControllerTest {
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FOUND);
         assertThat(response.getHeaders().getLocation()).isEqualTo(publicUri);
-        verify(storage, never()).download(key);
+        verify(storage, never()).download("public-key");
     }
 
     @Test
@@ -56,7 +56,7 @@ class FileControllerTest {
         byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
         FileDownload download = new FileDownload(new ByteArrayInputStream(content), content.length, "text/plain", "file.txt");
         when(storage.publicUrl("stored-key")).thenReturn(Optional.empty());
-        when(storage.download(key)).thenReturn(Optional.of(download));
+        when(storage.download("stored-key")).thenReturn(Optional.of(download));
 
         ResponseEntity<?> response = controller.get(key);
 
@@ -75,7 +75,7 @@ class FileControllerTest {
     void getReturnsNotFoundWhenFileMissing() throws IOException, URISyntaxException {
         String key = "/missing";
         when(storage.publicUrl("missing")).thenReturn(Optional.empty());
-        when(storage.download(key)).thenReturn(Optional.empty());
+        when(storage.download("missing")).thenReturn(Optional.empty());
 
         ResponseEntity<?> response = controller.get(key);
 
@@ -0,0 +1,75 @@
+package io.sci.citizen.web;
+
+import io.sci.citizen.api.component.UploadAdmissionFilter;
+import io.sci.citizen.config.FileStorage;
+import io.sci.citizen.config.SpoolingFileStorage;
+import io.sci.citizen.service.ImageUploadService;
+import io.sci.citizen.service.IngestJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UploadQueueControllerTest {
+
+    @Mock
+    private ImageUploadService service;
+
+    @Mock
+    private UploadAdmissionFilter admission;
+
+    @Mock
+    private IngestJournal journal;
+
+    @Mock
+    private FileStorage storage;
+
+    @InjectMocks
+    private UploadQueueController controller;
+
+    @Test
+    void statsReturnsQueueStatsFromService() {
+        ImageUploadService.Stats stats = new ImageUploadService.Stats(3, 497, 2, 1, 0, 40, 0, 6, 1_048_576, 350, 524_288);
+        when(service.stats()).thenReturn(stats);
+
+        assertThat(controller.stats()).isSameAs(stats);
+    }
+
+    @Test
+    void admissionReturnsStatsFromFilter() {
+        UploadAdmissionFilter.Stats stats = new UploadAdmissionFilter.Stats(2_097_152, 50_331_648, 2, 7);
+        when(admission.stats()).thenReturn(stats);
+
+        assertThat(controller.admission()).isSameAs(stats);
+    }
+
+    @Test
+    void journalReturnsStatsFromJournal() {
+        IngestJournal.Stats stats = new IngestJournal.Stats(true, 4, 120, 115, 1);
+        when(journal.stats()).thenReturn(stats);
+
+        assertThat(controller.journal()).isSameAs(stats);
+    }
+
+    @Test
+    void spoolReturnsStatsOfSpoolingStorage() {
+        SpoolingFileStorage spool = mock(SpoolingFileStorage.class);
+        SpoolingFileStorage.Stats stats = new SpoolingFileStorage.Stats(3, 2_048, 40, 2);
+        when(spool.stats()).thenReturn(stats);
+        UploadQueueController spooled = new UploadQueueController(service, admission, journal, spool);
+
+        assertThat(spooled.spool().getBody()).isSameAs(stats);
+    }
+
+    @Test
+    void spoolIsNotFoundWithoutSpool() {
+        assertThat(controller.spool().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+}